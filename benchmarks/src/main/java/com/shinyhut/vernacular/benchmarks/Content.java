@@ -0,0 +1,77 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.util.Random;
+
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+/**
+ * The kinds of screen content used to generate synthetic rectangle payloads
+ */
+public enum Content {
+
+    /**
+     * Flat colored windows containing small, text-like detail, which compress well with every encoding
+     */
+    DESKTOP {
+        @Override
+        int[] generate(PixelFormat pixelFormat, int width, int height, Random random) {
+            int[] pixels = new int[width * height];
+            fill(pixels, width, 0, 0, width, height, PixelFormats.value(pixelFormat, 0x2e, 0x5c, 0x8a));
+            for (int window = 0; window < 6; window++) {
+                int w = width / 4 + random.nextInt(width / 3);
+                int h = height / 4 + random.nextInt(height / 3);
+                int x = random.nextInt(width - w);
+                int y = random.nextInt(height - h);
+                fill(pixels, width, x, y, w, h, PixelFormats.value(pixelFormat, 0xf0, 0xf0, 0xf0));
+                fill(pixels, width, x, y, w, 24, PixelFormats.value(pixelFormat, 0x30, 0x30, 0x40 + window * 20));
+                int ink = PixelFormats.value(pixelFormat, 0x10, 0x10, 0x10);
+                for (int line = y + 32; line + 12 < y + h; line += 16) {
+                    for (int column = x + 8; column + 8 < x + w; column += 8) {
+                        for (int stroke = 0; stroke < 6; stroke++) {
+                            if (random.nextInt(3) == 0) {
+                                pixels[(line + random.nextInt(10)) * width + column + random.nextInt(6)] = ink;
+                            }
+                        }
+                    }
+                }
+            }
+            return pixels;
+        }
+    },
+
+    /**
+     * Smooth gradients with noise, which defeat the palette and run-length techniques of most encodings
+     */
+    PHOTO {
+        @Override
+        int[] generate(PixelFormat pixelFormat, int width, int height, Random random) {
+            int[] pixels = new int[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int red = clamp(x * 255 / width + random.nextInt(17) - 8);
+                    int green = clamp(y * 255 / height + random.nextInt(17) - 8);
+                    int blue = clamp((x + y) * 255 / (width + height) + random.nextInt(17) - 8);
+                    pixels[y * width + x] = PixelFormats.value(pixelFormat, red, green, blue);
+                }
+            }
+            return pixels;
+        }
+    };
+
+    /**
+     * @return The pixel values of an image of the specified size, in the specified pixel format
+     */
+    abstract int[] generate(PixelFormat pixelFormat, int width, int height, Random random);
+
+    private static void fill(int[] pixels, int stride, int x, int y, int width, int height, int value) {
+        for (int row = y; row < y + height; row++) {
+            for (int column = x; column < x + width; column++) {
+                pixels[row * stride + column] = value;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
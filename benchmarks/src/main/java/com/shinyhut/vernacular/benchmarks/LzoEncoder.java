@@ -0,0 +1,159 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Compresses data with LZO1X, as UltraVNC servers do for the Ultra encoding.
+ * <p>
+ * Matches are found greedily through a hash table of the most recent position of each 4 byte sequence. The output uses
+ * the same instructions as the LZO1X-1 compressor, so it exercises the same decompression paths as data from a real
+ * server, though it does not compress quite as well.
+ */
+final class LzoEncoder {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 14;
+    private static final int M2_MAX_LENGTH = 8;
+    private static final int M2_MAX_OFFSET = 0x0800;
+    private static final int M3_MAX_OFFSET = 0x4000;
+    private static final int M4_MAX_OFFSET = 0xbfff;
+    private static final int MAX_FIRST_LITERALS = 238;
+
+    private final byte[] data;
+    private byte[] output;
+    private int size;
+
+    /**
+     * The index within the output of the byte whose two low bits give the number of literals following the last match,
+     * or -1 if there has been no match
+     */
+    private int stateByte = -1;
+
+    private LzoEncoder(byte[] data) {
+        this.data = data;
+        this.output = new byte[data.length + data.length / 16 + 64];
+    }
+
+    static byte[] compress(byte[] data) {
+        return new LzoEncoder(data).compress();
+    }
+
+    private byte[] compress() {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int literalStart = 0;
+        int position = 0;
+        while (position + MIN_MATCH <= data.length) {
+            int hash = hash(position);
+            int candidate = table[hash];
+            table[hash] = position;
+            if (candidate < 0 || position - candidate > M4_MAX_OFFSET || !matches(candidate, position)) {
+                position++;
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (position + length < data.length && data[candidate + length] == data[position + length]) {
+                length++;
+            }
+            literals(literalStart, position - literalStart);
+            match(position - candidate, length);
+            position += length;
+            literalStart = position;
+        }
+        literals(literalStart, data.length - literalStart);
+
+        // the end of the stream is marked by an M4 match with a distance of zero
+        write(0x11);
+        write(0);
+        write(0);
+        return Arrays.copyOf(output, size);
+    }
+
+    private void literals(int start, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (stateByte >= 0 && count <= 3) {
+            output[stateByte] |= count;
+        } else if (stateByte < 0 && count <= MAX_FIRST_LITERALS) {
+            write(17 + count);
+        } else if (count - 3 <= 15) {
+            write(count - 3);
+        } else {
+            write(0);
+            extendedLength(count - 3 - 15);
+        }
+        ensureCapacity(count);
+        System.arraycopy(data, start, output, size, count);
+        size += count;
+    }
+
+    private void match(int distance, int length) {
+        if (length <= M2_MAX_LENGTH && distance <= M2_MAX_OFFSET) {
+            int d = distance - 1;
+            stateByte = size;
+            write((length - 1) << 5 | (d & 7) << 2);
+            write(d >> 3);
+            return;
+        }
+        int d;
+        if (distance <= M3_MAX_OFFSET) {
+            d = distance - 1;
+            if (length - 2 <= 31) {
+                write(32 | (length - 2));
+            } else {
+                write(32);
+                extendedLength(length - 2 - 31);
+            }
+        } else {
+            d = distance - M3_MAX_OFFSET;
+            int high = (d & 0x4000) >> 11;
+            if (length - 2 <= 7) {
+                write(16 | high | (length - 2));
+            } else {
+                write(16 | high);
+                extendedLength(length - 2 - 7);
+            }
+        }
+        stateByte = size;
+        write((d & 63) << 2);
+        write((d >> 6) & 0xff);
+    }
+
+    /**
+     * Writes a zero byte for every 255 of the length, then the non-zero remainder
+     */
+    private void extendedLength(int length) {
+        while (length > 255) {
+            write(0);
+            length -= 255;
+        }
+        write(length);
+    }
+
+    private void write(int b) {
+        ensureCapacity(1);
+        output[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int count) {
+        if (size + count > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, size + count));
+        }
+    }
+
+    private boolean matches(int candidate, int position) {
+        for (int i = 0; i < MIN_MATCH; i++) {
+            if (data[candidate + i] != data[position + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int position) {
+        int value = (data[position] & 0xff) | (data[position + 1] & 0xff) << 8 | (data[position + 2] & 0xff) << 16
+                | (data[position + 3] & 0xff) << 24;
+        return (value * 0x9e3779b1) >>> (32 - HASH_BITS);
+    }
+}
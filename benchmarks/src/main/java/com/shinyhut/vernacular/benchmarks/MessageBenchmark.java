@@ -0,0 +1,204 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.protocol.messages.ClientCutText;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.FramebufferUpdate;
+import com.shinyhut.vernacular.protocol.messages.FramebufferUpdateRequest;
+import com.shinyhut.vernacular.protocol.messages.KeyEvent;
+import com.shinyhut.vernacular.protocol.messages.MessageCodec;
+import com.shinyhut.vernacular.protocol.messages.PointerEvent;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+import com.shinyhut.vernacular.protocol.messages.ServerCutText;
+import com.shinyhut.vernacular.protocol.messages.SetColorMapEntries;
+import com.shinyhut.vernacular.protocol.messages.SetEncodings;
+import com.shinyhut.vernacular.protocol.messages.SetPixelFormat;
+
+import static java.util.Collections.nCopies;
+
+/**
+ * Measures the decoding of server messages and the encoding of client messages, excluding rectangle payloads
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    private static final int RECTANGLES_PER_UPDATE = 16;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final MessageCodec codec = new MessageCodec();
+
+    private ByteArrayInputStream framebufferUpdate;
+    private ByteArrayInputStream setColorMapEntries;
+    private ByteArrayInputStream serverCutText;
+
+    private List<Boolean> buttons;
+    private SetEncodings setEncodings;
+    private SetPixelFormat setPixelFormat;
+    private ClientCutText clientCutText;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream update = new ByteArrayOutputStream();
+        DataOutputStream updateOut = new DataOutputStream(update);
+        updateOut.writeShort(0);
+        updateOut.writeShort(RECTANGLES_PER_UPDATE);
+        for (int i = 0; i < RECTANGLES_PER_UPDATE; i++) {
+            updateOut.writeShort(i * 64);
+            updateOut.writeShort(i * 32);
+            updateOut.writeShort(64);
+            updateOut.writeShort(32);
+            updateOut.writeInt(Encoding.HEXTILE.getCode());
+        }
+        framebufferUpdate = new ByteArrayInputStream(update.toByteArray());
+
+        ByteArrayOutputStream colorMap = new ByteArrayOutputStream();
+        DataOutputStream colorMapOut = new DataOutputStream(colorMap);
+        colorMapOut.writeShort(0x0100);
+        colorMapOut.writeShort(0);
+        colorMapOut.writeShort(256);
+        for (int i = 0; i < 256; i++) {
+            colorMapOut.writeShort(i * 257);
+            colorMapOut.writeShort((255 - i) * 257);
+            colorMapOut.writeShort((i * 7 & 0xff) * 257);
+        }
+        setColorMapEntries = new ByteArrayInputStream(colorMap.toByteArray());
+
+        char[] text = new char[4096];
+        Arrays.fill(text, 'x');
+        ByteArrayOutputStream cutText = new ByteArrayOutputStream();
+        DataOutputStream cutTextOut = new DataOutputStream(cutText);
+        cutTextOut.writeInt(0x03000000);
+        cutTextOut.writeInt(text.length);
+        cutTextOut.writeBytes(new String(text));
+        serverCutText = new ByteArrayInputStream(cutText.toByteArray());
+
+        buttons = nCopies(8, false);
+        setEncodings = new SetEncodings(Encoding.values());
+        setPixelFormat = new SetPixelFormat(PixelFormats.of(ColorDepth.BPP_24_TRUE, true));
+        clientCutText = new ClientCutText(new String(text));
+    }
+
+    @Benchmark
+    public int decodeFramebufferUpdate() throws IOException, VncException {
+        framebufferUpdate.reset();
+        FramebufferUpdate update = FramebufferUpdate.decode(framebufferUpdate);
+        int area = 0;
+        for (int i = 0; i < update.getNumberOfRectangles(); i++) {
+            Rectangle rectangle = Rectangle.decode(framebufferUpdate);
+            area += rectangle.getWidth() * rectangle.getHeight();
+        }
+        return area;
+    }
+
+    @Benchmark
+    public int readFramebufferUpdate() throws IOException, VncException {
+        framebufferUpdate.reset();
+        FramebufferUpdate update = codec.readFramebufferUpdate(framebufferUpdate);
+        int area = 0;
+        for (int i = 0; i < update.getNumberOfRectangles(); i++) {
+            Rectangle rectangle = codec.readRectangle(framebufferUpdate);
+            area += rectangle.getWidth() * rectangle.getHeight();
+        }
+        return area;
+    }
+
+    @Benchmark
+    public SetColorMapEntries decodeSetColorMapEntries() throws IOException {
+        setColorMapEntries.reset();
+        return SetColorMapEntries.decode(setColorMapEntries);
+    }
+
+    @Benchmark
+    public ServerCutText decodeServerCutText() throws IOException {
+        serverCutText.reset();
+        return ServerCutText.decode(serverCutText);
+    }
+
+    @Benchmark
+    public int encodeKeyEvent() throws IOException {
+        out.reset();
+        new KeyEvent(0xff0d, true).encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodePointerEvent() throws IOException {
+        out.reset();
+        new PointerEvent(640, 360, buttons).encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeFramebufferUpdateRequest() throws IOException {
+        out.reset();
+        new FramebufferUpdateRequest(true, 0, 0, 1920, 1080).encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeKeyEvent() throws IOException {
+        out.reset();
+        codec.writeKeyEvent(out, 0xff0d, true);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writePointerEvent() throws IOException {
+        out.reset();
+        codec.writePointerEvent(out, 640, 360, 0);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeFramebufferUpdateRequest() throws IOException {
+        out.reset();
+        codec.writeFramebufferUpdateRequest(out, true, 0, 0, 1920, 1080);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeSetEncodings() throws IOException {
+        out.reset();
+        setEncodings.encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeSetPixelFormat() throws IOException {
+        out.reset();
+        setPixelFormat.encode(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeClientCutText() throws IOException {
+        out.reset();
+        clientCutText.encode(out);
+        return out.size();
+    }
+}
@@ -0,0 +1,78 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+/**
+ * The encoded data for a set of rectangles covering an image, held as one chunk per rectangle.
+ * <p>
+ * The zlib based encodings keep their compression state for the whole session, so the same compressed data cannot be
+ * decoded twice by one renderer. For these encodings the image is compressed twice on the same stream, flushing the
+ * compressor's history after each copy: the first copy, the primer, is decoded once to set up the renderer's zlib
+ * streams, and the second copy can then be decoded any number of times.
+ */
+final class Payload {
+
+    private final List<Rectangle> rectangles;
+    private final List<byte[]> primer;
+    private final List<byte[]> data;
+    private final byte[] concatenatedData;
+    private final long pixels;
+
+    Payload(List<Rectangle> rectangles, List<byte[]> primer, List<byte[]> data) {
+        this.rectangles = rectangles;
+        this.primer = primer;
+        this.data = data;
+        this.concatenatedData = concatenate(data);
+        this.pixels = rectangles.stream().mapToLong(r -> (long) r.getWidth() * r.getHeight()).sum();
+    }
+
+    List<Rectangle> getRectangles() {
+        return rectangles;
+    }
+
+    boolean hasPrimer() {
+        return primer != null;
+    }
+
+    /**
+     * @return The encoded data for each rectangle, as it should be decoded the first time
+     */
+    List<byte[]> getPrimerChunks() {
+        return hasPrimer() ? primer : data;
+    }
+
+    /**
+     * @return The encoded data for each rectangle, as it should be decoded every time after the first
+     */
+    List<byte[]> getDataChunks() {
+        return data;
+    }
+
+    ByteArrayInputStream primer() {
+        return new ByteArrayInputStream(concatenate(getPrimerChunks()));
+    }
+
+    ByteArrayInputStream data() {
+        return new ByteArrayInputStream(concatenatedData);
+    }
+
+    int getLength() {
+        return concatenatedData.length;
+    }
+
+    long getPixels() {
+        return pixels;
+    }
+
+    private static byte[] concatenate(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, chunk.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,732 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_INDEXED;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.min;
+import static java.util.Collections.singletonList;
+import static java.util.zip.Deflater.FULL_FLUSH;
+
+/**
+ * Encodes an image the way a typical server would, producing the payloads the renderers are benchmarked against.
+ * <p>
+ * The encoders favour simplicity over compression ratio, but pick between the sub-encodings of each encoding (solid,
+ * palette, run-length, raw, etc.) based on the content, so that every decoding path is exercised in realistic
+ * proportions. Tight rectangles with more than 256 colors are sent as JPEG images when the pixel format allows it, as
+ * a server would when the client requests a JPEG quality level. JPEG payloads are lossy in every pixel format.
+ */
+final class PayloadEncoder {
+
+    private static final int CORRE_MAX_SIZE = 255;
+    private static final int HEXTILE_TILE_SIZE = 16;
+    private static final int ZLIBHEX_MIN_SIZE = 32;
+    private static final int TIGHT_TILE_SIZE = 256;
+    private static final int JPEG_TILE_SIZE = 128;
+    private static final int TRLE_TILE_SIZE = 16;
+    private static final int ZRLE_TILE_SIZE = 64;
+
+    /**
+     * The JPEG quality level at which ZYWRLE payloads are encoded, at which servers apply 3 levels of the wavelet
+     * transform
+     */
+    static final int ZYWRLE_QUALITY = 0;
+    private static final int ZYWRLE_LEVEL = 3;
+
+    private final PixelFormat pixelFormat;
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+
+    private final Deflater[] deflaters = {new Deflater(), new Deflater(), new Deflater(), new Deflater()};
+    private int startedTightStreams;
+    private List<Integer> previousPalette;
+
+    private PayloadEncoder(PixelFormat pixelFormat, int[] pixels, int width, int height) {
+        this.pixelFormat = pixelFormat;
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = pixelFormat.getBytesPerPixel();
+    }
+
+    static Payload encode(Encoding encoding, PixelFormat pixelFormat, int[] pixels, int width, int height) {
+        try {
+            return new PayloadEncoder(pixelFormat, pixels, width, height).encode(encoding);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Payload encode(Encoding encoding) throws IOException {
+        List<Rectangle> rectangles = new ArrayList<>();
+        List<byte[]> chunks = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        switch (encoding) {
+            case RAW:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                raw(out, 0, 0, width, height);
+                return single(rectangles, out.toByteArray());
+            case COPYRECT:
+                rectangles.add(new Rectangle(0, 1, width, height - 1, encoding));
+                new DataOutputStream(out).writeInt(0);
+                return single(rectangles, out.toByteArray());
+            case RRE:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                rre(out, 0, 0, width, height, 2);
+                return single(rectangles, out.toByteArray());
+            case CORRE:
+                for (int y = 0; y < height; y += CORRE_MAX_SIZE) {
+                    for (int x = 0; x < width; x += CORRE_MAX_SIZE) {
+                        int w = min(CORRE_MAX_SIZE, width - x);
+                        int h = min(CORRE_MAX_SIZE, height - y);
+                        rectangles.add(new Rectangle(x, y, w, h, encoding));
+                        out.reset();
+                        rre(out, x, y, w, h, 1);
+                        chunks.add(out.toByteArray());
+                    }
+                }
+                return new Payload(rectangles, null, chunks);
+            case HEXTILE:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                hextile(out, false);
+                return single(rectangles, out.toByteArray());
+            case ZLIBHEX:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                hextile(out, true);
+                byte[] zlibHexPrimer = out.toByteArray();
+                out.reset();
+                hextile(out, true);
+                return new Payload(rectangles, singletonList(zlibHexPrimer), singletonList(out.toByteArray()));
+            case ZLIB:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                raw(out, 0, 0, width, height);
+                byte[] primer = zlib(out.toByteArray());
+                return new Payload(rectangles, singletonList(primer), singletonList(zlib(out.toByteArray())));
+            case ULTRA:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                raw(out, 0, 0, width, height);
+                byte[] lzo = LzoEncoder.compress(out.toByteArray());
+                out.reset();
+                new DataOutputStream(out).writeInt(lzo.length);
+                out.write(lzo);
+                return single(rectangles, out.toByteArray());
+            case TIGHT:
+                for (int y = 0; y < height; y += TIGHT_TILE_SIZE) {
+                    for (int x = 0; x < width; x += TIGHT_TILE_SIZE) {
+                        rectangles.add(new Rectangle(x, y, min(TIGHT_TILE_SIZE, width - x),
+                                min(TIGHT_TILE_SIZE, height - y), encoding));
+                    }
+                }
+                return new Payload(rectangles, tight(rectangles), tight(rectangles));
+            case TIGHT_PNG:
+                for (int y = 0; y < height; y += TIGHT_TILE_SIZE) {
+                    for (int x = 0; x < width; x += TIGHT_TILE_SIZE) {
+                        rectangles.add(new Rectangle(x, y, min(TIGHT_TILE_SIZE, width - x),
+                                min(TIGHT_TILE_SIZE, height - y), encoding));
+                    }
+                }
+                return new Payload(rectangles, null, tightPng(rectangles));
+            case JPEG:
+                for (int y = 0; y < height; y += JPEG_TILE_SIZE) {
+                    for (int x = 0; x < width; x += JPEG_TILE_SIZE) {
+                        rectangles.add(new Rectangle(x, y, min(JPEG_TILE_SIZE, width - x),
+                                min(JPEG_TILE_SIZE, height - y), encoding));
+                    }
+                }
+                return new Payload(rectangles, null, jpeg(rectangles));
+            case TRLE:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                return single(rectangles, tiles(TRLE_TILE_SIZE, true));
+            case ZRLE:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                return new Payload(rectangles, singletonList(zrle(0)), singletonList(zrle(0)));
+            case ZYWRLE:
+                rectangles.add(new Rectangle(0, 0, width, height, encoding));
+                int level = WaveletEncoder.supports(pixelFormat) ? ZYWRLE_LEVEL : 0;
+                return new Payload(rectangles, singletonList(zrle(level)), singletonList(zrle(level)));
+            default:
+                throw new IllegalArgumentException("No benchmark encoder for " + encoding);
+        }
+    }
+
+    private static Payload single(List<Rectangle> rectangles, byte[] data) {
+        return new Payload(rectangles, null, singletonList(data));
+    }
+
+    private void raw(ByteArrayOutputStream out, int x, int y, int w, int h) {
+        for (int row = y; row < y + h; row++) {
+            for (int column = x; column < x + w; column++) {
+                PixelFormats.write(out, pixels[row * width + column], pixelFormat);
+            }
+        }
+    }
+
+    private byte[] zlib(byte[] data) throws IOException {
+        byte[] compressed = compress(deflaters[0], data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DataOutputStream(out).writeInt(compressed.length);
+        out.write(compressed);
+        return out.toByteArray();
+    }
+
+    /**
+     * Sends every run of non-background pixels within a row as a subrectangle one pixel high
+     */
+    private void rre(ByteArrayOutputStream out, int x, int y, int w, int h, int coordinateSize) throws IOException {
+        int background = mostCommon(x, y, w, h);
+        List<int[]> runs = runs(x, y, w, h, background);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(runs.size());
+        PixelFormats.write(out, background, pixelFormat);
+        for (int[] run : runs) {
+            PixelFormats.write(out, run[0], pixelFormat);
+            coordinate(out, run[1], coordinateSize);
+            coordinate(out, run[2], coordinateSize);
+            coordinate(out, run[3], coordinateSize);
+            coordinate(out, 1, coordinateSize);
+        }
+    }
+
+    private static void coordinate(ByteArrayOutputStream out, int value, int size) {
+        if (size == 2) {
+            out.write(value >> 8);
+        }
+        out.write(value);
+    }
+
+    /**
+     * @param zlib Whether to compress tiles as ZlibHex does, with raw tiles and all other tiles sent through separate
+     *             zlib streams. The first tile is then always sent raw through the raw stream and the second always
+     *             through the other stream, raw or not, so that each copy of the image starts both streams whatever its
+     *             content.
+     */
+    private void hextile(ByteArrayOutputStream out, boolean zlib) {
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        boolean backgroundValid = false;
+        int lastBackground = 0;
+        int index = 0;
+        for (int y = 0; y < height; y += HEXTILE_TILE_SIZE) {
+            for (int x = 0; x < width; x += HEXTILE_TILE_SIZE, index++) {
+                int w = min(HEXTILE_TILE_SIZE, width - x);
+                int h = min(HEXTILE_TILE_SIZE, height - y);
+                int background = mostCommon(x, y, w, h);
+                List<int[]> runs = runs(x, y, w, h, background);
+                boolean colored = runs.stream().anyMatch(run -> run[0] != runs.get(0)[0]);
+                int length = 1 + bytesPerPixel * 2 + runs.size() * (colored ? bytesPerPixel + 2 : 2);
+                tile.reset();
+
+                if (runs.size() > 255 || length > 1 + w * h * bytesPerPixel || (zlib && index == 0)) {
+                    raw(tile, x, y, w, h);
+                    hextileTile(out, 0x01, tile, zlib, index);
+                    backgroundValid = false;
+                    continue;
+                }
+
+                boolean sendBackground = !backgroundValid || background != lastBackground;
+                int subencoding = sendBackground ? 0x02 : 0;
+                if (!runs.isEmpty()) {
+                    subencoding |= 0x08 | (colored ? 0x10 : 0x04);
+                }
+                if (sendBackground) {
+                    PixelFormats.write(tile, background, pixelFormat);
+                }
+                if (!runs.isEmpty()) {
+                    if (!colored) {
+                        PixelFormats.write(tile, runs.get(0)[0], pixelFormat);
+                    }
+                    tile.write(runs.size());
+                    for (int[] run : runs) {
+                        if (colored) {
+                            PixelFormats.write(tile, run[0], pixelFormat);
+                        }
+                        tile.write((run[1] << 4) | run[2]);
+                        tile.write((run[3] - 1) << 4);
+                    }
+                }
+                hextileTile(out, subencoding, tile, zlib, index);
+                backgroundValid = true;
+                lastBackground = background;
+            }
+        }
+    }
+
+    /**
+     * Writes a tile, compressing it if it is large enough for compression to pay off, as ZlibHex servers do
+     */
+    private void hextileTile(ByteArrayOutputStream out, int subencoding, ByteArrayOutputStream tile, boolean zlib,
+                             int index) {
+        byte[] data = tile.toByteArray();
+        if (!zlib || (data.length < ZLIBHEX_MIN_SIZE && index > 1)) {
+            out.write(subencoding);
+            out.write(data, 0, data.length);
+            return;
+        }
+        boolean rawStream = subencoding == 0x01 && index != 1;
+        byte[] compressed = compress(deflaters[rawStream ? 0 : 1], data);
+        out.write(subencoding | (rawStream ? 0x20 : 0x40));
+        out.write(compressed.length >> 8);
+        out.write(compressed.length);
+        out.write(compressed, 0, compressed.length);
+    }
+
+    private List<byte[]> tight(List<Rectangle> rectangles) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean rgb = pixelFormat.isTrueColor() && pixelFormat.getBitsPerPixel() == 32 && pixelFormat.getDepth() == 24;
+        for (Rectangle rectangle : rectangles) {
+            out.reset();
+            int started = startedTightStreams;
+            int x = rectangle.getX();
+            int y = rectangle.getY();
+            int w = rectangle.getWidth();
+            int h = rectangle.getHeight();
+            Map<Integer, Integer> palette = palette(x, y, w, h, 256);
+
+            if (palette.size() == 1) {
+                out.write(0x80);
+                tightPixel(out, pixels[y * width + x], rgb);
+            } else if (palette.size() > 256 && rgb) {
+                byte[] jpeg = jpeg(x, y, w, h);
+                out.write(0x90);
+                compactLength(out, jpeg.length);
+                out.write(jpeg);
+            } else if (palette.size() <= 256) {
+                int stream = palette.size() == 2 ? 1 : 2;
+                out.write(0x40 | (stream << 4));
+                out.write(1);
+                out.write(palette.size() - 1);
+                for (int color : palette.keySet()) {
+                    tightPixel(out, color, rgb);
+                }
+                ByteArrayOutputStream indices = new ByteArrayOutputStream();
+                if (palette.size() == 2) {
+                    packIndices(indices, palette, x, y, w, h, 1);
+                } else {
+                    for (int row = y; row < y + h; row++) {
+                        for (int column = x; column < x + w; column++) {
+                            indices.write(palette.get(pixels[row * width + column]));
+                        }
+                    }
+                }
+                tightData(out, stream, indices.toByteArray());
+            } else {
+                out.write(0x00);
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                for (int row = y; row < y + h; row++) {
+                    for (int column = x; column < x + w; column++) {
+                        tightPixel(data, pixels[row * width + column], rgb);
+                    }
+                }
+                tightData(out, 0, data.toByteArray());
+            }
+            byte[] chunk = out.toByteArray();
+            chunk[0] |= startedTightStreams & ~started;
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Sends solid rectangles as fills and everything else as PNG images, using a palette where there are few enough
+     * colors, as QEMU does
+     */
+    private List<byte[]> tightPng(List<Rectangle> rectangles) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean rgb = pixelFormat.isTrueColor() && pixelFormat.getBitsPerPixel() == 32 && pixelFormat.getDepth() == 24;
+        for (Rectangle rectangle : rectangles) {
+            out.reset();
+            int x = rectangle.getX();
+            int y = rectangle.getY();
+            int w = rectangle.getWidth();
+            int h = rectangle.getHeight();
+            Map<Integer, Integer> palette = palette(x, y, w, h, 256);
+
+            if (palette.size() == 1) {
+                out.write(0x80);
+                tightPixel(out, pixels[y * width + x], rgb);
+            } else {
+                byte[] png = png(x, y, w, h, palette);
+                out.write(0xa0);
+                compactLength(out, png.length);
+                out.write(png);
+            }
+            chunks.add(out.toByteArray());
+        }
+        return chunks;
+    }
+
+    private void tightPixel(ByteArrayOutputStream out, int value, boolean rgb) {
+        if (rgb) {
+            out.write(value >>> pixelFormat.getRedShift());
+            out.write(value >>> pixelFormat.getGreenShift());
+            out.write(value >>> pixelFormat.getBlueShift());
+        } else {
+            PixelFormats.write(out, value, pixelFormat);
+        }
+    }
+
+    /**
+     * Writes data on one of the zlib streams, starting the stream the first time it is used. Each zlib stream is
+     * reset by the first rectangle to use it, as a server does at the start of a session, so that chunks from a fresh
+     * encoder can be decoded mid-session.
+     */
+    private void tightData(ByteArrayOutputStream out, int stream, byte[] data) throws IOException {
+        if (data.length < 12) {
+            out.write(data);
+        } else {
+            startedTightStreams |= 1 << stream;
+            byte[] compressed = compress(deflaters[stream], data);
+            compactLength(out, compressed.length);
+            out.write(compressed);
+        }
+    }
+
+    private static void compactLength(ByteArrayOutputStream out, int length) {
+        out.write((length & 0x7f) | (length > 0x7f ? 0x80 : 0));
+        if (length > 0x7f) {
+            out.write(((length >> 7) & 0x7f) | (length > 0x3fff ? 0x80 : 0));
+            if (length > 0x3fff) {
+                out.write(length >> 14);
+            }
+        }
+    }
+
+    /**
+     * Sends every rectangle as a JPEG image. Every image is compressed with the same tables, so like QEMU, only the
+     * first image includes them.
+     */
+    private List<byte[]> jpeg(List<Rectangle> rectangles) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        for (Rectangle rectangle : rectangles) {
+            byte[] jpeg = jpeg(rectangle.getX(), rectangle.getY(), rectangle.getWidth(), rectangle.getHeight());
+            chunks.add(chunks.isEmpty() ? jpeg : withoutTables(jpeg));
+        }
+        return chunks;
+    }
+
+    /**
+     * Removes the quantization (DQT) and Huffman (DHT) table segments which precede the start of scan (SOS)
+     */
+    private static byte[] withoutTables(byte[] jpeg) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        int offset = 2;
+        while ((jpeg[offset + 1] & 0xff) != 0xda) {
+            int type = jpeg[offset + 1] & 0xff;
+            int length = 2 + ((jpeg[offset + 2] & 0xff) << 8 | (jpeg[offset + 3] & 0xff));
+            if (type != 0xdb && type != 0xc4) {
+                out.write(jpeg, offset, length);
+            }
+            offset += length;
+        }
+        out.write(jpeg, offset, jpeg.length - offset);
+        return out.toByteArray();
+    }
+
+    private byte[] jpeg(int x, int y, int w, int h) throws IOException {
+        BufferedImage image = new BufferedImage(w, h, TYPE_INT_RGB);
+        for (int row = 0; row < h; row++) {
+            for (int column = 0; column < w; column++) {
+                image.setRGB(column, row, rgb(pixels[(y + row) * width + x + column]));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private byte[] png(int x, int y, int w, int h, Map<Integer, Integer> palette) throws IOException {
+        BufferedImage image;
+        if (palette.size() <= 256) {
+            int[] colors = new int[palette.size()];
+            palette.forEach((value, index) -> colors[index] = rgb(value));
+            IndexColorModel colorModel = new IndexColorModel(8, colors.length, colors, 0, false, -1, DataBuffer.TYPE_BYTE);
+            image = new BufferedImage(w, h, TYPE_BYTE_INDEXED, colorModel);
+            for (int row = 0; row < h; row++) {
+                for (int column = 0; column < w; column++) {
+                    image.getRaster().setSample(column, row, 0, palette.get(pixels[(y + row) * width + x + column]));
+                }
+            }
+        } else {
+            image = new BufferedImage(w, h, TYPE_INT_RGB);
+            for (int row = 0; row < h; row++) {
+                for (int column = 0; column < w; column++) {
+                    image.setRGB(column, row, rgb(pixels[(y + row) * width + x + column]));
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Expands a pixel value to 8 bit color channels, as a server does before compressing it as an image. Indexed
+     * formats are treated as having a 3-3-2 palette.
+     */
+    private int rgb(int value) {
+        if (!pixelFormat.isTrueColor()) {
+            return stretch(value >> 5 & 7, 7) << 16 | stretch(value >> 2 & 7, 7) << 8 | stretch(value & 3, 3);
+        }
+        return stretch(value >>> pixelFormat.getRedShift() & pixelFormat.getRedMax(), pixelFormat.getRedMax()) << 16
+                | stretch(value >>> pixelFormat.getGreenShift() & pixelFormat.getGreenMax(), pixelFormat.getGreenMax()) << 8
+                | stretch(value >>> pixelFormat.getBlueShift() & pixelFormat.getBlueMax(), pixelFormat.getBlueMax());
+    }
+
+    private static int stretch(int value, int max) {
+        return (int) (value * ((double) 255 / max));
+    }
+
+    private byte[] zrle(int waveletLevel) throws IOException {
+        return zlib(tiles(ZRLE_TILE_SIZE, false, waveletLevel));
+    }
+
+    private byte[] tiles(int tileSize, boolean reusePalettes) {
+        return tiles(tileSize, reusePalettes, 0);
+    }
+
+    /**
+     * Encodes the tiles of a TRLE, ZRLE or ZYWRLE rectangle. TRLE tiles whose palette is the same as the previous
+     * palette sent reuse it rather than sending it again. ZYWRLE tiles which would be sent raw are sent as a nested tile
+     * of wavelet coefficients instead.
+     */
+    private byte[] tiles(int tileSize, boolean reusePalettes, int waveletLevel) {
+        ByteArrayOutputStream tiles = new ByteArrayOutputStream();
+        int compactShift = compactShift();
+        int compactBytes = compactShift < 0 ? bytesPerPixel : 3;
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                int w = min(tileSize, width - x);
+                int h = min(tileSize, height - y);
+                tile(tiles, x, y, w, h, compactShift, compactBytes, reusePalettes, waveletLevel);
+            }
+        }
+        return tiles.toByteArray();
+    }
+
+    private void tile(ByteArrayOutputStream out, int x, int y, int w, int h, int compactShift, int compactBytes,
+                      boolean reusePalettes, int waveletLevel) {
+        Map<Integer, Integer> palette = palette(x, y, w, h, 127);
+        boolean reuse = reusePalettes && new ArrayList<>(palette.keySet()).equals(previousPalette);
+        int runCount = 0;
+        int previous = 0;
+        for (int i = 0; i < w * h; i++) {
+            int value = pixels[(y + i / w) * width + x + i % w];
+            if (i == 0 || value != previous) {
+                runCount++;
+            }
+            previous = value;
+        }
+
+        if (palette.size() == 1) {
+            out.write(1);
+            compactPixel(out, pixels[y * width + x], compactShift, compactBytes);
+        } else if (palette.size() <= 16) {
+            writePalette(out, palette, reuse ? 127 : palette.size(), compactShift, compactBytes);
+            packIndices(out, palette, x, y, w, h, palette.size() == 2 ? 1 : palette.size() <= 4 ? 2 : 4);
+        } else if (palette.size() <= 127 && runCount * 2 < w * h) {
+            writePalette(out, palette, reuse ? 129 : 128 + palette.size(), compactShift, compactBytes);
+            forEachRun(x, y, w, h, (value, length) -> {
+                int index = palette.get(value);
+                if (length == 1) {
+                    out.write(index);
+                } else {
+                    out.write(index | 0x80);
+                    runLength(out, length);
+                }
+            });
+        } else if (runCount * (compactBytes + 1) < w * h * compactBytes) {
+            out.write(128);
+            forEachRun(x, y, w, h, (value, length) -> {
+                compactPixel(out, value, compactShift, compactBytes);
+                runLength(out, length);
+            });
+        } else if (waveletLevel > 0) {
+            out.write(0);
+            int[] tile = new int[w * h];
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(pixels, (y + row) * width + x, tile, row * w, w);
+            }
+            int[] coefficients = WaveletEncoder.encode(tile, w, h, waveletLevel, pixelFormat);
+            new PayloadEncoder(pixelFormat, coefficients, w, h)
+                    .tile(out, 0, 0, w, h, compactShift, compactBytes, false, 0);
+        } else {
+            out.write(0);
+            for (int row = y; row < y + h; row++) {
+                for (int column = x; column < x + w; column++) {
+                    compactPixel(out, pixels[row * width + column], compactShift, compactBytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a palette subencoding, followed by the palette itself unless the subencoding reuses the previous one
+     */
+    private void writePalette(ByteArrayOutputStream out, Map<Integer, Integer> palette, int subencoding,
+                              int compactShift, int compactBytes) {
+        out.write(subencoding);
+        if (subencoding != 127 && subencoding != 129) {
+            for (int color : palette.keySet()) {
+                compactPixel(out, color, compactShift, compactBytes);
+            }
+            previousPalette = new ArrayList<>(palette.keySet());
+        }
+    }
+
+    /**
+     * @return The number of bits to shift pixel values right to make them CPIXELs, or -1 if pixels are sent whole
+     */
+    private int compactShift() {
+        if (!pixelFormat.isTrueColor() || pixelFormat.getBitsPerPixel() != 32 || pixelFormat.getDepth() > 24) {
+            return -1;
+        }
+        long limit = 1L << 24;
+        if (((long) pixelFormat.getRedMax() << pixelFormat.getRedShift()) < limit
+                && ((long) pixelFormat.getGreenMax() << pixelFormat.getGreenShift()) < limit
+                && ((long) pixelFormat.getBlueMax() << pixelFormat.getBlueShift()) < limit) {
+            return 0;
+        }
+        return 8;
+    }
+
+    private void compactPixel(ByteArrayOutputStream out, int value, int compactShift, int compactBytes) {
+        PixelFormats.write(out, value >>> Math.max(compactShift, 0), compactBytes, pixelFormat.isBigEndian());
+    }
+
+    private static void runLength(ByteArrayOutputStream out, int length) {
+        int remaining = length - 1;
+        while (remaining >= 255) {
+            out.write(255);
+            remaining -= 255;
+        }
+        out.write(remaining);
+    }
+
+    private interface RunConsumer {
+        void accept(int value, int length);
+    }
+
+    private void forEachRun(int x, int y, int w, int h, RunConsumer consumer) {
+        int value = pixels[y * width + x];
+        int length = 0;
+        for (int i = 0; i < w * h; i++) {
+            int next = pixels[(y + i / w) * width + x + i % w];
+            if (next != value) {
+                consumer.accept(value, length);
+                value = next;
+                length = 0;
+            }
+            length++;
+        }
+        consumer.accept(value, length);
+    }
+
+    /**
+     * Packs palette indices into the specified number of bits, most significant bits first, padding each row to a
+     * whole number of bytes
+     */
+    private void packIndices(ByteArrayOutputStream out, Map<Integer, Integer> palette, int x, int y, int w, int h,
+                             int bits) {
+        for (int row = y; row < y + h; row++) {
+            int accumulator = 0;
+            int count = 0;
+            for (int column = x; column < x + w; column++) {
+                accumulator = (accumulator << bits) | palette.get(pixels[row * width + column]);
+                count += bits;
+                if (count == 8) {
+                    out.write(accumulator);
+                    accumulator = 0;
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                out.write(accumulator << (8 - count));
+            }
+        }
+    }
+
+    /**
+     * @return The distinct colors in a region mapped to their palette index, stopping once the limit is exceeded
+     */
+    private Map<Integer, Integer> palette(int x, int y, int w, int h, int limit) {
+        Map<Integer, Integer> palette = new LinkedHashMap<>();
+        for (int row = y; row < y + h; row++) {
+            for (int column = x; column < x + w; column++) {
+                palette.putIfAbsent(pixels[row * width + column], palette.size());
+                if (palette.size() > limit) {
+                    return palette;
+                }
+            }
+        }
+        return palette;
+    }
+
+    private int mostCommon(int x, int y, int w, int h) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int row = y; row < y + h; row++) {
+            for (int column = x; column < x + w; column++) {
+                counts.merge(pixels[row * width + column], 1, Integer::sum);
+            }
+        }
+        return counts.entrySet().stream().max(Map.Entry.comparingByValue()).get().getKey();
+    }
+
+    /**
+     * @return Each horizontal run of pixels of the same color, other than the background color, as {color, x, y,
+     * length} relative to the region
+     */
+    private List<int[]> runs(int x, int y, int w, int h, int background) {
+        List<int[]> runs = new ArrayList<>();
+        for (int row = 0; row < h; row++) {
+            int column = 0;
+            while (column < w) {
+                int value = pixels[(y + row) * width + x + column];
+                int start = column;
+                while (column < w && pixels[(y + row) * width + x + column] == value) {
+                    column++;
+                }
+                if (value != background) {
+                    runs.add(new int[]{value, start, row, column - start});
+                }
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Compresses data as the next chunk of a persistent zlib stream, flushing the compressor's history afterwards so
+     * that the following chunk does not refer back to this one
+     */
+    private static byte[] compress(Deflater deflater, byte[] data) {
+        deflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, FULL_FLUSH);
+            out.write(buffer, 0, count);
+        } while (count == buffer.length || !deflater.needsInput());
+        return out.toByteArray();
+    }
+}
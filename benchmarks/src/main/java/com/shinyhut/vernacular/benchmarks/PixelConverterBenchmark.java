@@ -0,0 +1,73 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.renderers.Palette;
+import com.shinyhut.vernacular.client.rendering.renderers.PixelConverter;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+/**
+ * Measures the conversion of a row of pixels into ARGB values, for every supported color depth and byte order
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PixelConverterBenchmark {
+
+    @Param({"BPP_8_INDEXED", "BPP_8_TRUE", "BPP_16_TRUE", "BPP_24_TRUE", "BPP_32_NATIVE"})
+    public ColorDepth colorDepth;
+
+    @Param({"true", "false"})
+    public boolean bigEndian;
+
+    @Param({"1920"})
+    public int width;
+
+    private PixelConverter converter;
+    private byte[] source;
+    private int[] destination;
+
+    @Setup
+    public void setUp() {
+        PixelFormat pixelFormat = PixelFormats.of(colorDepth, bigEndian);
+        converter = PixelConverter.forFormat(pixelFormat, new Palette());
+        source = new byte[width * pixelFormat.getBytesPerPixel()];
+        new Random(42).nextBytes(source);
+        destination = new int[width];
+    }
+
+    @Benchmark
+    public int[] convertRow(Throughput throughput) {
+        converter.convert(source, 0, destination, 0, width);
+        throughput.record(width, source.length);
+        return destination;
+    }
+
+    @Benchmark
+    public int convertPixels(Throughput throughput) {
+        int bytesPerPixel = converter.getBytesPerPixel();
+        int result = 0;
+        for (int offset = 0; offset < source.length; offset += bytesPerPixel) {
+            result ^= converter.convert(source, offset);
+        }
+        throughput.record(width, source.length);
+        return result;
+    }
+}
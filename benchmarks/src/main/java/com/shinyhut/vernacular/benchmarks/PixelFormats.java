@@ -0,0 +1,53 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+final class PixelFormats {
+
+    private PixelFormats() {
+    }
+
+    /**
+     * Builds the pixel format for a color depth in the specified byte order, except that {@link ColorDepth#BPP_32_NATIVE}
+     * is defined by its byte order, so always keeps its own
+     */
+    static PixelFormat of(ColorDepth colorDepth, boolean bigEndian) {
+        if (colorDepth == ColorDepth.BPP_32_NATIVE) {
+            bigEndian = colorDepth.isBigEndian();
+        }
+        return new PixelFormat(colorDepth.getBitsPerPixel(), colorDepth.getDepth(), bigEndian, colorDepth.isTrueColor(),
+                colorDepth.getRedMax(), colorDepth.getGreenMax(), colorDepth.getBlueMax(),
+                colorDepth.getRedShift(), colorDepth.getGreenShift(), colorDepth.getBlueShift());
+    }
+
+    /**
+     * Builds the pixel value closest to the specified 8 bit color channels. Indexed formats are treated as having a
+     * 3-3-2 palette.
+     */
+    static int value(PixelFormat pixelFormat, int red, int green, int blue) {
+        if (!pixelFormat.isTrueColor()) {
+            return (red >> 5) << 5 | (green >> 5) << 2 | (blue >> 6);
+        }
+        return scale(red, pixelFormat.getRedMax()) << pixelFormat.getRedShift()
+                | scale(green, pixelFormat.getGreenMax()) << pixelFormat.getGreenShift()
+                | scale(blue, pixelFormat.getBlueMax()) << pixelFormat.getBlueShift();
+    }
+
+    private static int scale(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+
+    static void write(ByteArrayOutputStream out, int value, int bytesPerPixel, boolean bigEndian) {
+        for (int i = 0; i < bytesPerPixel; i++) {
+            int shift = 8 * (bigEndian ? bytesPerPixel - 1 - i : i);
+            out.write(value >>> shift);
+        }
+    }
+
+    static void write(ByteArrayOutputStream out, int value, PixelFormat pixelFormat) {
+        write(out, value, pixelFormat.getBytesPerPixel(), pixelFormat.isBigEndian());
+    }
+}
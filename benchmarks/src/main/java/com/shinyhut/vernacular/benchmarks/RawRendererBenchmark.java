@@ -0,0 +1,129 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.renderers.Palette;
+import com.shinyhut.vernacular.client.rendering.renderers.PixelDecoder;
+import com.shinyhut.vernacular.client.rendering.renderers.RawRenderer;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Compares the bulk, row-at-a-time RAW renderer against the original one-pixel-at-a-time approach of decoding each
+ * pixel with {@link BigInteger} and writing it with {@link BufferedImage#setRGB(int, int, int)}. The original decoder
+ * is copied into the benchmark, since {@link PixelDecoder} itself now uses the new converters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RawRendererBenchmark {
+
+    @Param({"BPP_8_TRUE", "BPP_16_TRUE", "BPP_24_TRUE", "BPP_32_NATIVE"})
+    public ColorDepth colorDepth;
+
+    @Param({"1920"})
+    public int width;
+
+    @Param({"1080"})
+    public int height;
+
+    private PixelFormat pixelFormat;
+    private PixelDecoder pixelDecoder;
+    private RawRenderer rawRenderer;
+    private BufferedImage frame;
+    private Rectangle rectangle;
+    private ByteArrayInputStream payload;
+
+    @Setup
+    public void setUp() {
+        pixelFormat = new PixelFormat(colorDepth.getBitsPerPixel(), colorDepth.getDepth(), colorDepth.isBigEndian(),
+                colorDepth.isTrueColor(), colorDepth.getRedMax(), colorDepth.getGreenMax(), colorDepth.getBlueMax(),
+                colorDepth.getRedShift(), colorDepth.getGreenShift(), colorDepth.getBlueShift());
+        pixelDecoder = new PixelDecoder(new Palette());
+        pixelDecoder.setPixelFormat(pixelFormat);
+        rawRenderer = new RawRenderer(pixelDecoder);
+        frame = new BufferedImage(width, height, TYPE_INT_RGB);
+        rectangle = new Rectangle(0, 0, width, height, RAW);
+
+        byte[] pixels = new byte[width * height * pixelFormat.getBytesPerPixel()];
+        new Random(42).nextBytes(pixels);
+        payload = new ByteArrayInputStream(pixels);
+    }
+
+    @Benchmark
+    public BufferedImage bulk() throws VncException {
+        payload.reset();
+        rawRenderer.render(payload, frame, rectangle);
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage perPixel() throws IOException {
+        payload.reset();
+        int x = rectangle.getX();
+        int y = rectangle.getY();
+        int sx = x;
+        int sy = y;
+        for (int i = 0; i < rectangle.getWidth() * rectangle.getHeight(); i++) {
+            frame.setRGB(sx, sy, decode(payload, pixelFormat).getRGB());
+            sx++;
+            if (sx == x + rectangle.getWidth()) {
+                sx = x;
+                sy++;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * The original pixel decoder. Only true color formats are benchmarked, so its color map lookup is left out. It
+     * always read pixels as big endian, which changes the colors it produces for little endian formats but not the
+     * work it does.
+     */
+    private static Color decode(InputStream in, PixelFormat pixelFormat) throws IOException {
+        DataInput dataInput = new DataInputStream(in);
+        byte[] bytes = new byte[pixelFormat.getBytesPerPixel()];
+        dataInput.readFully(bytes);
+        BigInteger value = new BigInteger(1, bytes);
+
+        int red = value.shiftRight(pixelFormat.getRedShift()).intValue() & pixelFormat.getRedMax();
+        int green = value.shiftRight(pixelFormat.getGreenShift()).intValue() & pixelFormat.getGreenMax();
+        int blue = value.shiftRight(pixelFormat.getBlueShift()).intValue() & pixelFormat.getBlueMax();
+
+        return new Color(stretch(red, pixelFormat.getRedMax()), stretch(green, pixelFormat.getGreenMax()),
+                stretch(blue, pixelFormat.getBlueMax()));
+    }
+
+    private static int stretch(int value, int max) {
+        return (int) (value * ((double) 255 / max));
+    }
+}
@@ -0,0 +1,159 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.renderers.CoRRERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.CopyRectRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.HextileRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.JpegRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.Palette;
+import com.shinyhut.vernacular.client.rendering.renderers.PixelDecoder;
+import com.shinyhut.vernacular.client.rendering.renderers.RRERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.RawRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.Renderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TRLERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TightPngRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TightRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.UltraRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZLibRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZRLERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZlibHexRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZYWRLERenderer;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Measures every renderer decoding a full screen of synthetic content, in every supported color depth and byte order.
+ * <p>
+ * Each operation decodes one screen. Alongside ops/s, the {@link Throughput} counters report the pixels rendered and
+ * the megabytes of encoded data consumed per second. Run with {@code -prof gc} to report the bytes allocated per
+ * operation ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RendererBenchmark {
+
+    @Param({"RAW", "COPYRECT", "RRE", "CORRE", "HEXTILE", "ZLIB", "ZLIBHEX", "ULTRA", "TIGHT", "TIGHT_PNG", "JPEG", "TRLE", "ZRLE", "ZYWRLE"})
+    public Encoding encoding;
+
+    @Param({"BPP_8_INDEXED", "BPP_8_TRUE", "BPP_16_TRUE", "BPP_24_TRUE", "BPP_32_NATIVE"})
+    public ColorDepth colorDepth;
+
+    @Param({"true", "false"})
+    public boolean bigEndian;
+
+    @Param({"DESKTOP", "PHOTO"})
+    public Content content;
+
+    @Param({"1280"})
+    public int width;
+
+    @Param({"720"})
+    public int height;
+
+    private Renderer renderer;
+    private Payload payload;
+    private ByteArrayInputStream data;
+    private BufferedImage frame;
+
+    @Setup
+    public void setUp() throws VncException {
+        PixelFormat pixelFormat = PixelFormats.of(colorDepth, bigEndian);
+        PixelDecoder pixelDecoder = new PixelDecoder(new Palette());
+        pixelDecoder.setPixelFormat(pixelFormat);
+        renderer = renderer(encoding, pixelDecoder);
+
+        int[] pixels = content.generate(pixelFormat, width, height, new Random(42));
+        payload = PayloadEncoder.encode(encoding, pixelFormat, pixels, width, height);
+        data = payload.data();
+        frame = new BufferedImage(width, height, TYPE_INT_RGB);
+
+        if (payload.hasPrimer()) {
+            ByteArrayInputStream primer = payload.primer();
+            for (Rectangle rectangle : payload.getRectangles()) {
+                renderer.render(primer, frame, rectangle);
+            }
+            flush();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage render(Throughput throughput) throws VncException {
+        data.reset();
+        for (Rectangle rectangle : payload.getRectangles()) {
+            renderer.render(data, frame, rectangle);
+        }
+        flush();
+        throughput.record(payload.getPixels(), payload.getLength());
+        return frame;
+    }
+
+    /**
+     * JPEG rectangles are decoded in the background, and only copied into the frame once the update is complete
+     */
+    private void flush() throws VncException {
+        if (renderer instanceof JpegRenderer) {
+            ((JpegRenderer) renderer).flush();
+        }
+    }
+
+    static Renderer renderer(Encoding encoding, PixelDecoder pixelDecoder) {
+        RawRenderer rawRenderer = new RawRenderer(pixelDecoder);
+        switch (encoding) {
+            case RAW:
+                return rawRenderer;
+            case COPYRECT:
+                return new CopyRectRenderer();
+            case RRE:
+                return new RRERenderer(pixelDecoder);
+            case CORRE:
+                return new CoRRERenderer(pixelDecoder);
+            case HEXTILE:
+                return new HextileRenderer(rawRenderer, pixelDecoder);
+            case ZLIB:
+                return new ZLibRenderer(rawRenderer);
+            case ZLIBHEX:
+                return new ZlibHexRenderer(rawRenderer, pixelDecoder);
+            case ULTRA:
+                return new UltraRenderer(rawRenderer, pixelDecoder);
+            case TIGHT:
+                return new TightRenderer(rawRenderer, pixelDecoder);
+            case TIGHT_PNG:
+                return new TightPngRenderer(rawRenderer, pixelDecoder);
+            case JPEG:
+                return new JpegRenderer();
+            case TRLE:
+                return new TRLERenderer(rawRenderer, pixelDecoder);
+            case ZRLE:
+                return new ZRLERenderer(rawRenderer, pixelDecoder);
+            case ZYWRLE:
+                return new ZYWRLERenderer(rawRenderer, pixelDecoder, () -> PayloadEncoder.ZYWRLE_QUALITY);
+            default:
+                throw new IllegalArgumentException("No renderer for " + encoding);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary benchmark results, reported by JMH as rates alongside the primary ops/s score: the number of pixels
+ * rendered per second, and the number of megabytes of encoded data consumed per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long pixels;
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        pixels = 0;
+        megabytes = 0;
+    }
+
+    void record(long pixels, long bytes) {
+        this.pixels += pixels;
+        this.megabytes += bytes / 1_000_000.0;
+    }
+}
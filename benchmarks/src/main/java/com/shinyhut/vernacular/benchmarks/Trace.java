@@ -0,0 +1,139 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+import com.shinyhut.vernacular.protocol.messages.ServerInit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A recording of the messages sent by a server during a session, which can be replayed through the client's
+ * rendering pipeline.
+ * <p>
+ * A trace file consists of:
+ * <ul>
+ * <li>the pixel format requested by the client, encoded as in a SetPixelFormat message (16 bytes)</li>
+ * <li>the server's ServerInit message</li>
+ * <li>every subsequent message sent by the server, exactly as received</li>
+ * </ul>
+ * Traces of real sessions can be cut from a packet capture of the server to client stream, starting at the
+ * ServerInit message, with the pixel format from the client's SetPixelFormat message prepended.
+ * <p>
+ * Running this class writes a synthetic trace, which mixes several encodings and kinds of content:
+ * <pre>java -cp benchmarks.jar com.shinyhut.vernacular.benchmarks.Trace &lt;file&gt; [updates]</pre>
+ */
+public final class Trace {
+
+    private static final List<Encoding> SYNTHETIC_ENCODINGS = Arrays.asList(
+            Encoding.HEXTILE, Encoding.ZRLE, Encoding.COPYRECT, Encoding.TIGHT, Encoding.ZLIB, Encoding.TRLE,
+            Encoding.RRE, Encoding.ZLIBHEX, Encoding.ULTRA, Encoding.TIGHT_PNG, Encoding.JPEG, Encoding.RAW);
+
+    private final PixelFormat pixelFormat;
+    private final ServerInit serverInit;
+    private final byte[] messages;
+
+    private Trace(PixelFormat pixelFormat, ServerInit serverInit, byte[] messages) {
+        this.pixelFormat = pixelFormat;
+        this.serverInit = serverInit;
+        this.messages = messages;
+    }
+
+    static Trace read(byte[] trace) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(trace);
+        PixelFormat pixelFormat = PixelFormat.decode(in);
+        ServerInit serverInit = ServerInit.decode(in);
+        byte[] messages = new byte[in.available()];
+        in.read(messages);
+        return new Trace(pixelFormat, serverInit, messages);
+    }
+
+    PixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    int getFramebufferWidth() {
+        return serverInit.getFramebufferWidth();
+    }
+
+    int getFramebufferHeight() {
+        return serverInit.getFramebufferHeight();
+    }
+
+    InputStream messages() {
+        return new ByteArrayInputStream(messages);
+    }
+
+    int getLength() {
+        return messages.length;
+    }
+
+    /**
+     * Generates a trace of full screen updates, cycling through several encodings and alternating between desktop and
+     * photo-like content
+     */
+    static byte[] synthetic(PixelFormat pixelFormat, int width, int height, int updates) throws IOException {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(trace);
+        pixelFormat.encode(out);
+        out.writeShort(width);
+        out.writeShort(height);
+        pixelFormat.encode(out);
+        byte[] name = "synthetic".getBytes(US_ASCII);
+        out.writeInt(name.length);
+        out.write(name);
+
+        Random random = new Random(42);
+        Set<Encoding> primed = new HashSet<>();
+        for (int update = 0; update < updates; update++) {
+            Encoding encoding = SYNTHETIC_ENCODINGS.get(update % SYNTHETIC_ENCODINGS.size());
+            Content content = Content.values()[update % Content.values().length];
+            int[] pixels = content.generate(pixelFormat, width, height, random);
+            Payload payload = PayloadEncoder.encode(encoding, pixelFormat, pixels, width, height);
+
+            List<Rectangle> rectangles = payload.getRectangles();
+            // Tight primers reset the zlib streams they use, other encodings' zlib streams last the whole session
+            boolean primer = payload.hasPrimer() && (primed.add(encoding) || encoding == Encoding.TIGHT);
+            List<byte[]> chunks = primer
+                    ? payload.getPrimerChunks()
+                    : payload.getDataChunks();
+            out.writeByte(0);
+            out.writeByte(0);
+            out.writeShort(rectangles.size());
+            for (int i = 0; i < rectangles.size(); i++) {
+                Rectangle rectangle = rectangles.get(i);
+                out.writeShort(rectangle.getX());
+                out.writeShort(rectangle.getY());
+                out.writeShort(rectangle.getWidth());
+                out.writeShort(rectangle.getHeight());
+                out.writeInt(rectangle.getEncoding().getCode());
+                out.write(chunks.get(i));
+            }
+        }
+        return trace.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Trace <file> [updates]");
+            System.exit(1);
+        }
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        PixelFormat pixelFormat = PixelFormats.of(ColorDepth.BPP_24_TRUE, false);
+        Files.write(Paths.get(args[0]), synthetic(pixelFormat, 1280, 720, updates));
+    }
+}
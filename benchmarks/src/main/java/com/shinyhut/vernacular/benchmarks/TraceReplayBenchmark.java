@@ -0,0 +1,102 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.shinyhut.vernacular.client.VernacularConfig;
+import com.shinyhut.vernacular.client.VncSession;
+import com.shinyhut.vernacular.client.exceptions.UnknownMessageTypeException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.Framebuffer;
+import com.shinyhut.vernacular.protocol.messages.Bell;
+import com.shinyhut.vernacular.protocol.messages.FramebufferUpdate;
+import com.shinyhut.vernacular.protocol.messages.ServerCutText;
+import com.shinyhut.vernacular.protocol.messages.SetColorMapEntries;
+
+/**
+ * Replays a recorded {@link Trace} through a {@link Framebuffer}, exercising the whole rendering pipeline on a
+ * realistic mix of messages, encodings and rectangle sizes.
+ * <p>
+ * The trace to replay is given with {@code -p trace=<file>}. By default, a synthetic trace is generated. Each operation
+ * replays the whole trace from the start of the session into a new framebuffer, which is created outside the
+ * measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceReplayBenchmark {
+
+    @Param({""})
+    public String trace;
+
+    private Trace recording;
+    private PushbackInputStream messages;
+    private Framebuffer framebuffer;
+
+    @Setup
+    public void loadTrace() throws IOException {
+        byte[] data = trace.isEmpty()
+                ? Trace.synthetic(PixelFormats.of(ColorDepth.BPP_24_TRUE, false), 1280, 720, 32)
+                : Files.readAllBytes(Paths.get(trace));
+        recording = Trace.read(data);
+    }
+
+    @Setup(Level.Invocation)
+    public void startSession() {
+        messages = new PushbackInputStream(recording.messages());
+        VncSession session = new VncSession(new VernacularConfig(), messages, new ByteArrayOutputStream());
+        session.setPixelFormat(recording.getPixelFormat());
+        session.setFramebufferWidth(recording.getFramebufferWidth());
+        session.setFramebufferHeight(recording.getFramebufferHeight());
+        framebuffer = new Framebuffer(session);
+    }
+
+    @Benchmark
+    public Framebuffer replay(TraceThroughput throughput) throws IOException, VncException {
+        int updates = 0;
+        int messageType;
+        while ((messageType = messages.read()) != -1) {
+            messages.unread(messageType);
+            switch (messageType) {
+                case 0x00:
+                    framebuffer.processUpdate(FramebufferUpdate.decode(messages));
+                    updates++;
+                    break;
+                case 0x01:
+                    framebuffer.updateColorMap(SetColorMapEntries.decode(messages));
+                    break;
+                case 0x02:
+                    Bell.decode(messages);
+                    break;
+                case 0x03:
+                    ServerCutText.decode(messages);
+                    break;
+                default:
+                    throw new UnknownMessageTypeException(messageType);
+            }
+        }
+        throughput.record(updates, recording.getLength());
+        return framebuffer;
+    }
+}
@@ -0,0 +1,30 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary trace replay results, reported as rates: framebuffer updates processed per second, and megabytes of server
+ * messages consumed per second
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TraceThroughput {
+
+    public long updates;
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        updates = 0;
+        megabytes = 0;
+    }
+
+    void record(long updates, long bytes) {
+        this.updates += updates;
+        this.megabytes += bytes / 1_000_000.0;
+    }
+}
@@ -0,0 +1,162 @@
+package com.shinyhut.vernacular.benchmarks;
+
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+/**
+ * Applies the ZYWRLE wavelet transform to a tile, as a server does before encoding it.
+ * <p>
+ * Servers also quantize the coefficients, discarding detail according to the quality level. That step makes no
+ * difference to the work the client does and is left out, so the payloads lose only the low bits which the transform
+ * drops from 16 bpp pixels.
+ */
+final class WaveletEncoder {
+
+    private WaveletEncoder() {
+    }
+
+    static boolean supports(PixelFormat pixelFormat) {
+        return pixelFormat.isTrueColor() && (pixelFormat.getBitsPerPixel() == 16 || pixelFormat.getBitsPerPixel() == 32);
+    }
+
+    /**
+     * @param tile The tile's pixel values
+     * @return The values to send in place of the tile's pixel values, in the order they are sent
+     */
+    static int[] encode(int[] tile, int width, int height, int level, PixelFormat pixelFormat) {
+        int w = width & -(1 << level);
+        int h = height & -(1 << level);
+        if (w == 0 || h == 0) {
+            return tile;
+        }
+        int bits = bits(pixelFormat);
+        int yMask = bits == 32 ? 0xffffffff : bits == 16 ? 0xfffffffc : 0xfffffff8;
+        int uvMask = bits == 32 ? 0xffffffff : 0xfffffff8;
+
+        byte[][] channels = {new byte[w * h], new byte[w * h], new byte[w * h]};
+        for (int row = 0; row < h; row++) {
+            for (int column = 0; column < w; column++) {
+                int[] rgb = load(tile[row * width + column], bits);
+                int y = ((rgb[0] + (rgb[1] << 1) + rgb[2]) >> 2) - 128;
+                int u = (rgb[2] - rgb[1]) >> 1;
+                int v = (rgb[0] - rgb[1]) >> 1;
+                int i = row * w + column;
+                channels[0][i] = (byte) odd(v & uvMask, uvMask);
+                channels[1][i] = (byte) odd(y & yMask, yMask);
+                channels[2][i] = (byte) odd(u & uvMask, uvMask);
+            }
+        }
+
+        for (int l = 0; l < level; l++) {
+            for (int row = 0; row < h; row += 1 << l) {
+                transform(channels, row * w, w, l, 1);
+            }
+            for (int column = 0; column < w; column += 1 << l) {
+                transform(channels, column, h, l, w);
+            }
+        }
+
+        int[] values = new int[width * height];
+        int next = 0;
+        for (int l = 0; l < level; l++) {
+            next = pack(channels, values, next, w, h, l, 3, bits);
+            next = pack(channels, values, next, w, h, l, 2, bits);
+            next = pack(channels, values, next, w, h, l, 1, bits);
+            if (l == level - 1) {
+                next = pack(channels, values, next, w, h, l, 0, bits);
+            }
+        }
+        next = copy(tile, width, values, next, w, width, 0, h);
+        next = copy(tile, width, values, next, 0, w, h, height);
+        copy(tile, width, values, next, w, width, h, height);
+        return values;
+    }
+
+    /**
+     * Keeps coefficients within -127 to 127, so that the transform is exactly reversible
+     */
+    private static int odd(int value, int mask) {
+        return value == -128 ? value + ~mask + 1 : value;
+    }
+
+    private static void transform(byte[][] channels, int start, int size, int level, int skip) {
+        int step = (2 << level) * skip;
+        int distance = (1 << level) * skip;
+        int end = start + (size >> (level + 1)) * step;
+        for (int i = start; i < end; i += step) {
+            for (byte[] channel : channels) {
+                haar(channel, i, i + distance);
+            }
+        }
+    }
+
+    private static void haar(byte[] channel, int first, int second) {
+        int x0 = channel[first];
+        int x1 = channel[second];
+        int original0 = x0;
+        int original1 = x1;
+        if (((x0 ^ x1) & 0x80) != 0) {
+            x1 += x0;
+            if (((x1 ^ original1) & 0x80) == 0) {
+                x0 -= x1;
+            }
+        } else {
+            x0 -= x1;
+            if (((x0 ^ original0) & 0x80) == 0) {
+                x1 += x0;
+            }
+        }
+        channel[first] = (byte) x1;
+        channel[second] = (byte) x0;
+    }
+
+    private static int pack(byte[][] channels, int[] values, int next, int w, int h, int level, int band, int bits) {
+        int step = 2 << level;
+        int startX = (band & 1) != 0 ? step >> 1 : 0;
+        int startY = (band & 2) != 0 ? step >> 1 : 0;
+        for (int row = startY; row < h; row += step) {
+            for (int column = startX; column < w; column += step) {
+                int i = row * w + column;
+                values[next++] = save(channels[0][i], channels[1][i], channels[2][i], bits);
+            }
+        }
+        return next;
+    }
+
+    private static int copy(int[] tile, int width, int[] values, int next, int fromX, int toX, int fromY, int toY) {
+        for (int row = fromY; row < toY; row++) {
+            for (int column = fromX; column < toX; column++) {
+                values[next++] = tile[row * width + column];
+            }
+        }
+        return next;
+    }
+
+    private static int[] load(int value, int bits) {
+        switch (bits) {
+            case 15:
+                return new int[]{(value >> 7) & 0xf8, (value >> 2) & 0xf8, (value << 3) & 0xf8};
+            case 16:
+                return new int[]{(value >> 8) & 0xf8, (value >> 3) & 0xfc, (value << 3) & 0xf8};
+            default:
+                return new int[]{(value >> 16) & 0xff, (value >> 8) & 0xff, value & 0xff};
+        }
+    }
+
+    private static int save(int red, int green, int blue, int bits) {
+        switch (bits) {
+            case 15:
+                return (red & 0xf8) << 7 | (green & 0xf8) << 2 | (blue & 0xf8) >> 3;
+            case 16:
+                return (red & 0xf8) << 8 | (green & 0xfc) << 3 | (blue & 0xf8) >> 3;
+            default:
+                return (red & 0xff) << 16 | (green & 0xff) << 8 | (blue & 0xff);
+        }
+    }
+
+    private static int bits(PixelFormat pixelFormat) {
+        if (pixelFormat.getBitsPerPixel() == 32) {
+            return 32;
+        }
+        return pixelFormat.getGreenMax() > 0x1f ? 16 : 15;
+    }
+}
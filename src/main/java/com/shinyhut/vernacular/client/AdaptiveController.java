@@ -0,0 +1,277 @@
+package com.shinyhut.vernacular.client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.protocol.initialization.Initializer;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.SetEncodings;
+import com.shinyhut.vernacular.utils.CountingInputStream;
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_16_TRUE;
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_32_NATIVE;
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_8_TRUE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.COPYRECT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.HEXTILE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TIGHT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.compressLevel;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.nanoTime;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Adapts the encodings, compression level and color depth requested from the server to the link and to the client's
+ * CPU, so that a session gets as many frames per second as it can within the configured budgets.
+ * <p>
+ * The controller moves along a ladder of profiles, from one which uses the least CPU and the most bandwidth to one
+ * which uses the least bandwidth and the most CPU. After every update it records the CPU time the server event thread
+ * spent processing the update and, if the update answered a request for the whole screen, how long it took to arrive
+ * after it was requested. Incremental updates are not timed, since a server holds an incremental request until
+ * something on the screen changes, so a slow answer may only mean an idle desktop. Every couple of seconds it compares
+ * the bytes received per second and the share of a core spent processing updates with the budgets, and moves at most
+ * one step:
+ * <ul>
+ * <li>towards less bandwidth if the bandwidth budget is exceeded, or the link is congested, which shows as the fastest
+ * timed update taking several times longer to arrive than the fastest ever seen</li>
+ * <li>towards less CPU if the CPU budget is exceeded</li>
+ * <li>towards less CPU if the session is well within both budgets, unless it recently had to move away from that
+ * profile because of bandwidth, in which case it waits for more intervals with headroom each time before trying
+ * again</li>
+ * </ul>
+ * Changing profile refreshes the whole screen, so the interval after a change is not evaluated, although the time the
+ * refresh took to arrive is kept for the next interval.
+ * <p>
+ * The profile's encodings and color depth are sent to the server through the {@link ClientEventHandler}, and are kept
+ * here rather than written back to the user's {@link VernacularConfig}, which is only read. While the session uses the
+ * server's own pixel format, the color depth is never changed.
+ * <p>
+ * Measurements and decisions happen on the server event thread, so the controller is not thread safe. JPEG rectangles
+ * are decoded on a separate pool, so their CPU time is only partly counted.
+ */
+class AdaptiveController {
+
+    private static final long EVALUATION_INTERVAL = SECONDS.toNanos(2);
+
+    /**
+     * The share of each budget below which the session may move towards less CPU, at the cost of more bandwidth
+     */
+    private static final double HEADROOM = 0.5;
+
+    /**
+     * How many times longer than the fastest update ever seen the fastest update of an interval may take to arrive
+     * before the link is considered congested, and the minimum increase which counts, so that jitter on fast links is
+     * ignored
+     */
+    private static final double CONGESTION_FACTOR = 3;
+    private static final long CONGESTION_MINIMUM = 50_000_000L;
+
+    private static final int MAX_BACKOFF = 32;
+
+    static final Profile[] PROFILES = {
+            new Profile(BPP_32_NATIVE, 1, COPYRECT),
+            new Profile(BPP_32_NATIVE, 1, ZRLE, HEXTILE, COPYRECT),
+            new Profile(BPP_32_NATIVE, 6, TIGHT, ZRLE, HEXTILE, COPYRECT),
+            new Profile(BPP_16_TRUE, 9, TIGHT, ZRLE, HEXTILE, COPYRECT),
+            new Profile(BPP_8_TRUE, 9, TIGHT, ZRLE, HEXTILE, COPYRECT)
+    };
+
+    static final int INITIAL_PROFILE = 2;
+
+    private final VncSession session;
+    private final ClientEventHandler clientEventHandler;
+    private final CountingInputStream input;
+    private final Initializer initializer = new Initializer();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+
+    private int profile = INITIAL_PROFILE;
+    private ColorDepth colorDepth;
+    private List<Encoding> encodings;
+    private boolean settling;
+    private int backoff = 1;
+    private int hold;
+
+    private long intervalStart;
+    private long intervalBytes;
+    private long intervalCpuTime;
+    private long intervalMinLatency = Long.MAX_VALUE;
+    private long bestLatency = Long.MAX_VALUE;
+
+    private long updateStart;
+    private long updateCpuStart;
+
+    AdaptiveController(VncSession session, ClientEventHandler clientEventHandler, CountingInputStream input) {
+        this.session = session;
+        this.clientEventHandler = clientEventHandler;
+        this.input = input;
+        this.colorDepth = session.getConfig().getColorDepth();
+    }
+
+    /**
+     * Requests the initial profile and starts the first interval
+     */
+    void start() {
+        apply(PROFILES[profile]);
+        startInterval(nanoTime());
+    }
+
+    void updateStarted() {
+        updateStart = nanoTime();
+        updateCpuStart = cpuTime();
+        long requested = session.getFramebufferUpdateRequestTime();
+        if (requested != 0L) {
+            intervalMinLatency = min(intervalMinLatency, updateStart - requested);
+        }
+    }
+
+    void updateFinished() {
+        long now = nanoTime();
+        intervalCpuTime += cpuTime() - updateCpuStart;
+        long elapsed = now - intervalStart;
+        if (elapsed < EVALUATION_INTERVAL) {
+            return;
+        }
+        double seconds = elapsed / 1e9;
+        double bytesPerSecond = (input.getCount() - intervalBytes) / seconds;
+        double cpuLoad = intervalCpuTime / (double) elapsed;
+        long minLatency = intervalMinLatency;
+        startInterval(now);
+        if (settling) {
+            settling = false;
+            intervalMinLatency = minLatency;
+        } else {
+            evaluate(bytesPerSecond, cpuLoad, minLatency);
+        }
+    }
+
+    /**
+     * Moves at most one step along the ladder of profiles, based on one interval's measurements
+     *
+     * @param bytesPerSecond The bytes received per second
+     * @param cpuLoad        The share of one core spent processing updates
+     * @param minLatency     The shortest time between requesting the whole screen and receiving the update, in
+     *                       nanoseconds, or {@link Long#MAX_VALUE} if no update could be timed
+     */
+    void evaluate(double bytesPerSecond, double cpuLoad, long minLatency) {
+        VernacularConfig config = session.getConfig();
+        long bandwidthBudget = config.getBandwidthBudget();
+        double cpuBudget = config.getDecodeCpuBudget();
+
+        boolean congested = false;
+        boolean responsive = true;
+        if (minLatency != Long.MAX_VALUE) {
+            bestLatency = min(bestLatency, minLatency);
+            long threshold = max((long) (bestLatency * CONGESTION_FACTOR), bestLatency + CONGESTION_MINIMUM);
+            congested = minLatency > threshold;
+            responsive = minLatency < bestLatency + CONGESTION_MINIMUM;
+        }
+
+        boolean bandwidthLimited = congested || (bandwidthBudget > 0 && bytesPerSecond > bandwidthBudget);
+        boolean cpuLimited = cpuBudget > 0 && cpuLoad > cpuBudget;
+        boolean bandwidthHeadroom = responsive
+                && (bandwidthBudget <= 0 || bytesPerSecond < bandwidthBudget * HEADROOM);
+        boolean cpuHeadroom = cpuBudget <= 0 || cpuLoad < cpuBudget * HEADROOM;
+
+        if (bandwidthLimited && !cpuLimited) {
+            if (step(1)) {
+                hold = backoff;
+                backoff = min(backoff * 2, MAX_BACKOFF);
+            }
+        } else if (cpuLimited && !bandwidthLimited) {
+            step(-1);
+        } else if (bandwidthHeadroom && cpuHeadroom) {
+            if (hold > 0) {
+                hold--;
+            } else {
+                step(-1);
+            }
+        } else if (!bandwidthLimited && !cpuLimited && hold == 0) {
+            backoff = max(backoff / 2, 1);
+        }
+    }
+
+    int getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The color depth most recently requested, which is the configured one if none has been
+     */
+    ColorDepth getColorDepth() {
+        return colorDepth;
+    }
+
+    /**
+     * @return The encodings most recently requested
+     */
+    List<Encoding> getEncodings() {
+        return encodings;
+    }
+
+    private boolean step(int direction) {
+        int next = profile + direction;
+        if (next < 0 || next >= PROFILES.length) {
+            return false;
+        }
+        profile = next;
+        apply(PROFILES[profile]);
+        settling = true;
+        return true;
+    }
+
+    /**
+     * Requests the profile's encodings and compression level, followed by RAW and the pseudo-encodings configured other
+     * than the compression level, and the profile's color depth unless the session uses the server's pixel format
+     */
+    private void apply(Profile profile) {
+        VernacularConfig config = session.getConfig();
+        List<Encoding> encodings = new ArrayList<>(profile.encodings);
+        encodings.add(RAW);
+        for (Encoding encoding : initializer.encodings(config)) {
+            if (encoding.isPseudoEncoding() && !encoding.isCompressLevel()) {
+                encodings.add(encoding);
+            }
+        }
+        encodings.add(compressLevel(profile.compressionLevel));
+
+        if (colorDepth != profile.colorDepth && !config.isUseServerPixelFormat()) {
+            colorDepth = profile.colorDepth;
+            clientEventHandler.updatePixelFormat(initializer.pixelFormat(colorDepth));
+        }
+        this.encodings = encodings;
+        clientEventHandler.updateEncodings(new SetEncodings(encodings), initializer.jpegQuality(encodings));
+    }
+
+    private void startInterval(long now) {
+        intervalStart = now;
+        intervalBytes = input.getCount();
+        intervalCpuTime = 0L;
+        intervalMinLatency = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The CPU time of the current thread, or the wall clock time if the JVM cannot measure CPU time
+     */
+    private long cpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : nanoTime();
+    }
+
+    static final class Profile {
+
+        private final ColorDepth colorDepth;
+        private final int compressionLevel;
+        private final List<Encoding> encodings;
+
+        Profile(ColorDepth colorDepth, int compressionLevel, Encoding... encodings) {
+            this.colorDepth = colorDepth;
+            this.compressionLevel = compressionLevel;
+            this.encodings = asList(encodings);
+        }
+    }
+}
@@ -1,43 +1,47 @@
 package com.shinyhut.vernacular.client;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.PixelConversion;
 import com.shinyhut.vernacular.protocol.messages.ClientCutText;
 import com.shinyhut.vernacular.protocol.messages.Encodable;
-import com.shinyhut.vernacular.protocol.messages.FramebufferUpdateRequest;
-import com.shinyhut.vernacular.protocol.messages.KeyEvent;
-import com.shinyhut.vernacular.protocol.messages.PointerEvent;
-import static java.time.LocalDateTime.now;
-import static java.time.temporal.ChronoUnit.MILLIS;
-import static java.util.Collections.synchronizedList;
-import static java.util.stream.IntStream.range;
+import com.shinyhut.vernacular.protocol.messages.MessageCodec;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.SetEncodings;
+import com.shinyhut.vernacular.protocol.messages.SetPixelFormat;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class ClientEventHandler {
 
     private final VncSession session;
     private final Consumer<VncException> errorHandler;
-    private final List<Boolean> buttons = synchronizedList(new ArrayList<>());
     private final ReentrantLock outputLock = new ReentrantLock(true);
+    private final MessageCodec codec = new MessageCodec();
+    private final AtomicReference<PixelFormat> pendingPixelFormat = new AtomicReference<>();
 
     private volatile boolean running;
     private Thread framebufferUpdateLoop;
 
     private int mouseX;
     private int mouseY;
+    private int buttonMask;
 
-    private LocalDateTime lastFramebufferUpdateRequestTime;
+    private SetEncodings pendingEncodings;
+    private int pendingJpegQuality;
+    private boolean requestedFramebufferUpdate;
+    private long lastFramebufferUpdateRequestTime;
 
     ClientEventHandler(VncSession session, Consumer<VncException> errorHandler) {
         this.session = session;
         this.errorHandler = errorHandler;
-        range(0, 8).forEach(i -> buttons.add(false));
     }
 
     void start() {
@@ -80,19 +84,34 @@ public class ClientEventHandler {
     }
 
     void updateMouseButton(int button, boolean pressed) throws IOException {
-        buttons.set(button - 1, pressed);
-        updateMouseStatus();
+        outputLock.lock();
+        try {
+            int bit = 1 << (button - 1);
+            buttonMask = pressed ? buttonMask | bit : buttonMask & ~bit;
+            codec.writePointerEvent(session.getOutputStream(), mouseX, mouseY, buttonMask);
+        } finally {
+            outputLock.unlock();
+        }
     }
 
     void moveMouse(int mouseX, int mouseY) throws IOException {
-        this.mouseX = mouseX;
-        this.mouseY = mouseY;
-        updateMouseStatus();
+        outputLock.lock();
+        try {
+            this.mouseX = mouseX;
+            this.mouseY = mouseY;
+            codec.writePointerEvent(session.getOutputStream(), mouseX, mouseY, buttonMask);
+        } finally {
+            outputLock.unlock();
+        }
     }
 
     void updateKey(int keySym, boolean pressed) throws IOException {
-        KeyEvent message = new KeyEvent(keySym, pressed);
-        sendMessage(message);
+        outputLock.lock();
+        try {
+            codec.writeKeyEvent(session.getOutputStream(), keySym, pressed);
+        } finally {
+            outputLock.unlock();
+        }
     }
 
     void copyText(String text) throws IOException {
@@ -100,32 +119,81 @@ public class ClientEventHandler {
         sendMessage(message);
     }
 
-    private void updateMouseStatus() throws IOException {
-        PointerEvent message = new PointerEvent(mouseX, mouseY, buttons);
-        sendMessage(message);
+    /**
+     * Sends the server a new list of encodings, and makes the next framebuffer update request one for the whole screen,
+     * so that anything the server encoded before it received the new list is redrawn.
+     * <p>
+     * Like a new pixel format, the list is sent just before the next request, and the JPEG quality level the renderers
+     * decode with changes at the same time, so an update answering a request made before the change is decoded with
+     * the quality level it was encoded with.
+     */
+    void updateEncodings(SetEncodings setEncodings, int jpegQuality) {
+        outputLock.lock();
+        try {
+            pendingEncodings = setEncodings;
+            pendingJpegQuality = jpegQuality;
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Asks the server to send pixels in a new format.
+     * <p>
+     * A client must not send SetPixelFormat while it has a framebuffer update request outstanding, since it could not
+     * tell whether the update answering that request was in the old format or the new one. The new format is therefore
+     * sent just before the next request, once the update answering the previous request has been processed, and the
+     * framebuffer switches to it when the next update arrives. If the screen is not changing, the server may hold on to
+     * the outstanding request, and the new format is only sent once it answers.
+     */
+    void updatePixelFormat(PixelFormat pixelFormat) {
+        pendingPixelFormat.set(pixelFormat);
     }
 
     private boolean timeForFramebufferUpdate() {
-        long updateInterval = 1000 / session.getConfig().getTargetFramesPerSecond();
-        return lastFramebufferUpdateRequestTime == null ||
-                now().isAfter(lastFramebufferUpdateRequestTime.plus(updateInterval, MILLIS));
+        return !requestedFramebufferUpdate || nanoTime() - lastFramebufferUpdateRequestTime > updateInterval();
     }
 
     private void waitUntilFramebufferUpdateTime() throws InterruptedException {
-        long updateInterval = 1000 / session.getConfig().getTargetFramesPerSecond();
-        LocalDateTime nextUpdate = lastFramebufferUpdateRequestTime.plus(updateInterval, MILLIS);
-        long timeToWait = now().until(nextUpdate, MILLIS);
+        long timeToWait = NANOSECONDS.toMillis(lastFramebufferUpdateRequestTime + updateInterval() - nanoTime());
         if (timeToWait > 0L) {
             Thread.sleep(timeToWait);
         }
     }
 
+    /**
+     * @return The time between framebuffer update requests, in nanoseconds
+     */
+    private long updateInterval() {
+        return MILLISECONDS.toNanos(1000 / session.getConfig().getTargetFramesPerSecond());
+    }
+
     private void requestFramebufferUpdate(boolean incremental) throws IOException {
         int width = session.getFramebufferWidth();
         int height = session.getFramebufferHeight();
-        FramebufferUpdateRequest updateRequest = new FramebufferUpdateRequest(incremental, 0, 0, width, height);
-        sendMessage(updateRequest);
-        lastFramebufferUpdateRequestTime = now();
+        outputLock.lock();
+        try {
+            OutputStream out = session.getOutputStream();
+            PixelFormat pixelFormat = pendingPixelFormat.getAndSet(null);
+            if (pixelFormat != null) {
+                session.setPixelFormat(pixelFormat);
+                session.setPixelConversion(PixelConversion.between(session.getServerInit().getPixelFormat(), pixelFormat));
+                new SetPixelFormat(pixelFormat).encode(out);
+                incremental = false;
+            }
+            if (pendingEncodings != null) {
+                pendingEncodings.encode(out);
+                session.setJpegQuality(pendingJpegQuality);
+                pendingEncodings = null;
+                incremental = false;
+            }
+            lastFramebufferUpdateRequestTime = nanoTime();
+            session.setFramebufferUpdateRequestTime(incremental ? 0L : lastFramebufferUpdateRequestTime);
+            codec.writeFramebufferUpdateRequest(out, incremental, 0, 0, width, height);
+        } finally {
+            outputLock.unlock();
+        }
+        requestedFramebufferUpdate = true;
     }
 
     private void sendMessage(Encodable message) throws IOException {
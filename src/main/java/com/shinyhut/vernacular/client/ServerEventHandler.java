@@ -10,6 +10,7 @@ import com.shinyhut.vernacular.client.exceptions.VncException;
 import com.shinyhut.vernacular.client.rendering.Framebuffer;
 import com.shinyhut.vernacular.protocol.messages.Bell;
 import com.shinyhut.vernacular.protocol.messages.FramebufferUpdate;
+import com.shinyhut.vernacular.protocol.messages.MessageCodec;
 import com.shinyhut.vernacular.protocol.messages.ServerCutText;
 import com.shinyhut.vernacular.protocol.messages.SetColorMapEntries;
 
@@ -18,14 +19,17 @@ public class ServerEventHandler {
     private final VncSession session;
     private final Consumer<VncException> errorHandler;
     private final Framebuffer framebuffer;
+    private final MessageCodec codec = new MessageCodec();
+    private final AdaptiveController adaptiveController;
 
     private volatile boolean running;
     private Thread eventLoop;
 
-    ServerEventHandler(VncSession session, Consumer<VncException> errorHandler) {
+    ServerEventHandler(VncSession session, Consumer<VncException> errorHandler, AdaptiveController adaptiveController) {
         this.session = session;
         this.errorHandler = errorHandler;
         this.framebuffer = new Framebuffer(session);
+        this.adaptiveController = adaptiveController;
     }
 
     void start() {
@@ -41,8 +45,14 @@ public class ServerEventHandler {
 
                     switch (messageType) {
                         case 0x00:
-                            FramebufferUpdate framebufferUpdate = FramebufferUpdate.decode(in);
+                            FramebufferUpdate framebufferUpdate = codec.readFramebufferUpdate(in);
+                            if (adaptiveController != null) {
+                                adaptiveController.updateStarted();
+                            }
                             framebuffer.processUpdate(framebufferUpdate);
+                            if (adaptiveController != null) {
+                                adaptiveController.updateFinished();
+                            }
                             break;
                         case 0x01:
                             SetColorMapEntries setColorMapEntries = SetColorMapEntries.decode(in);
@@ -6,11 +6,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.List;
 
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.PixelConversion;
 import com.shinyhut.vernacular.protocol.handshaking.Handshaker;
 import com.shinyhut.vernacular.protocol.initialization.Initializer;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
+import com.shinyhut.vernacular.protocol.messages.SetEncodings;
+import com.shinyhut.vernacular.utils.CountingInputStream;
 import com.shinyhut.vernacular.utils.KeySyms;
 import static java.awt.event.KeyEvent.KEY_PRESSED;
 import static java.awt.event.KeyEvent.KEY_RELEASED;
@@ -28,8 +34,10 @@ public class VernacularClient
     private final VernacularConfig config;
     
     private VncSession session;
+    private CountingInputStream socketInput;
     private ClientEventHandler clientEventHandler;
     private ServerEventHandler serverEventHandler;
+    private AdaptiveController adaptiveController;
     
     private volatile boolean running;
     
@@ -83,7 +91,14 @@ public class VernacularClient
         {
             createSession(socket);
             clientEventHandler = new ClientEventHandler(session, this::handleError);
-            serverEventHandler = new ServerEventHandler(session, this::handleError);
+            adaptiveController = config.isAdaptiveEncoding()
+                                 ? new AdaptiveController(session, clientEventHandler, socketInput)
+                                 : null;
+            serverEventHandler = new ServerEventHandler(session, this::handleError, adaptiveController);
+            if (adaptiveController != null)
+            {
+                adaptiveController.start();
+            }
             
             serverEventHandler.start();
             clientEventHandler.start();
@@ -305,6 +320,86 @@ public class VernacularClient
         }
     }
     
+    /**
+     * Changes the JPEG quality level while the client is running, by sending the server a new list of encodings.
+     * <p>
+     * This also changes how much detail is lost by the ZYWRLE encoding, so it can be used to trade image quality for frame rate as network conditions
+     * change.
+     *
+     * @param jpegQuality The JPEG quality level to request, from 0 (lowest quality, least bandwidth) to 9 (highest quality), or -1 to request none
+     * @see VernacularConfig#setJpegQuality(int)
+     */
+    public void setJpegQuality(int jpegQuality)
+    {
+        config.setJpegQuality(jpegQuality);
+        List<Encoding> encodings = config.getEncodings();
+        if (encodings != null)
+        {
+            encodings.removeIf(Encoding::isJpegQualityLevel);
+            if (jpegQuality >= 0)
+            {
+                encodings.add(Encoding.jpegQualityLevel(jpegQuality));
+            }
+            config.setEncodings(encodings);
+        }
+        updateEncodings();
+    }
+    
+    /**
+     * Lists the encodings and pseudo-encodings currently requested from the server, in order of preference. The list may be modified and passed to
+     * {@link #setEncodings(List)}.
+     *
+     * @return A copy of the encodings currently requested
+     */
+    public List<Encoding> getEncodings()
+    {
+        return initializer.encodings(config);
+    }
+    
+    /**
+     * Changes which encodings and pseudo-encodings are requested from the server, and their order of preference, while the client is running. For example,
+     * moving ZLIB ahead of HEXTILE trades CPU for bandwidth as soon as a link degrades. The whole screen is refreshed once the server has the new list.
+     *
+     * @param encodings The encodings to request, in order of preference, or null to go back to the list built from the configuration's other settings
+     * @see VernacularConfig#setEncodings(List)
+     */
+    public void setEncodings(List<Encoding> encodings)
+    {
+        config.setEncodings(encodings);
+        updateEncodings();
+    }
+    
+    /**
+     * Changes the color depth while the client is running, by asking the server to send pixels in a new format. This can be used to drop to a lower color
+     * depth when bandwidth collapses, and to return to a higher one later, without reconnecting.
+     * <p>
+     * The protocol does not allow the pixel format to change while a framebuffer update request is outstanding, so the new color depth is requested along with
+     * the next framebuffer update request, and is followed by a refresh of the whole screen.
+     *
+     * @param colorDepth The color depth to request from the server
+     * @see VernacularConfig#setColorDepth(ColorDepth)
+     */
+    public void setColorDepth(ColorDepth colorDepth)
+    {
+        config.setColorDepth(colorDepth);
+        if (clientEventHandler != null)
+        {
+            clientEventHandler.updatePixelFormat(initializer.pixelFormat(colorDepth));
+        }
+    }
+    
+    /**
+     * Reports which side of the connection converts pixels from the server's native pixel format into the framebuffer's format, which depends on the color
+     * depth requested and whether the server's own pixel format is used.
+     *
+     * @return Which side converts pixels, or null if the client has not connected
+     * @see VernacularConfig#setUseServerPixelFormat(boolean)
+     */
+    public PixelConversion getPixelConversion()
+    {
+        return session != null ? session.getPixelConversion() : null;
+    }
+    
     /**
      * Is the client currently running?
      *
@@ -317,7 +412,8 @@ public class VernacularClient
     
     private void createSession(Socket socket) throws IOException, VncException
     {
-        InputStream in = new BufferedInputStream(socket.getInputStream());
+        socketInput = new CountingInputStream(socket.getInputStream());
+        InputStream in = new BufferedInputStream(socketInput);
         OutputStream out = socket.getOutputStream();
         session = new VncSession(config, in, out);
         
@@ -325,6 +421,15 @@ public class VernacularClient
         initializer.initialise(session);
     }
     
+    private void updateEncodings()
+    {
+        if (clientEventHandler != null)
+        {
+            List<Encoding> encodings = initializer.encodings(config);
+            clientEventHandler.updateEncodings(new SetEncodings(encodings), initializer.jpegQuality(encodings));
+        }
+    }
+    
     private void handleError(VncException e)
     {
         notifyErrorListeners(e);
@@ -1,12 +1,15 @@
 package com.shinyhut.vernacular.client;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import com.shinyhut.vernacular.client.exceptions.VncException;
 import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.protocol.messages.Encoding;
 import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_8_INDEXED;
 
 public class VernacularConfig
@@ -19,14 +22,31 @@ public class VernacularConfig
     private Consumer<Void> bellListener;
     private Consumer<String> remoteClipboardListener;
     private BiConsumer<Image, Point> mousePointerUpdateListener;
+    private Consumer<Point> mousePointerPositionListener;
     private boolean shared = true;
     private int targetFramesPerSecond = 30;
     private ColorDepth colorDepth = BPP_8_INDEXED;
+    private boolean useServerPixelFormat = false;
     private Supplier<Boolean> useLocalMousePointer = () -> true;
     private boolean enableCopyrectEncoding = true;
     private boolean enableRreEncoding = true;
+    private boolean enableCoRreEncoding = false;
     private boolean enableHextileEncoding = true;
     private boolean enableZLibEncoding = false;
+    private boolean enableTightEncoding = false;
+    private boolean enableZrleEncoding = false;
+    private boolean enableTrleEncoding = false;
+    private boolean enableZlibHexEncoding = false;
+    private boolean enableUltraEncoding = false;
+    private boolean enableTightPngEncoding = false;
+    private boolean enableZywrleEncoding = false;
+    private boolean enableJpegEncoding = false;
+    private int compressionLevel = -1;
+    private int jpegQuality = -1;
+    private List<Encoding> encodings;
+    private boolean adaptiveEncoding = false;
+    private long bandwidthBudget = 0;
+    private double decodeCpuBudget = 0.5;
     
     public Supplier<String> getUsernameSupplier()
     {
@@ -106,6 +126,24 @@ public class VernacularConfig
         this.mousePointerUpdateListener = mousePointerUpdateListener;
     }
     
+    public Consumer<Point> getMousePointerPositionListener()
+    {
+        return mousePointerPositionListener;
+    }
+    
+    /**
+     * Specifies a Consumer which will be passed the position of the remote server's mouse pointer whenever the server moves it, for example because an
+     * application on the remote desktop has warped the pointer. Positions are only reported when the client draws the mouse pointer locally, and are sent
+     * as tiny messages in place of framebuffer updates containing the pointer.
+     *
+     * @param mousePointerPositionListener A Consumer which will receive the new position of the mouse pointer
+     * @see #setUseLocalMousePointer(Supplier)
+     */
+    public void setMousePointerPositionListener(Consumer<Point> mousePointerPositionListener)
+    {
+        this.mousePointerPositionListener = mousePointerPositionListener;
+    }
+    
     public Consumer<String> getRemoteClipboardListener()
     {
         return remoteClipboardListener;
@@ -193,12 +231,35 @@ public class VernacularConfig
         this.colorDepth = colorDepth;
     }
     
+    public boolean isUseServerPixelFormat()
+    {
+        return useServerPixelFormat;
+    }
+    
+    /**
+     * Keep the pixel format the remote server uses natively, rather than requesting the configured color depth. This saves the server from converting every
+     * pixel it sends, which may matter more than bandwidth for servers such as QEMU which run alongside many others on the same host. Pixels are converted on
+     * the client instead, unless the server's format is already laid out like the framebuffer's. If the client cannot decode the server's format, the
+     * configured color depth is requested as usual.
+     * <p>
+     * Default: false
+     *
+     * @param useServerPixelFormat enable or disable using the server's native pixel format
+     * @see VernacularClient#getPixelConversion()
+     */
+    public void setUseServerPixelFormat(boolean useServerPixelFormat)
+    {
+        this.useServerPixelFormat = useServerPixelFormat;
+    }
+    
     /**
      * Indicate to the server that the client can draw the mouse pointer locally. The server should not include the mouse pointer in framebuffer updates, and it
-     * should send separate notifications when the mouse pointer image changes
+     * should send separate notifications when the mouse pointer image changes or the server moves the mouse pointer. Servers which support it send the mouse
+     * pointer image with a full alpha channel rather than a 1-bit transparency mask.
      *
      * @param useLocalMousePointer enable or disable client side mouse pointer rendering
      * @see #setMousePointerUpdateListener(BiConsumer)
+     * @see #setMousePointerPositionListener(Consumer)
      */
     public void setUseLocalMousePointer(Supplier<Boolean> useLocalMousePointer)
     {
@@ -247,6 +308,23 @@ public class VernacularConfig
         this.enableRreEncoding = enableRreEncoding;
     }
     
+    public boolean isEnableCoRreEncoding()
+    {
+        return enableCoRreEncoding;
+    }
+    
+    /**
+     * Enable or disable the CoRRE video encoding, a compact variant of RRE preferred by some older servers
+     * <p>
+     * Default: false
+     *
+     * @param enableCoRreEncoding enable or disable the CoRRE video encoding
+     */
+    public void setEnableCoRreEncoding(boolean enableCoRreEncoding)
+    {
+        this.enableCoRreEncoding = enableCoRreEncoding;
+    }
+    
     public boolean isEnableHextileEncoding()
     {
         return enableHextileEncoding;
@@ -277,4 +355,289 @@ public class VernacularConfig
     {
         this.enableZLibEncoding = enableZLibEncoding;
     }
+    
+    public boolean isEnableTightEncoding()
+    {
+        return enableTightEncoding;
+    }
+    
+    /**
+     * Enable or disable the TIGHT video encoding. When enabled, this is our preferred encoding. It typically uses far less bandwidth than any other
+     * encoding, at some cost in CPU usage.
+     * <p>
+     * Default: false
+     *
+     * @param enableTightEncoding enable or disable the TIGHT video encoding
+     * @see #setCompressionLevel(int)
+     * @see #setJpegQuality(int)
+     */
+    public void setEnableTightEncoding(boolean enableTightEncoding)
+    {
+        this.enableTightEncoding = enableTightEncoding;
+    }
+    
+    public boolean isEnableZrleEncoding()
+    {
+        return enableZrleEncoding;
+    }
+    
+    /**
+     * Enable or disable the ZRLE video encoding. This encoding is preferred by many servers, and uses much less bandwidth than ZLIB for the same CPU cost.
+     * <p>
+     * Default: false
+     *
+     * @param enableZrleEncoding enable or disable the ZRLE video encoding
+     */
+    public void setEnableZrleEncoding(boolean enableZrleEncoding)
+    {
+        this.enableZrleEncoding = enableZrleEncoding;
+    }
+    
+    public boolean isEnableTrleEncoding()
+    {
+        return enableTrleEncoding;
+    }
+    
+    /**
+     * Enable or disable the TRLE video encoding. This encoding compresses the screen like ZRLE, but without zlib, so it uses much less CPU than ZRLE at
+     * the cost of more bandwidth. It is a good choice on fast local networks. ZRLE is preferred over TRLE when both are enabled.
+     * <p>
+     * Default: false
+     *
+     * @param enableTrleEncoding enable or disable the TRLE video encoding
+     */
+    public void setEnableTrleEncoding(boolean enableTrleEncoding)
+    {
+        this.enableTrleEncoding = enableTrleEncoding;
+    }
+    
+    public boolean isEnableZywrleEncoding()
+    {
+        return enableZywrleEncoding;
+    }
+    
+    /**
+     * Enable or disable the ZYWRLE video encoding. This is a lossy variant of ZRLE which uses even less bandwidth, for very slow connections. When enabled,
+     * this is our preferred encoding.
+     * <p>
+     * How much detail is lost depends on the JPEG quality level: the lower the quality, the less bandwidth is used. The quality level can be changed while
+     * the client is running using {@link VernacularClient#setJpegQuality(int)}.
+     * <p>
+     * Default: false
+     *
+     * @param enableZywrleEncoding enable or disable the ZYWRLE video encoding
+     * @see #setJpegQuality(int)
+     */
+    public void setEnableZywrleEncoding(boolean enableZywrleEncoding)
+    {
+        this.enableZywrleEncoding = enableZywrleEncoding;
+    }
+    
+    public boolean isEnableZlibHexEncoding()
+    {
+        return enableZlibHexEncoding;
+    }
+    
+    /**
+     * Enable or disable the ZlibHex video encoding. This encoding is Hextile with zlib compression, and is offered by some older servers which support
+     * neither Tight nor ZRLE. It uses much less bandwidth than Hextile. ZlibHex is preferred over ZLib and Hextile when they are enabled.
+     * <p>
+     * Default: false
+     *
+     * @param enableZlibHexEncoding enable or disable the ZlibHex video encoding
+     */
+    public void setEnableZlibHexEncoding(boolean enableZlibHexEncoding)
+    {
+        this.enableZlibHexEncoding = enableZlibHexEncoding;
+    }
+    
+    public boolean isEnableUltraEncoding()
+    {
+        return enableUltraEncoding;
+    }
+    
+    /**
+     * Enable or disable UltraVNC's Ultra video encoding. This encoding compresses raw pixels with LZO, which decompresses several times faster than
+     * zlib but compresses less well, so it suits clients with little CPU to spare. Only UltraVNC servers support it. Ultra is preferred over ZlibHex
+     * and ZLib when they are enabled.
+     * <p>
+     * Default: false
+     *
+     * @param enableUltraEncoding enable or disable the Ultra video encoding
+     */
+    public void setEnableUltraEncoding(boolean enableUltraEncoding)
+    {
+        this.enableUltraEncoding = enableUltraEncoding;
+    }
+    
+    public boolean isEnableTightPngEncoding()
+    {
+        return enableTightPngEncoding;
+    }
+    
+    /**
+     * Enable or disable the TightPNG video encoding. This encoding is TIGHT with PNG images in place of zlib compression, and is offered by servers
+     * built for browser-based clients, such as QEMU. TIGHT is preferred over TightPNG when both are enabled.
+     * <p>
+     * Default: false
+     *
+     * @param enableTightPngEncoding enable or disable the TightPNG video encoding
+     * @see #setJpegQuality(int)
+     */
+    public void setEnableTightPngEncoding(boolean enableTightPngEncoding)
+    {
+        this.enableTightPngEncoding = enableTightPngEncoding;
+    }
+    
+    public boolean isEnableJpegEncoding()
+    {
+        return enableJpegEncoding;
+    }
+    
+    /**
+     * Enable or disable the JPEG video encoding. This encoding sends every rectangle as a lossy JPEG image, and is offered by QEMU and TigerVNC servers.
+     * It suits video and photos, and since the rectangles of an update are decoded in parallel, it makes good use of a client with several cores. TIGHT
+     * and TightPNG are preferred over JPEG when they are enabled.
+     * <p>
+     * Default: false
+     *
+     * @param enableJpegEncoding enable or disable the JPEG video encoding
+     * @see #setJpegQuality(int)
+     */
+    public void setEnableJpegEncoding(boolean enableJpegEncoding)
+    {
+        this.enableJpegEncoding = enableJpegEncoding;
+    }
+    
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+    
+    /**
+     * Specifies the level of zlib compression we would like the server to use for encodings which support it, from 0 (fastest) to 9 (best compression), or
+     * -1 to leave the choice to the server.
+     * <p>
+     * Default: -1
+     *
+     * @param compressionLevel The compression level to request, or -1 to use the server's default
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = level(compressionLevel);
+    }
+    
+    public int getJpegQuality()
+    {
+        return jpegQuality;
+    }
+    
+    /**
+     * Allows the server to send photo-like regions of the screen as lossy JPEG images when using the TIGHT, TightPNG or JPEG encoding, at the specified quality level from 0
+     * (lowest quality, least bandwidth) to 9 (highest quality). A value of -1 disables JPEG compression.
+     * <p>
+     * The quality level also controls how much detail is lost by the ZYWRLE encoding, where -1 is equivalent to the highest quality.
+     * <p>
+     * Default: -1
+     *
+     * @param jpegQuality The JPEG quality level to request, or -1 to disable JPEG compression
+     */
+    public void setJpegQuality(int jpegQuality)
+    {
+        this.jpegQuality = level(jpegQuality);
+    }
+    
+    public List<Encoding> getEncodings()
+    {
+        return encodings != null ? new ArrayList<>(encodings) : null;
+    }
+    
+    /**
+     * Specifies exactly which encodings and pseudo-encodings to request from the server, in order of preference, including any compression level and JPEG
+     * quality level pseudo-encodings. When a list is specified, the individual encoding flags, the compression level and the JPEG quality level are ignored,
+     * apart from {@link VernacularClient#setJpegQuality(int)}, which replaces the JPEG quality level in the list. The list can be changed while the client is
+     * running using {@link VernacularClient#setEncodings(List)}.
+     * <p>
+     * Default: null (the list is built from the individual encoding flags, the compression level and the JPEG quality level)
+     *
+     * @param encodings The encodings to request, in order of preference, or null to build the list from the other settings
+     * @throws IllegalArgumentException if the list contains null
+     */
+    public void setEncodings(List<Encoding> encodings)
+    {
+        if (encodings != null && encodings.contains(null))
+        {
+            throw new IllegalArgumentException("Encodings must not contain null");
+        }
+        this.encodings = encodings != null ? new ArrayList<>(encodings) : null;
+    }
+    
+    public boolean isAdaptiveEncoding()
+    {
+        return adaptiveEncoding;
+    }
+    
+    /**
+     * Let the client choose the encodings, compression level and color depth to request while it runs, based on the bandwidth it uses, how long updates
+     * take to arrive and how much CPU it spends processing them, so that it receives as many frames per second as it can within the bandwidth and CPU
+     * budgets. The client starts with a balanced choice and re-evaluates it every couple of seconds. The color depth, encoding list and individual encoding
+     * settings are only used until the first choice is made, although the configuration itself is never changed, and the pseudo-encodings it requests are
+     * kept. While the server's own pixel format is used, the color depth is left alone.
+     * <p>
+     * Default: false
+     *
+     * @param adaptiveEncoding enable or disable adaptive encoding
+     * @see #setBandwidthBudget(long)
+     * @see #setDecodeCpuBudget(double)
+     */
+    public void setAdaptiveEncoding(boolean adaptiveEncoding)
+    {
+        this.adaptiveEncoding = adaptiveEncoding;
+    }
+    
+    public long getBandwidthBudget()
+    {
+        return bandwidthBudget;
+    }
+    
+    /**
+     * Specifies the bandwidth adaptive encoding should stay within, in bytes per second received from the server. With no budget, the client only saves
+     * bandwidth when updates start taking much longer to arrive, which shows the link is congested.
+     * <p>
+     * Default: 0 (no budget)
+     *
+     * @param bandwidthBudget The number of bytes per second the client may receive, or 0 for no budget
+     * @see #setAdaptiveEncoding(boolean)
+     */
+    public void setBandwidthBudget(long bandwidthBudget)
+    {
+        this.bandwidthBudget = bandwidthBudget;
+    }
+    
+    public double getDecodeCpuBudget()
+    {
+        return decodeCpuBudget;
+    }
+    
+    /**
+     * Specifies the CPU time adaptive encoding should stay within while processing updates from the server, as a share of one core.
+     * <p>
+     * Default: 0.5
+     *
+     * @param decodeCpuBudget The share of one core the client may spend processing updates, or 0 for no budget
+     * @see #setAdaptiveEncoding(boolean)
+     */
+    public void setDecodeCpuBudget(double decodeCpuBudget)
+    {
+        this.decodeCpuBudget = decodeCpuBudget;
+    }
+    
+    private static int level(int level)
+    {
+        if (level < -1 || level > 9)
+        {
+            throw new IllegalArgumentException("Invalid level: " + level);
+        }
+        return level;
+    }
 }
@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.shinyhut.vernacular.client.rendering.PixelConversion;
 import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.ProtocolVersion;
 import com.shinyhut.vernacular.protocol.messages.ServerInit;
@@ -18,10 +19,13 @@ public class VncSession {
 
     private ProtocolVersion protocolVersion;
     private ServerInit serverInit;
-    private PixelFormat pixelFormat;
+    private volatile PixelFormat pixelFormat;
+    private volatile PixelConversion pixelConversion;
 
     private volatile int framebufferWidth;
     private volatile int framebufferHeight;
+    private volatile int jpegQuality = -1;
+    private volatile long framebufferUpdateRequestTime;
 
     private boolean receivedFramebufferUpdate = false;
     private final ReentrantLock framebufferUpdateLock = new ReentrantLock();
@@ -69,6 +73,14 @@ public class VncSession {
         this.pixelFormat = pixelFormat;
     }
 
+    public PixelConversion getPixelConversion() {
+        return pixelConversion;
+    }
+
+    public void setPixelConversion(PixelConversion pixelConversion) {
+        this.pixelConversion = pixelConversion;
+    }
+
     public int getFramebufferWidth() {
         return framebufferWidth;
     }
@@ -85,6 +97,27 @@ public class VncSession {
         this.framebufferHeight = framebufferHeight;
     }
 
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setJpegQuality(int jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} at which the last framebuffer update request was sent, or 0 if none has been
+     * or the last one was incremental. A server may hold an incremental request until the screen changes, so only a
+     * request for the whole screen, which is answered at once, says how long the link takes to deliver an update.
+     */
+    public long getFramebufferUpdateRequestTime() {
+        return framebufferUpdateRequestTime;
+    }
+
+    public void setFramebufferUpdateRequestTime(long framebufferUpdateRequestTime) {
+        this.framebufferUpdateRequestTime = framebufferUpdateRequestTime;
+    }
+
     public void waitForFramebufferUpdate() throws InterruptedException {
         framebufferUpdateLock.lock();
         try {
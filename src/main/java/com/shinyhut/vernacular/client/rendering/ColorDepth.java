@@ -12,10 +12,17 @@ public enum ColorDepth {
     BPP_16_TRUE(16, 16, true, 31, 63, 31, 11, 5, 0),
 
     /** 24 bits per pixel true color **/
-    BPP_24_TRUE(32, 24, true, 255, 255, 255, 16, 8, 0);
+    BPP_24_TRUE(32, 24, true, 255, 255, 255, 16, 8, 0),
+
+    /**
+     * 24 bits per pixel true color, sent as little endian 32 bit pixels laid out exactly like the framebuffer's own
+     * pixels, so that they can be copied into the framebuffer without being converted
+     **/
+    BPP_32_NATIVE(32, 24, false, true, 255, 255, 255, 16, 0, 8);
 
     private final int bitsPerPixel;
     private final int depth;
+    private final boolean bigEndian;
     private final boolean trueColor;
     private final int redMax;
     private final int blueMax;
@@ -25,8 +32,13 @@ public enum ColorDepth {
     private final int greenShift;
 
     ColorDepth(int bitsPerPixel, int depth, boolean trueColor, int redMax, int blueMax, int greenMax, int redShift, int blueShift, int greenShift) {
+        this(bitsPerPixel, depth, true, trueColor, redMax, blueMax, greenMax, redShift, blueShift, greenShift);
+    }
+
+    ColorDepth(int bitsPerPixel, int depth, boolean bigEndian, boolean trueColor, int redMax, int blueMax, int greenMax, int redShift, int blueShift, int greenShift) {
         this.bitsPerPixel = bitsPerPixel;
         this.depth = depth;
+        this.bigEndian = bigEndian;
         this.trueColor = trueColor;
         this.redMax = redMax;
         this.blueMax = blueMax;
@@ -44,6 +56,10 @@ public enum ColorDepth {
         return depth;
     }
 
+    public boolean isBigEndian() {
+        return bigEndian;
+    }
+
     public boolean isTrueColor() {
         return trueColor;
     }
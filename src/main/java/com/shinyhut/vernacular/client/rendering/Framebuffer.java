@@ -6,55 +6,92 @@ import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import com.shinyhut.vernacular.client.VncSession;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.client.rendering.renderers.CoRRERenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.CopyRectRenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.CursorRenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.HextileRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.JpegRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.Palette;
 import com.shinyhut.vernacular.client.rendering.renderers.PixelDecoder;
 import com.shinyhut.vernacular.client.rendering.renderers.RRERenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.RawRenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.Renderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TRLERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TightPngRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.TightRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.UltraRenderer;
 import com.shinyhut.vernacular.client.rendering.renderers.ZLibRenderer;
-import com.shinyhut.vernacular.protocol.messages.ColorMapEntry;
+import com.shinyhut.vernacular.client.rendering.renderers.ZlibHexRenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZRLERenderer;
+import com.shinyhut.vernacular.client.rendering.renderers.ZYWRLERenderer;
 import com.shinyhut.vernacular.protocol.messages.Encoding;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ALPHA_CURSOR;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.COPYRECT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.CORRE;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.CURSOR;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.DESKTOP_SIZE;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.HEXTILE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.JPEG;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.LAST_RECT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.POINTER_POS;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.RRE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TIGHT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TIGHT_PNG;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ULTRA;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.ZLIB;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZLIBHEX;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZYWRLE;
 import com.shinyhut.vernacular.protocol.messages.FramebufferUpdate;
+import com.shinyhut.vernacular.protocol.messages.MessageCodec;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
 import com.shinyhut.vernacular.protocol.messages.SetColorMapEntries;
-import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 
 public class Framebuffer {
 
     private final VncSession session;
-    private final Map<BigInteger, ColorMapEntry> colorMap = new ConcurrentHashMap<>();
-    private final Map<Encoding, Renderer> renderers = new ConcurrentHashMap<>();
+    private final Palette palette = new Palette();
+    private final PixelDecoder pixelDecoder = new PixelDecoder(palette);
+    private final Renderer[] renderers = new Renderer[Encoding.values().length];
+    private final MessageCodec codec = new MessageCodec();
     private final CursorRenderer cursorRenderer;
+    private final JpegRenderer jpegRenderer;
 
     private BufferedImage frame;
+    private PixelFormat pixelFormat;
+    private BufferedImage lastCursorImage;
+    private Point lastCursorHotspot;
 
     public Framebuffer(VncSession session) {
-        PixelDecoder pixelDecoder = new PixelDecoder(colorMap);
-        RawRenderer rawRenderer = new RawRenderer(pixelDecoder, session.getPixelFormat());
-        renderers.put(RAW, rawRenderer);
-        renderers.put(COPYRECT, new CopyRectRenderer());
-        renderers.put(RRE, new RRERenderer(pixelDecoder, session.getPixelFormat()));
-        renderers.put(HEXTILE, new HextileRenderer(rawRenderer, pixelDecoder, session.getPixelFormat()));
-        renderers.put(ZLIB, new ZLibRenderer(rawRenderer));
+        pixelFormat = session.getPixelFormat();
+        pixelDecoder.setPixelFormat(pixelFormat);
+        RawRenderer rawRenderer = new RawRenderer(pixelDecoder);
+        renderers[RAW.ordinal()] = rawRenderer;
+        renderers[COPYRECT.ordinal()] = new CopyRectRenderer();
+        renderers[RRE.ordinal()] = new RRERenderer(pixelDecoder);
+        renderers[CORRE.ordinal()] = new CoRRERenderer(pixelDecoder);
+        renderers[HEXTILE.ordinal()] = new HextileRenderer(rawRenderer, pixelDecoder);
+        renderers[ZLIB.ordinal()] = new ZLibRenderer(rawRenderer);
+        renderers[TIGHT.ordinal()] = new TightRenderer(rawRenderer, pixelDecoder);
+        renderers[TIGHT_PNG.ordinal()] = new TightPngRenderer(rawRenderer, pixelDecoder);
+        renderers[ZRLE.ordinal()] = new ZRLERenderer(rawRenderer, pixelDecoder);
+        renderers[TRLE.ordinal()] = new TRLERenderer(rawRenderer, pixelDecoder);
+        renderers[ZLIBHEX.ordinal()] = new ZlibHexRenderer(rawRenderer, pixelDecoder);
+        renderers[ULTRA.ordinal()] = new UltraRenderer(rawRenderer, pixelDecoder);
+        renderers[ZYWRLE.ordinal()] = new ZYWRLERenderer(rawRenderer, pixelDecoder, session::getJpegQuality);
+        jpegRenderer = new JpegRenderer();
+        renderers[JPEG.ordinal()] = jpegRenderer;
         cursorRenderer = new CursorRenderer(rawRenderer);
 
         frame = new BufferedImage(session.getFramebufferWidth(), session.getFramebufferHeight(), TYPE_INT_RGB);
@@ -63,17 +100,31 @@ public class Framebuffer {
 
     public void processUpdate(FramebufferUpdate update) throws VncException {
         InputStream in = session.getInputStream();
+        updatePixelFormat();
         try {
             for (int i = 0; i < update.getNumberOfRectangles(); i++) {
-                Rectangle rectangle = Rectangle.decode(in);
+                Rectangle rectangle = codec.readRectangle(in);
+                if (rectangle.getEncoding() == LAST_RECT) {
+                    break;
+                }
+                if (rectangle.getEncoding() != JPEG) {
+                    jpegRenderer.flush();
+                }
                 if (rectangle.getEncoding() == DESKTOP_SIZE) {
                     resizeFramebuffer(rectangle);
-                } else if (rectangle.getEncoding() == CURSOR) {
+                } else if (rectangle.getEncoding() == CURSOR || rectangle.getEncoding() == ALPHA_CURSOR) {
                     updateCursor(rectangle, in);
+                } else if (rectangle.getEncoding() == POINTER_POS) {
+                    updatePointerPosition(rectangle);
                 } else {
-                    renderers.get(rectangle.getEncoding()).render(in, frame, rectangle);
+                    Renderer renderer = renderers[rectangle.getEncoding().ordinal()];
+                    if (renderer == null) {
+                        throw new UnsupportedEncodingException(rectangle.getEncoding().getCode());
+                    }
+                    renderer.render(in, frame, rectangle);
                 }
             }
+            jpegRenderer.flush();
             paint();
             session.framebufferUpdated();
         } catch (IOException e) {
@@ -81,6 +132,18 @@ public class Framebuffer {
         }
     }
 
+    /**
+     * The client only changes the pixel format between an update and the request for the next one, so every rectangle
+     * of an update is in the format that was current when the update began
+     */
+    private void updatePixelFormat() {
+        PixelFormat current = session.getPixelFormat();
+        if (current != pixelFormat) {
+            pixelFormat = current;
+            pixelDecoder.setPixelFormat(current);
+        }
+    }
+
     private void paint() {
         Consumer<Image> listener = session.getConfig().getScreenUpdateListener();
         if (listener != null) {
@@ -92,9 +155,7 @@ public class Framebuffer {
     }
 
     public void updateColorMap(SetColorMapEntries update) {
-        for (int i = 0; i < update.getColors().size(); i++) {
-            colorMap.put(BigInteger.valueOf(i + update.getFirstColor()), update.getColors().get(i));
-        }
+        palette.update(update.getFirstColor(), update.getColors());
     }
 
     private void resizeFramebuffer(Rectangle newSize) {
@@ -107,14 +168,37 @@ public class Framebuffer {
         frame = resized;
     }
 
+    /**
+     * Servers often resend the shape the cursor already has, in which case the listener is not notified again
+     */
     private void updateCursor(Rectangle cursor, InputStream in) throws VncException {
-        if (cursor.getWidth() > 0 && cursor.getHeight() > 0) {
-            BufferedImage cursorImage = new BufferedImage(cursor.getWidth(), cursor.getHeight(), TYPE_INT_ARGB);
-            cursorRenderer.render(in, cursorImage, cursor);
-            BiConsumer<Image, Point> listener = session.getConfig().getMousePointerUpdateListener();
-            if (listener != null) {
-                listener.accept(cursorImage, new Point(cursor.getX(), cursor.getY()));
-            }
+        BufferedImage cursorImage;
+        if (cursor.getEncoding() == ALPHA_CURSOR) {
+            cursorImage = cursorRenderer.decodeAlpha(in, cursor);
+        } else if (cursor.getWidth() > 0 && cursor.getHeight() > 0) {
+            cursorImage = cursorRenderer.decode(in, cursor);
+        } else {
+            return;
+        }
+        if (cursorImage == null || (cursorImage == lastCursorImage && cursor.getX() == lastCursorHotspot.x
+                && cursor.getY() == lastCursorHotspot.y)) {
+            return;
+        }
+        lastCursorImage = cursorImage;
+        lastCursorHotspot = new Point(cursor.getX(), cursor.getY());
+        BiConsumer<Image, Point> listener = session.getConfig().getMousePointerUpdateListener();
+        if (listener != null) {
+            listener.accept(cursorImage, lastCursorHotspot);
+        }
+    }
+
+    /**
+     * The server has moved the mouse pointer, e.g. because an application on the remote desktop warped it
+     */
+    private void updatePointerPosition(Rectangle position) {
+        Consumer<Point> listener = session.getConfig().getMousePointerPositionListener();
+        if (listener != null) {
+            listener.accept(new Point(position.getX(), position.getY()));
         }
     }
 
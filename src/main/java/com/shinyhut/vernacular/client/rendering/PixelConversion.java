@@ -0,0 +1,53 @@
+package com.shinyhut.vernacular.client.rendering;
+
+import com.shinyhut.vernacular.client.rendering.renderers.PixelConverter;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+/**
+ * Which side of the connection converts pixels from the server's own pixel format into the framebuffer's packed int
+ * pixels. The server converts whenever the client has asked for a format other than the one it uses natively, and the
+ * client converts whenever the pixels it receives are not already laid out like the framebuffer's.
+ */
+public enum PixelConversion {
+
+    /** Pixels are sent in the server's own format, which is already laid out like the framebuffer's **/
+    NONE(false, false),
+
+    /** The server converts pixels into the requested format, which the client copies into the framebuffer **/
+    SERVER(true, false),
+
+    /** Pixels are sent in the server's own format, which the client converts **/
+    CLIENT(false, true),
+
+    /** The server converts pixels into the requested format, which the client converts again **/
+    BOTH(true, true);
+
+    private final boolean server;
+    private final boolean client;
+
+    PixelConversion(boolean server, boolean client) {
+        this.server = server;
+        this.client = client;
+    }
+
+    public static PixelConversion of(boolean server, boolean client) {
+        return server ? (client ? BOTH : SERVER) : (client ? CLIENT : NONE);
+    }
+
+    /**
+     * @param serverPixelFormat The pixel format the server uses natively
+     * @param pixelFormat       The pixel format in which the server sends pixels to the client
+     * @return Which side converts pixels sent in the specified format
+     */
+    public static PixelConversion between(PixelFormat serverPixelFormat, PixelFormat pixelFormat) {
+        return of(!pixelFormat.equals(serverPixelFormat), !PixelConverter.isNative(pixelFormat));
+    }
+
+    public boolean isServerConverting() {
+        return server;
+    }
+
+    public boolean isClientConverting() {
+        return client;
+    }
+}
@@ -0,0 +1,12 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+/**
+ * Renders CoRRE rectangles. CoRRE is identical to RRE, except that subrectangle coordinates and dimensions are sent as
+ * single bytes, which limits rectangles to 255x255 pixels.
+ */
+public class CoRRERenderer extends RRERenderer {
+
+    public CoRRERenderer(PixelDecoder pixelDecoder) {
+        super(pixelDecoder, 1, "CoRRE");
+    }
+}
@@ -1,29 +1,56 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
 import java.awt.image.BufferedImage;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
-import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedShort;
+import static java.lang.System.arraycopy;
 
 public class CopyRectRenderer implements Renderer {
 
     @Override
     public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
         try {
-            DataInput dataInput = new DataInputStream(in);
-            int srcX = dataInput.readUnsignedShort();
-            int srcY = dataInput.readUnsignedShort();
-            BufferedImage src = new BufferedImage(rectangle.getWidth(), rectangle.getHeight(), TYPE_INT_RGB);
-            destination.getSubimage(srcX, srcY, rectangle.getWidth(), rectangle.getHeight()).copyData(src.getRaster());
-            destination.getGraphics().drawImage(src, rectangle.getX(), rectangle.getY(), null);
+            int srcX = readUnsignedShort(in);
+            int srcY = readUnsignedShort(in);
+            int width = rectangle.getWidth();
+            int height = rectangle.getHeight();
+            if (!Rasters.contains(destination, srcX, srcY, width, height)
+                    || !Rasters.contains(destination, rectangle.getX(), rectangle.getY(), width, height)) {
+                throw new InvalidMessageException("CopyRect");
+            }
+            copy(destination, srcX, srcY, rectangle.getX(), rectangle.getY(), width, height);
         } catch (IOException e) {
             throw new UnexpectedVncException(e);
         }
     }
+
+    /**
+     * Copies a region of the image to another, possibly overlapping, location within the same image. When the region
+     * moves down, rows are copied from the bottom up so that no source row is overwritten before it has been read.
+     * Overlap within a row is handled by {@link System#arraycopy}. Both regions must lie within the image.
+     */
+    private static void copy(BufferedImage image, int srcX, int srcY, int dstX, int dstY, int width, int height) {
+        int[] pixels = Rasters.pixels(image);
+        int stride = Rasters.stride(image);
+        int src = Rasters.offset(image, srcX, srcY);
+        int dst = Rasters.offset(image, dstX, dstY);
+        if (dstY > srcY) {
+            int last = (height - 1) * stride;
+            src += last;
+            dst += last;
+            stride = -stride;
+        }
+        for (int row = 0; row < height; row++) {
+            arraycopy(pixels, src, pixels, dst, width);
+            src += stride;
+            dst += stride;
+        }
+    }
 }
@@ -1,21 +1,57 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
-import static com.shinyhut.vernacular.utils.ByteUtils.bitAt;
 
+import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW;
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.lang.System.arraycopy;
+
+/**
+ * Renders the cursor shapes sent with the Cursor pseudo-encoding: the cursor's pixels, followed by a bitmask with one
+ * bit per pixel which is clear where the cursor is transparent. The mask is applied directly to the destination's
+ * raster.
+ * <p>
+ * Shapes sent with the Cursor With Alpha pseudo-encoding have a full alpha channel instead of a mask. Their pixels are
+ * always sent as red, green, blue and alpha bytes with the color premultiplied by the alpha, which is exactly the
+ * layout of a {@link BufferedImage#TYPE_INT_ARGB_PRE} image, so each pixel is simply packed into the image's raster.
+ * <p>
+ * Servers send the same few shapes over and over, so {@link #decode(InputStream, Rectangle)} keeps the most recently
+ * used shapes, keyed by the bytes they were sent as, and returns the image it already has when a shape is sent again.
+ * Shapes in indexed pixel formats are not cached, since their colors change whenever the color map does.
+ */
 public class CursorRenderer implements Renderer {
 
-    private static final int TRANSPARENT = new Color(0.0f, 0.0f, 0.0f, 0.0f).getRGB();
+    private static final int TRANSPARENT = 0x00000000;
+    private static final int MAX_CACHED_SHAPES = 32;
+    private static final int ALPHA_BYTES_PER_PIXEL = 4;
+
+    /**
+     * Identifies alpha shapes in the cache, in place of the pixel converter which identifies the format of other shapes
+     */
+    private static final Object ALPHA_FORMAT = new Object();
 
     private final RawRenderer rawRenderer;
+    private final Shape probe = new Shape();
+    private final Map<Shape, BufferedImage> shapes = new LinkedHashMap<Shape, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Shape, BufferedImage> eldest) {
+            return size() > MAX_CACHED_SHAPES;
+        }
+    };
+
+    private byte[] buffer = new byte[0];
 
     public CursorRenderer(RawRenderer rawRenderer) {
         this.rawRenderer = rawRenderer;
@@ -23,30 +59,192 @@ public class CursorRenderer implements Renderer {
 
     @Override
     public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        PixelConverter converter = rawRenderer.getConverter();
+        int pixelLength = read(in, converter, rectangle);
+        render(converter, pixelLength, destination, rectangle.getWidth(), rectangle.getHeight());
+    }
+
+    /**
+     * Reads a cursor shape, reusing the image of an identical shape if one has been sent recently. The same shape in
+     * the same true color pixel format always decodes to the same image instance, which must not be modified.
+     *
+     * @return An image of the cursor, with transparent pixels where the cursor's mask is clear
+     */
+    public BufferedImage decode(InputStream in, Rectangle rectangle) throws VncException {
+        PixelConverter converter = rawRenderer.getConverter();
+        int width = rectangle.getWidth();
+        int height = rectangle.getHeight();
+        int pixelLength = read(in, converter, rectangle);
+
+        if (!converter.getPixelFormat().isTrueColor()) {
+            BufferedImage image = new BufferedImage(width, height, TYPE_INT_ARGB);
+            render(converter, pixelLength, image, width, height);
+            return image;
+        }
+        probe.set(buffer, pixelLength + maskLength(width, height), width, height, converter);
+        BufferedImage image = shapes.get(probe);
+        if (image == null) {
+            image = new BufferedImage(width, height, TYPE_INT_ARGB);
+            render(converter, pixelLength, image, width, height);
+            shapes.put(probe.copy(), image);
+        }
+        return image;
+    }
+
+    /**
+     * Reads a cursor shape sent with the Cursor With Alpha pseudo-encoding, reusing the image of an identical shape if
+     * one has been sent recently. Only shapes sent with the RAW encoding are supported.
+     *
+     * @return An image of the cursor, with premultiplied alpha, or null if the shape is empty
+     */
+    public BufferedImage decodeAlpha(InputStream in, Rectangle rectangle) throws VncException {
+        int width = rectangle.getWidth();
+        int height = rectangle.getHeight();
+        int length = width * height * ALPHA_BYTES_PER_PIXEL;
         try {
-            rawRenderer.render(in, destination, 0, 0, rectangle.getWidth(), rectangle.getHeight());
-
-            byte[] bitmask = new byte[((rectangle.getWidth() + 7) / 8) * rectangle.getHeight()];
-            new DataInputStream(in).readFully(bitmask);
-
-            int x = 0;
-            int y = 0;
-
-            for (byte b : bitmask) {
-                for (int i = 7; i >= 0; i--) {
-                    boolean visible = bitAt(b, i);
-                    if (!visible) {
-                        destination.setRGB(x, y, TRANSPARENT);
-                    }
-                    if (++x == rectangle.getWidth()) {
-                        x = 0;
-                        y++;
-                        break;
-                    }
-                }
+            int encoding = readInt(in);
+            if (encoding != RAW.getCode()) {
+                throw new UnsupportedEncodingException(encoding);
             }
         } catch (IOException e) {
             throw new UnexpectedVncException(e);
         }
+        if (width == 0 || height == 0) {
+            return null;
+        }
+        read(in, length);
+
+        probe.set(buffer, length, width, height, ALPHA_FORMAT);
+        BufferedImage image = shapes.get(probe);
+        if (image == null) {
+            image = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+            renderAlpha(image, width, height);
+            shapes.put(probe.copy(), image);
+        }
+        return image;
+    }
+
+    /**
+     * Reads the cursor's pixels and mask into the buffer
+     *
+     * @return The length of the pixels, which are followed by the mask
+     */
+    private int read(InputStream in, PixelConverter converter, Rectangle rectangle) throws VncException {
+        int width = rectangle.getWidth();
+        int height = rectangle.getHeight();
+        int pixelLength = width * height * converter.getBytesPerPixel();
+        read(in, pixelLength + maskLength(width, height));
+        return pixelLength;
+    }
+
+    private void read(InputStream in, int length) throws VncException {
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+        try {
+            readFully(in, buffer, 0, length);
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+
+    private void render(PixelConverter converter, int pixelLength, BufferedImage destination, int width, int height) {
+        rawRenderer.render(buffer, 0, converter, destination, 0, 0, width, height);
+
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int target = Rasters.offset(destination, 0, 0);
+        int rowLength = (width + 7) / 8;
+        for (int row = 0, mask = pixelLength; row < height; row++, mask += rowLength, target += stride) {
+            for (int column = 0; column < width; column++) {
+                if ((buffer[mask + (column >> 3)] & (0x80 >> (column & 7))) == 0) {
+                    pixels[target + column] = TRANSPARENT;
+                }
+            }
+        }
+    }
+
+    private void renderAlpha(BufferedImage destination, int width, int height) {
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int target = Rasters.offset(destination, 0, 0);
+        for (int row = 0, source = 0; row < height; row++, target += stride) {
+            for (int column = 0; column < width; column++, source += ALPHA_BYTES_PER_PIXEL) {
+                pixels[target + column] = (buffer[source + 3] & 0xff) << 24
+                        | (buffer[source] & 0xff) << 16
+                        | (buffer[source + 1] & 0xff) << 8
+                        | (buffer[source + 2] & 0xff);
+            }
+        }
+    }
+
+    private static int maskLength(int width, int height) {
+        return ((width + 7) / 8) * height;
+    }
+
+    /**
+     * A cursor shape as it was sent, in a particular format: the pixel converter for the session's pixel format, or
+     * {@link #ALPHA_FORMAT}
+     */
+    private static final class Shape {
+
+        private byte[] data;
+        private int length;
+        private int width;
+        private int height;
+        private Object format;
+        private int hash;
+
+        private void set(byte[] data, int length, int width, int height, Object format) {
+            this.data = data;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            int hash = 31 * width + height;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + data[i];
+            }
+            this.hash = hash;
+        }
+
+        private Shape copy() {
+            Shape copy = new Shape();
+            byte[] data = new byte[length];
+            arraycopy(this.data, 0, data, 0, length);
+            copy.data = data;
+            copy.length = length;
+            copy.width = width;
+            copy.height = height;
+            copy.format = format;
+            copy.hash = hash;
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) o;
+            if (hash != other.hash || length != other.length || width != other.width || height != other.height
+                    || format != other.format) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (data[i] != other.data[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 }
@@ -1,48 +1,76 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
-import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
-import static com.shinyhut.vernacular.utils.ByteUtils.mask;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.mask;
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+import static java.lang.Math.min;
+
+/**
+ * Renders Hextile rectangles, and ZlibHex rectangles via {@link ZlibHexRenderer}.
+ * <p>
+ * A rectangle is divided into 16x16 tiles, each of which is either raw or filled with a background color and overlaid
+ * with subrectangles. Tiles which omit their background or foreground color reuse the one from the previous tile in
+ * the same rectangle.
+ * <p>
+ * Rectangles which do not fit within the destination are rejected, and subrectangles are clipped to their tile, so that
+ * a malformed message can never paint outside the tile it belongs to.
+ */
 public class HextileRenderer implements Renderer {
 
-    private static final int SUB_ENCODING_MASK_RAW = 0x01;
+    static final int SUB_ENCODING_MASK_RAW = 0x01;
     private static final int SUB_ENCODING_MASK_BACKGROUND_SPECIFIED = 0x02;
     private static final int SUB_ENCODING_MASK_FOREGROUND_SPECIFIED = 0x04;
     private static final int SUB_ENCODING_MASK_ANY_SUBRECTS = 0x08;
     private static final int SUB_ENCODING_MASK_SUBRECTS_COLORED = 0x10;
 
     private static final int TILE_SIZE = 16;
+    private static final int MAX_SUBRECTS = 255;
+    private static final int MAX_BYTES_PER_PIXEL = 4;
 
     private final RawRenderer rawRenderer;
     private final PixelDecoder pixelDecoder;
-    private final PixelFormat pixelFormat;
+    private final String encodingName;
+
+    private final byte[] subrects = new byte[MAX_SUBRECTS * (MAX_BYTES_PER_PIXEL + 2)];
+
+    private int lastBackground;
+    private int lastForeground;
 
-    public HextileRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder, PixelFormat pixelFormat) {
+    public HextileRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        this(rawRenderer, pixelDecoder, "Hextile");
+    }
+
+    /**
+     * @param encodingName The name of the encoding, as reported if a rectangle is invalid
+     */
+    HextileRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder, String encodingName) {
         this.pixelDecoder = pixelDecoder;
         this.rawRenderer = rawRenderer;
-        this.pixelFormat = pixelFormat;
+        this.encodingName = encodingName;
     }
 
     @Override
     public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
-        DataInput dataInput = new DataInputStream(in);
-        Graphics2D g = (Graphics2D) destination.getGraphics();
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException(encodingName);
+        }
+        PixelConverter converter = pixelDecoder.getConverter();
 
         int horizontalTileCount = (rectangle.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
         int verticalTileCount = (rectangle.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
 
-        Pixel lastBackground = null;
-        Pixel lastForeground = null;
+        lastBackground = 0;
+        lastForeground = 0;
 
         try {
             for (int tileY = 0; tileY < verticalTileCount; tileY++) {
@@ -51,42 +79,9 @@ public class HextileRenderer implements Renderer {
                     int tileTopLeftY = rectangle.getY() + (tileY * TILE_SIZE);
                     int tileWidth = tileSize(tileX, horizontalTileCount, rectangle.getWidth());
                     int tileHeight = tileSize(tileY, verticalTileCount, rectangle.getHeight());
-                    int subencoding = dataInput.readUnsignedByte();
-                    boolean raw = mask(subencoding, SUB_ENCODING_MASK_RAW);
-
-                    if (raw) {
-                        rawRenderer.render(in, destination, tileTopLeftX, tileTopLeftY, tileWidth, tileHeight);
-                    } else {
-                        boolean hasBackground = mask(subencoding, SUB_ENCODING_MASK_BACKGROUND_SPECIFIED);
-                        boolean hasForeground = mask(subencoding, SUB_ENCODING_MASK_FOREGROUND_SPECIFIED);
-                        boolean hasSubrects = mask(subencoding, SUB_ENCODING_MASK_ANY_SUBRECTS);
-                        boolean subrectsColored = mask(subencoding, SUB_ENCODING_MASK_SUBRECTS_COLORED);
-
-                        Pixel background = hasBackground ? pixelDecoder.decode(in, pixelFormat) : lastBackground;
-                        Pixel foreground = hasForeground ? pixelDecoder.decode(in, pixelFormat) : lastForeground;
-                        lastBackground = background;
-                        lastForeground = foreground;
-
-                        g.setColor(new Color(background.getRed(), background.getGreen(), background.getBlue()));
-                        g.fillRect(tileTopLeftX, tileTopLeftY, tileWidth, tileHeight);
-
-                        if (hasSubrects) {
-                            int subrectCount = dataInput.readUnsignedByte();
-                            for (int s = 0; s < subrectCount; s++) {
-                                Pixel subrectColor = subrectsColored ? pixelDecoder.decode(in, pixelFormat) : foreground;
-                                int coords = dataInput.readUnsignedByte();
-                                int dimensions = dataInput.readUnsignedByte();
-                                int subrectX = coords >> 4;
-                                int subrectY = coords & 0x0f;
-                                int subrectWidth = (dimensions >> 4) + 1;
-                                int subrectHeight = (dimensions & 0x0f) + 1;
-                                int subrectTopLeftX = tileTopLeftX + subrectX;
-                                int subrectTopLeftY = tileTopLeftY + subrectY;
-                                g.setColor(new Color(subrectColor.getRed(), subrectColor.getGreen(), subrectColor.getBlue()));
-                                g.fillRect(subrectTopLeftX, subrectTopLeftY, subrectWidth, subrectHeight);
-                            }
-                        }
-                    }
+                    int subencoding = readUnsignedByte(in);
+                    renderTile(in, subencoding, converter, destination, tileTopLeftX, tileTopLeftY, tileWidth,
+                            tileHeight);
                 }
             }
         } catch (IOException e) {
@@ -94,6 +89,59 @@ public class HextileRenderer implements Renderer {
         }
     }
 
+    /**
+     * Renders a single tile, whose subencoding has already been read
+     *
+     * @param in The stream from which the rest of the tile is read
+     */
+    void renderTile(InputStream in, int subencoding, PixelConverter converter, BufferedImage destination, int x,
+                    int y, int width, int height) throws VncException, IOException {
+        if (mask(subencoding, SUB_ENCODING_MASK_RAW)) {
+            rawRenderer.render(in, converter, destination, x, y, width, height);
+            return;
+        }
+
+        boolean hasBackground = mask(subencoding, SUB_ENCODING_MASK_BACKGROUND_SPECIFIED);
+        boolean hasForeground = mask(subencoding, SUB_ENCODING_MASK_FOREGROUND_SPECIFIED);
+        boolean hasSubrects = mask(subencoding, SUB_ENCODING_MASK_ANY_SUBRECTS);
+        boolean subrectsColored = mask(subencoding, SUB_ENCODING_MASK_SUBRECTS_COLORED);
+
+        int background = hasBackground ? converter.read(in) : lastBackground;
+        int foreground = hasForeground ? converter.read(in) : lastForeground;
+        lastBackground = background;
+        lastForeground = foreground;
+
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int tileOffset = Rasters.offset(destination, x, y);
+        Rasters.fill(pixels, tileOffset, stride, width, height, background);
+
+        if (hasSubrects) {
+            int bytesPerPixel = converter.getBytesPerPixel();
+            int subrectCount = readUnsignedByte(in);
+            int subrectLength = subrectsColored ? bytesPerPixel + 2 : 2;
+            readFully(in, subrects, 0, subrectCount * subrectLength);
+            int color = foreground;
+            for (int s = 0, i = 0; s < subrectCount; s++) {
+                if (subrectsColored) {
+                    color = converter.convert(subrects, i);
+                    i += bytesPerPixel;
+                }
+                int coords = subrects[i++] & 0xff;
+                int dimensions = subrects[i++] & 0xff;
+                int subrectX = coords >> 4;
+                int subrectY = coords & 0x0f;
+                int subrectWidth = min((dimensions >> 4) + 1, width - subrectX);
+                int subrectHeight = min((dimensions & 0x0f) + 1, height - subrectY);
+                if (subrectWidth <= 0 || subrectHeight <= 0) {
+                    continue;
+                }
+                int subrectOffset = tileOffset + subrectY * stride + subrectX;
+                Rasters.fill(pixels, subrectOffset, stride, subrectWidth, subrectHeight, color);
+            }
+        }
+    }
+
     private static int tileSize(int tileNo, int numberOfTiles, int rectangleSize) {
         int overlap = rectangleSize % TILE_SIZE;
         if (tileNo == numberOfTiles -1 && overlap != 0) {
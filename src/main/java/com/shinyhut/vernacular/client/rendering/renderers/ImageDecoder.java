@@ -0,0 +1,165 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import static java.lang.Math.max;
+
+/**
+ * Decodes the compressed images embedded in some encodings (e.g. the JPEG and PNG rectangles of the Tight and TightPNG
+ * encodings).
+ * <p>
+ * There is one decoder per image format, shared by every session. Each keeps a pool of idle {@link ImageReader}s, so
+ * a reader is only created when every existing one is busy, and several images can be decoded at once. Each image is
+ * decoded straight into the region of the destination it covers rather than into an intermediate image which would
+ * then have to be copied. Images are cached in memory rather than in the temporary files that {@link ImageIO} would
+ * otherwise use.
+ * <p>
+ * Images with a palette, such as the PNG images sent by QEMU, cannot be decoded into the destination's type. Their
+ * palette indices are decoded into a scratch image kept with the reader, and then looked up into the destination's
+ * raster.
+ */
+class ImageDecoder {
+
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private static final ConcurrentMap<String, ImageDecoder> DECODERS = new ConcurrentHashMap<>();
+
+    private final String formatName;
+    private final Queue<PooledReader> readers = new ConcurrentLinkedQueue<>();
+
+    private ImageDecoder(String formatName) {
+        this.formatName = formatName;
+    }
+
+    /**
+     * @param formatName The informal name of the image format, as understood by {@link ImageIO}
+     */
+    static ImageDecoder forFormat(String formatName) {
+        return DECODERS.computeIfAbsent(formatName, ImageDecoder::new);
+    }
+
+    /**
+     * Decodes an image into a region of the destination, which the caller has checked lies within it
+     *
+     * @return Whether the image was decoded. An image whose size is not that of the region is not decoded, and nothing
+     * is drawn.
+     */
+    boolean decode(byte[] data, int length, BufferedImage destination, int x, int y, int width, int height)
+            throws IOException {
+        PooledReader pooled = readers.poll();
+        if (pooled == null) {
+            pooled = new PooledReader(ImageIO.getImageReadersByFormatName(formatName).next());
+        }
+        ImageReader reader = pooled.reader;
+        boolean reusable = false;
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data, 0, length))) {
+            reader.setInput(input, true, true);
+            if (reader.getWidth(0) != width || reader.getHeight(0) != height) {
+                reusable = true;
+                return false;
+            }
+            ImageTypeSpecifier rawType = reader.getRawImageType(0);
+            ColorModel colorModel = rawType.getColorModel();
+            if (decodesTo(reader, destination.getType())) {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(destination.getSubimage(x, y, width, height));
+                reader.read(0, param);
+            } else if (colorModel instanceof IndexColorModel) {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(pooled.indices(rawType, width, height));
+                reader.read(0, param);
+                renderIndices(pooled, (IndexColorModel) colorModel, destination, x, y, width, height);
+            } else {
+                BufferedImage image = reader.read(0);
+                image.getRGB(0, 0, width, height, Rasters.pixels(destination), Rasters.offset(destination, x, y),
+                        Rasters.stride(destination));
+            }
+            reusable = true;
+            return true;
+        } finally {
+            reader.setInput(null);
+            if (reusable) {
+                readers.offer(pooled);
+            } else {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static boolean decodesTo(ImageReader reader, int imageType) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            if (types.next().getBufferedImageType() == imageType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void renderIndices(PooledReader pooled, IndexColorModel colorModel, BufferedImage destination,
+                                      int x, int y, int width, int height) {
+        int[] palette = pooled.palette;
+        colorModel.getRGBs(palette);
+        Raster indices = pooled.indices.getRaster();
+        int[] row = pooled.row;
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int target = Rasters.offset(destination, x, y);
+        for (int line = 0; line < height; line++, target += stride) {
+            indices.getSamples(0, line, width, 1, 0, row);
+            for (int column = 0; column < width; column++) {
+                pixels[target + column] = palette[row[column]];
+            }
+        }
+    }
+
+    /**
+     * An idle reader, with the scratch space used to decode images with a palette
+     */
+    private static final class PooledReader {
+
+        private final ImageReader reader;
+        private final int[] palette = new int[MAX_PALETTE_SIZE];
+
+        private BufferedImage indices;
+        private int[] row = new int[0];
+
+        private PooledReader(ImageReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Readers scale samples to the bit depth of the image they decode into, so the scratch image is replaced
+         * whenever the number of bits per index changes, as well as when it is too small
+         *
+         * @return A region of the scratch image to decode palette indices into
+         */
+        private BufferedImage indices(ImageTypeSpecifier rawType, int width, int height) {
+            int bits = rawType.getSampleModel().getSampleSize(0);
+            if (indices == null || indices.getSampleModel().getSampleSize(0) != bits
+                    || indices.getWidth() < width || indices.getHeight() < height) {
+                int scratchWidth = indices == null ? width : max(width, indices.getWidth());
+                int scratchHeight = indices == null ? height : max(height, indices.getHeight());
+                indices = rawType.createBufferedImage(scratchWidth, scratchHeight);
+                row = new int[scratchWidth];
+            }
+            return indices.getSubimage(0, 0, width, height);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.System.arraycopy;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Renders JPEG rectangles, each of which is a complete JPEG image, as sent by QEMU and TigerVNC.
+ * <p>
+ * A rectangle is not prefixed with its length, so its markers are parsed to find where the image ends. Servers may
+ * leave out the quantization and Huffman tables when they have not changed since the previous image, in which case
+ * the tables of the last image which had them are inserted.
+ * <p>
+ * A full screen video update can contain dozens of JPEG rectangles, and decoding them dominates the cost of the update.
+ * Rather than being decoded as it is read, each rectangle is decoded into a scratch image on a small pool of threads
+ * shared by every session, while the rest of the update is read. The decoded images are copied into the destination
+ * in the order the rectangles were sent when {@link #flush()} is called, which must happen before anything else draws
+ * on the destination. Only a few rectangles are decoded ahead at a time; beyond that, the oldest is waited for and
+ * copied as each new one is read.
+ * <p>
+ * A rectangle which does not fit within the destination is rejected before it is read, since its decoded image could
+ * not be copied into place, and one whose image is not the size of the rectangle is rejected once it is decoded.
+ */
+public class JpegRenderer implements Renderer {
+
+    private static final int MARKER = 0xff;
+    private static final int TEM = 0x01;
+    private static final int DHT = 0xc4;
+    private static final int RST0 = 0xd0;
+    private static final int RST7 = 0xd7;
+    private static final int SOI = 0xd8;
+    private static final int EOI = 0xd9;
+    private static final int SOS = 0xda;
+    private static final int DQT = 0xdb;
+
+    private static final int THREADS = max(1, min(getRuntime().availableProcessors(), 4));
+    private static final int MAX_PENDING = THREADS * 2;
+    private static final ExecutorService EXECUTOR = executor();
+
+    private final Queue<Job> pending = new ArrayDeque<>();
+    private final Queue<Job> idle = new ArrayDeque<>();
+    private final Tables quantizationTables = new Tables();
+    private final Tables huffmanTables = new Tables();
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException("JPEG");
+        }
+        Job job = idle.isEmpty() ? new Job() : idle.poll();
+        try {
+            read(in, job);
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+        job.prepare(destination, rectangle);
+        job.future = EXECUTOR.submit(job);
+        pending.add(job);
+        if (pending.size() > MAX_PENDING) {
+            complete(pending.poll());
+        }
+    }
+
+    /**
+     * Waits for every rectangle rendered since the last flush to be decoded, and copies them into their destination in
+     * the order they were rendered
+     */
+    public void flush() throws VncException {
+        while (!pending.isEmpty()) {
+            complete(pending.poll());
+        }
+    }
+
+    private void complete(Job job) throws VncException {
+        try {
+            job.future.get();
+        } catch (ExecutionException e) {
+            discardPending();
+            throw new UnexpectedVncException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discardPending();
+            throw new UnexpectedVncException(e);
+        }
+        if (!job.decoded) {
+            discardPending();
+            throw new InvalidMessageException("JPEG");
+        }
+        job.copy();
+        idle.add(job);
+    }
+
+    /**
+     * Abandons the remaining rectangles after one fails. Their jobs may still be running, so are not reused.
+     */
+    private void discardPending() {
+        for (Job job : pending) {
+            job.future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    private void read(InputStream in, Job job) throws VncException, IOException {
+        quantizationTables.begin();
+        huffmanTables.begin();
+        job.length = 0;
+
+        int type = readMarker(in);
+        if (type != SOI) {
+            throw new InvalidMessageException("JPEG");
+        }
+        while (true) {
+            int start = job.length;
+            job.append(MARKER);
+            job.append(type);
+            if (type == EOI) {
+                break;
+            }
+            if (type == TEM || (type >= RST0 && type <= SOI)) {
+                type = readMarker(in);
+                continue;
+            }
+
+            int high = readUnsignedByte(in);
+            int low = readUnsignedByte(in);
+            int length = (high << 8) | low;
+            if (length < 2) {
+                throw new InvalidMessageException("JPEG");
+            }
+            job.append(high);
+            job.append(low);
+            job.read(in, length - 2);
+
+            if (type == DQT) {
+                quantizationTables.receive(job.data, start, job.length - start);
+            } else if (type == DHT) {
+                huffmanTables.receive(job.data, start, job.length - start);
+            }
+            type = type == SOS ? readEntropyCodedData(in, job) : readMarker(in);
+        }
+
+        insertTables(job, quantizationTables.end(), huffmanTables.end());
+    }
+
+    private static int readMarker(InputStream in) throws VncException, IOException {
+        if (readUnsignedByte(in) != MARKER) {
+            throw new InvalidMessageException("JPEG");
+        }
+        return readMarkerType(in);
+    }
+
+    /**
+     * Markers may be padded with any number of fill bytes
+     */
+    private static int readMarkerType(InputStream in) throws IOException {
+        int type = readUnsignedByte(in);
+        while (type == MARKER) {
+            type = readUnsignedByte(in);
+        }
+        return type;
+    }
+
+    /**
+     * Copies the compressed data following a start of scan marker, which ends at the first marker other than a stuffed
+     * zero byte or a restart marker
+     *
+     * @return The type of the marker which follows the data
+     */
+    private static int readEntropyCodedData(InputStream in, Job job) throws IOException {
+        while (true) {
+            int b = readUnsignedByte(in);
+            if (b != MARKER) {
+                job.append(b);
+                continue;
+            }
+            int type = readMarkerType(in);
+            if (type != 0 && (type < RST0 || type > RST7)) {
+                return type;
+            }
+            job.append(MARKER);
+            job.append(type);
+        }
+    }
+
+    /**
+     * Inserts the cached tables which the image left out immediately after its start of image marker
+     */
+    private void insertTables(Job job, boolean quantization, boolean huffman) {
+        int quantizationLength = quantization ? quantizationTables.cachedLength : 0;
+        int huffmanLength = huffman ? huffmanTables.cachedLength : 0;
+        int extra = quantizationLength + huffmanLength;
+        if (extra > 0) {
+            job.ensureCapacity(job.length + extra);
+            arraycopy(job.data, 2, job.data, 2 + extra, job.length - 2);
+            arraycopy(quantizationTables.cached, 0, job.data, 2, quantizationLength);
+            arraycopy(huffmanTables.cached, 0, job.data, 2 + quantizationLength, huffmanLength);
+            job.length += extra;
+        }
+    }
+
+    private static ExecutorService executor() {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "vernacular-jpeg-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * One rectangle's compressed image and the scratch image it is decoded into. Jobs are reused once their image has
+     * been copied into its destination.
+     */
+    private static final class Job implements Callable<Void> {
+
+        private byte[] data = new byte[4096];
+        private int length;
+        private BufferedImage scratch;
+        private BufferedImage destination;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private Future<Void> future;
+        private boolean decoded;
+
+        private void append(int b) {
+            ensureCapacity(length + 1);
+            data[length++] = (byte) b;
+        }
+
+        private void read(InputStream in, int count) throws IOException {
+            ensureCapacity(length + count);
+            readFully(in, data, length, count);
+            length += count;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (data.length < capacity) {
+                byte[] grown = new byte[max(capacity, data.length * 2)];
+                arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+        }
+
+        private void prepare(BufferedImage destination, Rectangle rectangle) {
+            this.destination = destination;
+            x = rectangle.getX();
+            y = rectangle.getY();
+            width = rectangle.getWidth();
+            height = rectangle.getHeight();
+            if (scratch == null || scratch.getWidth() < width || scratch.getHeight() < height) {
+                int scratchWidth = scratch == null ? width : max(width, scratch.getWidth());
+                int scratchHeight = scratch == null ? height : max(height, scratch.getHeight());
+                scratch = new BufferedImage(max(scratchWidth, 1), max(scratchHeight, 1), TYPE_INT_RGB);
+            }
+        }
+
+        @Override
+        public Void call() throws IOException {
+            decoded = ImageDecoder.forFormat("jpeg").decode(data, length, scratch, 0, 0, width, height);
+            return null;
+        }
+
+        private void copy() {
+            int[] source = Rasters.pixels(scratch);
+            int sourceStride = Rasters.stride(scratch);
+            int[] pixels = Rasters.pixels(destination);
+            int stride = Rasters.stride(destination);
+            int target = Rasters.offset(destination, x, y);
+            for (int line = 0, offset = 0; line < height; line++, offset += sourceStride, target += stride) {
+                arraycopy(source, offset, pixels, target, width);
+            }
+            destination = null;
+            future = null;
+        }
+    }
+
+    /**
+     * The most recent tables of one kind, and those received in the image being read
+     */
+    private static final class Tables {
+
+        private byte[] cached = new byte[0];
+        private int cachedLength;
+        private byte[] received = new byte[0];
+        private int receivedLength;
+
+        private void begin() {
+            receivedLength = 0;
+        }
+
+        private void receive(byte[] data, int offset, int length) {
+            if (received.length < receivedLength + length) {
+                byte[] grown = new byte[max(receivedLength + length, received.length * 2)];
+                arraycopy(received, 0, grown, 0, receivedLength);
+                received = grown;
+            }
+            arraycopy(data, offset, received, receivedLength, length);
+            receivedLength += length;
+        }
+
+        /**
+         * @return Whether the image left out these tables, so that the cached ones must be inserted. Otherwise the
+         * image's own tables replace the cached ones.
+         */
+        private boolean end() {
+            if (receivedLength == 0) {
+                return true;
+            }
+            byte[] swap = cached;
+            cached = received;
+            cachedLength = receivedLength;
+            received = swap;
+            receivedLength = 0;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.util.zip.DataFormatException;
+
+/**
+ * Decompresses data compressed with the LZO1X algorithm, as used by the Ultra encoding.
+ * <p>
+ * The compressed data is a series of instructions, each of which either copies a run of literal bytes from the input or
+ * copies a match from earlier in the output. The two low bits of the last byte of most match instructions give the
+ * number of literals, up to 3, which follow the match without an instruction of their own. Every read and write is
+ * checked, so that corrupt data is reported rather than overrunning either buffer, and nothing is allocated.
+ */
+final class LzoDecompressor {
+
+    private static final int M2_MAX_OFFSET = 0x0800;
+    private static final int M4_BASE_OFFSET = 0x4000;
+
+    private static final int LITERAL_RUN = 0;
+    private static final int FIRST_LITERAL_RUN = 1;
+    private static final int MATCH = 2;
+    private static final int MATCH_NEXT = 3;
+
+    private byte[] in;
+    private int ip;
+    private int inEnd;
+    private byte[] out;
+    private int op;
+    private int outEnd;
+
+    /**
+     * @return The most bytes LZO1X can compress the specified number of bytes into, if the data does not compress at all
+     */
+    static long maxCompressedLength(long length) {
+        return length + length / 16 + 64 + 3;
+    }
+
+    /**
+     * @param source            The compressed data
+     * @param sourceLength      The number of bytes of compressed data
+     * @param destination       The buffer into which to decompress the data
+     * @param destinationLength The maximum number of bytes to decompress
+     * @return The number of bytes decompressed
+     * @throws DataFormatException If the compressed data is invalid, or decompresses to more than destinationLength
+     *                             bytes
+     */
+    int decompress(byte[] source, int sourceLength, byte[] destination, int destinationLength)
+            throws DataFormatException {
+        in = source;
+        ip = 0;
+        inEnd = sourceLength;
+        out = destination;
+        op = 0;
+        outEnd = destinationLength;
+        try {
+            return decompress();
+        } finally {
+            in = null;
+            out = null;
+        }
+    }
+
+    private int decompress() throws DataFormatException {
+        int t = 0;
+        int state = LITERAL_RUN;
+        if (peek() > 17) {
+            t = next() - 17;
+            if (t < 4) {
+                state = MATCH_NEXT;
+            } else {
+                copyLiterals(t);
+                state = FIRST_LITERAL_RUN;
+            }
+        }
+
+        while (true) {
+            switch (state) {
+                case LITERAL_RUN:
+                    t = next();
+                    if (t >= 16) {
+                        state = MATCH;
+                        break;
+                    }
+                    if (t == 0) {
+                        t = 15 + extendedLength();
+                    }
+                    copyLiterals(t + 3);
+                    state = FIRST_LITERAL_RUN;
+                    break;
+                case FIRST_LITERAL_RUN:
+                    t = next();
+                    if (t >= 16) {
+                        state = MATCH;
+                        break;
+                    }
+                    // a 3 byte match, further back than the 2 byte matches which follow other matches
+                    copyMatch(1 + M2_MAX_OFFSET + (t >> 2) + (next() << 2), 3);
+                    t = in[ip - 2] & 3;
+                    state = t == 0 ? LITERAL_RUN : MATCH_NEXT;
+                    break;
+                case MATCH:
+                    if (t >= 64) {
+                        copyMatch(1 + ((t >> 2) & 7) + (next() << 3), (t >> 5) + 1);
+                    } else if (t >= 32) {
+                        int length = t & 31;
+                        if (length == 0) {
+                            length = 31 + extendedLength();
+                        }
+                        copyMatch(1 + (next() >> 2) + (next() << 6), length + 2);
+                    } else if (t >= 16) {
+                        int distance = (t & 8) << 11;
+                        int length = t & 7;
+                        if (length == 0) {
+                            length = 7 + extendedLength();
+                        }
+                        distance += (next() >> 2) + (next() << 6);
+                        if (distance == 0) {
+                            return op;
+                        }
+                        copyMatch(distance + M4_BASE_OFFSET, length + 2);
+                    } else {
+                        copyMatch(1 + (t >> 2) + (next() << 2), 2);
+                    }
+                    t = in[ip - 2] & 3;
+                    state = t == 0 ? LITERAL_RUN : MATCH_NEXT;
+                    break;
+                default:
+                    copyLiterals(t);
+                    t = next();
+                    state = MATCH;
+            }
+        }
+    }
+
+    /**
+     * Lengths too long for their instruction are followed by a zero byte for every 255, then the remainder
+     */
+    private int extendedLength() throws DataFormatException {
+        int length = 0;
+        while (peek() == 0) {
+            length += 255;
+            ip++;
+        }
+        return length + next();
+    }
+
+    private void copyLiterals(int count) throws DataFormatException {
+        if (count > inEnd - ip || count > outEnd - op) {
+            throw new DataFormatException("LZO literal run overruns the buffer");
+        }
+        System.arraycopy(in, ip, out, op, count);
+        ip += count;
+        op += count;
+    }
+
+    /**
+     * Copies a match one byte at a time, since it may overlap the bytes it produces
+     */
+    private void copyMatch(int distance, int length) throws DataFormatException {
+        if (distance > op || length > outEnd - op) {
+            throw new DataFormatException("LZO match overruns the buffer");
+        }
+        int source = op - distance;
+        if (distance >= length) {
+            System.arraycopy(out, source, out, op, length);
+            op += length;
+        } else {
+            for (int i = 0; i < length; i++) {
+                out[op++] = out[source++];
+            }
+        }
+    }
+
+    private int peek() throws DataFormatException {
+        if (ip >= inEnd) {
+            throw new DataFormatException("Unexpected end of LZO data");
+        }
+        return in[ip] & 0xff;
+    }
+
+    private int next() throws DataFormatException {
+        int b = peek();
+        ip++;
+        return b;
+    }
+}
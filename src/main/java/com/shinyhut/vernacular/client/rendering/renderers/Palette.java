@@ -0,0 +1,54 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.shinyhut.vernacular.protocol.messages.ColorMapEntry;
+
+/**
+ * The color map used to resolve indexed pixels, held as a flat table of packed, opaque ARGB values large enough for
+ * both 8 and 16 bit indices.
+ * <p>
+ * SetColorMapEntries messages are applied to the table in place. They are read on the server event thread between
+ * framebuffer updates, and that thread is the only one which renders indexed pixels, so no renderer can see a partially
+ * applied message.
+ */
+public class Palette {
+
+    public static final int SIZE = 0x10000;
+
+    private static final int OPAQUE = 0xff000000;
+
+    private final int[] colors = new int[SIZE];
+
+    public Palette() {
+        Arrays.fill(colors, OPAQUE);
+    }
+
+    /**
+     * @return The current color table, indexed by pixel value. Callers must not modify it.
+     */
+    public int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * Replaces a contiguous run of colors, starting at the specified index
+     *
+     * @param firstColor The index of the first color to replace
+     * @param entries    The new colors, with 16 bit channels
+     */
+    public void update(int firstColor, List<ColorMapEntry> entries) {
+        for (int i = 0; i < entries.size() && firstColor + i < SIZE; i++) {
+            ColorMapEntry entry = entries.get(i);
+            colors[firstColor + i] = OPAQUE
+                    | shrink(entry.getRed()) << 16
+                    | shrink(entry.getGreen()) << 8
+                    | shrink(entry.getBlue());
+        }
+    }
+
+    private static int shrink(int colorMapValue) {
+        return (colorMapValue + 128) / 257;
+    }
+}
@@ -0,0 +1,539 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static java.lang.String.format;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Converts pixels in a negotiated {@link PixelFormat} into packed, opaque ARGB ints.
+ * <p>
+ * A converter is built once per pixel format and is specialized for its bits per pixel, byte order and true / indexed
+ * color. True color channels are expanded to 8 bits through lookup tables computed up front, so converting a pixel
+ * involves no allocation and no floating point arithmetic.
+ * <p>
+ * Converters are not thread safe; each one should only be used by the thread processing server messages.
+ */
+public abstract class PixelConverter {
+
+    private static final int OPAQUE = 0xff000000;
+
+    private final PixelFormat pixelFormat;
+    private final int bytesPerPixel;
+    private final byte[] pixel;
+
+    private PixelConverter(PixelFormat pixelFormat) {
+        this.pixelFormat = pixelFormat;
+        this.bytesPerPixel = pixelFormat.getBytesPerPixel();
+        this.pixel = new byte[bytesPerPixel];
+    }
+
+    /**
+     * Creates a converter for the specified pixel format
+     *
+     * @param pixelFormat The pixel format in which pixels will be received
+     * @param palette     The palette used to resolve indexed pixels
+     * @return A converter specialized for the specified pixel format
+     * @throws IllegalArgumentException if the pixel format has an unsupported number of bits per pixel
+     */
+    public static PixelConverter forFormat(PixelFormat pixelFormat, Palette palette) {
+        if (pixelFormat.isTrueColor()) {
+            switch (pixelFormat.getBitsPerPixel()) {
+                case 8:
+                    return new TrueColor8(pixelFormat);
+                case 16:
+                    return pixelFormat.isBigEndian()
+                            ? new TrueColor16BigEndian(pixelFormat)
+                            : new TrueColor16LittleEndian(pixelFormat);
+                case 24:
+                    if (TrueColorBytes.supports(pixelFormat)) {
+                        return new TrueColorBytes(pixelFormat);
+                    }
+                    return pixelFormat.isBigEndian()
+                            ? new TrueColor24BigEndian(pixelFormat)
+                            : new TrueColor24LittleEndian(pixelFormat);
+                case 32:
+                    if (TrueColorNative.supports(pixelFormat)) {
+                        return new TrueColorNative(pixelFormat);
+                    }
+                    if (TrueColorBytes.supports(pixelFormat)) {
+                        return new TrueColorBytes(pixelFormat);
+                    }
+                    return pixelFormat.isBigEndian()
+                            ? new TrueColor32BigEndian(pixelFormat)
+                            : new TrueColor32LittleEndian(pixelFormat);
+            }
+        } else {
+            switch (pixelFormat.getBitsPerPixel()) {
+                case 8:
+                    return new Indexed8(pixelFormat, palette);
+                case 16:
+                    return new Indexed16(pixelFormat, palette);
+            }
+        }
+        throw new IllegalArgumentException(format("Unsupported pixel format: %d bits per pixel, true color: %b",
+                pixelFormat.getBitsPerPixel(), pixelFormat.isTrueColor()));
+    }
+
+    /**
+     * @param pixelFormat A pixel format
+     * @return Whether pixels in the specified format can be converted
+     */
+    public static boolean isSupported(PixelFormat pixelFormat) {
+        switch (pixelFormat.getBitsPerPixel()) {
+            case 8:
+            case 16:
+                return true;
+            case 24:
+            case 32:
+                return pixelFormat.isTrueColor();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param pixelFormat A pixel format
+     * @return Whether pixels in the specified format are laid out exactly like packed ARGB ints, so that they are copied
+     * rather than converted
+     */
+    public static boolean isNative(PixelFormat pixelFormat) {
+        return pixelFormat.isTrueColor() && TrueColorNative.supports(pixelFormat);
+    }
+
+    /**
+     * Creates a converter which returns pixel values exactly as they were sent, rather than as ARGB, for encodings such
+     * as ZYWRLE which transform the pixel values themselves
+     *
+     * @param pixelFormat The pixel format in which pixels will be received
+     * @param shift       The number of bits by which to shift each value left, to restore the byte dropped from a
+     *                    compact pixel
+     * @return A converter which returns raw pixel values
+     */
+    static PixelConverter forValues(PixelFormat pixelFormat, int shift) {
+        return new PixelValues(pixelFormat, shift);
+    }
+
+    public PixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Converts a single pixel
+     *
+     * @param source The buffer containing the pixel
+     * @param offset The offset of the first byte of the pixel within the buffer
+     * @return The pixel as a packed, opaque ARGB int
+     */
+    public abstract int convert(byte[] source, int offset);
+
+    /**
+     * Converts a run of consecutive pixels
+     *
+     * @param source            The buffer containing the pixels
+     * @param sourceOffset      The offset of the first byte of the first pixel within the source buffer
+     * @param destination       The buffer to receive the packed ARGB pixels
+     * @param destinationOffset The index in the destination buffer at which to store the first pixel
+     * @param count             The number of pixels to convert
+     */
+    public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+        int s = sourceOffset;
+        int end = destinationOffset + count;
+        for (int d = destinationOffset; d < end; d++) {
+            destination[d] = convert(source, s);
+            s += bytesPerPixel;
+        }
+    }
+
+    /**
+     * Reads and converts a single pixel
+     *
+     * @param in The stream to read the pixel from
+     * @return The pixel as a packed, opaque ARGB int
+     * @throws IOException if the pixel could not be read
+     */
+    public int read(InputStream in) throws IOException {
+        readFully(in, pixel, 0, bytesPerPixel);
+        return convert(pixel, 0);
+    }
+
+    private static int[] channelTable(int max, int shift) {
+        int[] table = new int[max + 1];
+        for (int value = 0; value <= max; value++) {
+            table[value] = stretch(value, max) << shift;
+        }
+        return table;
+    }
+
+    private static int stretch(int value, int max) {
+        return max == 0 ? 0 : (int) (value * ((double) 255 / max));
+    }
+
+    private abstract static class TrueColor extends PixelConverter {
+
+        final int[] red;
+        final int[] green;
+        final int[] blue;
+        final int redShift;
+        final int greenShift;
+        final int blueShift;
+        final int redMax;
+        final int greenMax;
+        final int blueMax;
+
+        TrueColor(PixelFormat pixelFormat) {
+            super(pixelFormat);
+            redMax = pixelFormat.getRedMax();
+            greenMax = pixelFormat.getGreenMax();
+            blueMax = pixelFormat.getBlueMax();
+            redShift = pixelFormat.getRedShift();
+            greenShift = pixelFormat.getGreenShift();
+            blueShift = pixelFormat.getBlueShift();
+            red = channelTable(redMax, 16);
+            green = channelTable(greenMax, 8);
+            blue = channelTable(blueMax, 0);
+        }
+
+        final int argb(int value) {
+            return OPAQUE
+                    | red[(value >>> redShift) & redMax]
+                    | green[(value >>> greenShift) & greenMax]
+                    | blue[(value >>> blueShift) & blueMax];
+        }
+
+        /**
+         * Builds a table mapping every possible pixel value of up to 16 bits directly to its ARGB value
+         */
+        final int[] pixelTable(int size) {
+            int[] table = new int[size];
+            for (int value = 0; value < size; value++) {
+                table[value] = argb(value);
+            }
+            return table;
+        }
+    }
+
+    private static final class TrueColor8 extends TrueColor {
+
+        private final int[] pixels;
+
+        TrueColor8(PixelFormat pixelFormat) {
+            super(pixelFormat);
+            pixels = pixelTable(0x100);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return pixels[source[offset] & 0xff];
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            for (int i = 0; i < count; i++) {
+                destination[destinationOffset + i] = pixels[source[sourceOffset + i] & 0xff];
+            }
+        }
+    }
+
+    private static final class TrueColor16BigEndian extends TrueColor {
+
+        private final int[] pixels;
+
+        TrueColor16BigEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+            pixels = pixelTable(0x10000);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return pixels[((source[offset] & 0xff) << 8) | (source[offset + 1] & 0xff)];
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += 2) {
+                destination[destinationOffset + i] = pixels[((source[s] & 0xff) << 8) | (source[s + 1] & 0xff)];
+            }
+        }
+    }
+
+    private static final class TrueColor16LittleEndian extends TrueColor {
+
+        private final int[] pixels;
+
+        TrueColor16LittleEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+            pixels = pixelTable(0x10000);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return pixels[(source[offset] & 0xff) | ((source[offset + 1] & 0xff) << 8)];
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += 2) {
+                destination[destinationOffset + i] = pixels[(source[s] & 0xff) | ((source[s + 1] & 0xff) << 8)];
+            }
+        }
+    }
+
+    private static final class TrueColor32BigEndian extends TrueColor {
+
+        TrueColor32BigEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return argb(((source[offset] & 0xff) << 24)
+                    | ((source[offset + 1] & 0xff) << 16)
+                    | ((source[offset + 2] & 0xff) << 8)
+                    | (source[offset + 3] & 0xff));
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += 4) {
+                destination[destinationOffset + i] = argb(((source[s] & 0xff) << 24)
+                        | ((source[s + 1] & 0xff) << 16)
+                        | ((source[s + 2] & 0xff) << 8)
+                        | (source[s + 3] & 0xff));
+            }
+        }
+    }
+
+    private static final class TrueColor32LittleEndian extends TrueColor {
+
+        TrueColor32LittleEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return argb((source[offset] & 0xff)
+                    | ((source[offset + 1] & 0xff) << 8)
+                    | ((source[offset + 2] & 0xff) << 16)
+                    | ((source[offset + 3] & 0xff) << 24));
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += 4) {
+                destination[destinationOffset + i] = argb((source[s] & 0xff)
+                        | ((source[s + 1] & 0xff) << 8)
+                        | ((source[s + 2] & 0xff) << 16)
+                        | ((source[s + 3] & 0xff) << 24));
+            }
+        }
+    }
+
+    /**
+     * 24 bpp pixels never appear on the wire as such, but the Tight, TRLE and ZRLE encodings send compact 3 byte pixels
+     * when the negotiated format leaves one byte of every 32 bpp pixel unused
+     */
+    private static final class TrueColor24BigEndian extends TrueColor {
+
+        TrueColor24BigEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return argb(((source[offset] & 0xff) << 16)
+                    | ((source[offset + 1] & 0xff) << 8)
+                    | (source[offset + 2] & 0xff));
+        }
+    }
+
+    private static final class TrueColor24LittleEndian extends TrueColor {
+
+        TrueColor24LittleEndian(PixelFormat pixelFormat) {
+            super(pixelFormat);
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return argb((source[offset] & 0xff)
+                    | ((source[offset + 1] & 0xff) << 8)
+                    | ((source[offset + 2] & 0xff) << 16));
+        }
+    }
+
+    /**
+     * 24 and 32 bpp formats with one whole byte per channel need no shifting, masking or table lookups, just a byte
+     * shuffle
+     */
+    private static final class TrueColorBytes extends PixelConverter {
+
+        private final int red;
+        private final int green;
+        private final int blue;
+
+        TrueColorBytes(PixelFormat pixelFormat) {
+            super(pixelFormat);
+            red = byteOffset(pixelFormat, pixelFormat.getRedShift());
+            green = byteOffset(pixelFormat, pixelFormat.getGreenShift());
+            blue = byteOffset(pixelFormat, pixelFormat.getBlueShift());
+        }
+
+        static boolean supports(PixelFormat pixelFormat) {
+            return pixelFormat.getRedMax() == 0xff && pixelFormat.getGreenMax() == 0xff && pixelFormat.getBlueMax() == 0xff
+                    && aligned(pixelFormat, pixelFormat.getRedShift())
+                    && aligned(pixelFormat, pixelFormat.getGreenShift())
+                    && aligned(pixelFormat, pixelFormat.getBlueShift());
+        }
+
+        private static boolean aligned(PixelFormat pixelFormat, int shift) {
+            return shift % 8 == 0 && shift / 8 < pixelFormat.getBytesPerPixel();
+        }
+
+        private static int byteOffset(PixelFormat pixelFormat, int shift) {
+            return pixelFormat.isBigEndian() ? pixelFormat.getBytesPerPixel() - 1 - shift / 8 : shift / 8;
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return OPAQUE
+                    | (source[offset + red] & 0xff) << 16
+                    | (source[offset + green] & 0xff) << 8
+                    | (source[offset + blue] & 0xff);
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int bytesPerPixel = getBytesPerPixel();
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += bytesPerPixel) {
+                destination[destinationOffset + i] = OPAQUE
+                        | (source[s + red] & 0xff) << 16
+                        | (source[s + green] & 0xff) << 8
+                        | (source[s + blue] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Little endian 32 bpp pixels with red, green and blue in the second, third and fourth most significant bytes are
+     * already packed ARGB ints, apart from the unused byte, so a run of them is copied in bulk and then made opaque
+     */
+    private static final class TrueColorNative extends PixelConverter {
+
+        TrueColorNative(PixelFormat pixelFormat) {
+            super(pixelFormat);
+        }
+
+        static boolean supports(PixelFormat pixelFormat) {
+            return pixelFormat.getBitsPerPixel() == 32 && !pixelFormat.isBigEndian()
+                    && pixelFormat.getRedMax() == 0xff && pixelFormat.getGreenMax() == 0xff
+                    && pixelFormat.getBlueMax() == 0xff && pixelFormat.getRedShift() == 16
+                    && pixelFormat.getGreenShift() == 8 && pixelFormat.getBlueShift() == 0;
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return OPAQUE
+                    | (source[offset + 2] & 0xff) << 16
+                    | (source[offset + 1] & 0xff) << 8
+                    | (source[offset] & 0xff);
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            ByteBuffer.wrap(source, sourceOffset, count * 4).order(LITTLE_ENDIAN).asIntBuffer()
+                    .get(destination, destinationOffset, count);
+            int end = destinationOffset + count;
+            for (int d = destinationOffset; d < end; d++) {
+                destination[d] |= OPAQUE;
+            }
+        }
+    }
+
+    private static final class PixelValues extends PixelConverter {
+
+        private final int shift;
+        private final boolean bigEndian;
+
+        PixelValues(PixelFormat pixelFormat, int shift) {
+            super(pixelFormat);
+            this.shift = shift;
+            this.bigEndian = pixelFormat.isBigEndian();
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            int bytesPerPixel = getBytesPerPixel();
+            int value = 0;
+            for (int b = 0; b < bytesPerPixel; b++) {
+                int byteShift = 8 * (bigEndian ? bytesPerPixel - 1 - b : b);
+                value |= (source[offset + b] & 0xff) << byteShift;
+            }
+            return value << shift;
+        }
+    }
+
+    private static final class Indexed8 extends PixelConverter {
+
+        private final Palette palette;
+
+        Indexed8(PixelFormat pixelFormat, Palette palette) {
+            super(pixelFormat);
+            this.palette = palette;
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return palette.getColors()[source[offset] & 0xff];
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int[] colors = palette.getColors();
+            for (int i = 0; i < count; i++) {
+                destination[destinationOffset + i] = colors[source[sourceOffset + i] & 0xff];
+            }
+        }
+    }
+
+    private static final class Indexed16 extends PixelConverter {
+
+        private final Palette palette;
+        private final int high;
+        private final int low;
+
+        Indexed16(PixelFormat pixelFormat, Palette palette) {
+            super(pixelFormat);
+            this.palette = palette;
+            this.high = pixelFormat.isBigEndian() ? 0 : 1;
+            this.low = 1 - high;
+        }
+
+        @Override
+        public int convert(byte[] source, int offset) {
+            return palette.getColors()[(source[offset + high] & 0xff) << 8 | (source[offset + low] & 0xff)];
+        }
+
+        @Override
+        public void convert(byte[] source, int sourceOffset, int[] destination, int destinationOffset, int count) {
+            int[] colors = palette.getColors();
+            int s = sourceOffset;
+            for (int i = 0; i < count; i++, s += 2) {
+                destination[destinationOffset + i] = colors[(source[s + high] & 0xff) << 8 | (source[s + low] & 0xff)];
+            }
+        }
+    }
+}
@@ -1,59 +1,49 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
-import java.util.Map;
-import java.util.Optional;
 
-import com.shinyhut.vernacular.protocol.messages.ColorMapEntry;
 import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 
 public class PixelDecoder {
 
-    private static final ColorMapEntry BLACK = new ColorMapEntry(0, 0, 0);
+    private final Palette palette;
 
-    private final Map<BigInteger, ColorMapEntry> colorMap;
+    private volatile PixelConverter converter;
 
-    public PixelDecoder(Map<BigInteger, ColorMapEntry> colorMap) {
-        this.colorMap = colorMap;
+    public PixelDecoder(Palette palette) {
+        this.palette = palette;
     }
 
-    public Pixel decode(InputStream in, PixelFormat pixelFormat) throws IOException {
-        DataInput dataInput = new DataInputStream(in);
-        byte[] bytes = new byte[pixelFormat.getBytesPerPixel()];
-        dataInput.readFully(bytes);
-        BigInteger value = new BigInteger(1, bytes);
-
-        int red;
-        int green;
-        int blue;
-
-        if (pixelFormat.isTrueColor()) {
-            red = value.shiftRight(pixelFormat.getRedShift()).intValue() & pixelFormat.getRedMax();
-            green = value.shiftRight(pixelFormat.getGreenShift()).intValue() & pixelFormat.getGreenMax();
-            blue = value.shiftRight(pixelFormat.getBlueShift()).intValue() & pixelFormat.getBlueMax();
-
-            red = stretch(red, pixelFormat.getRedMax());
-            green = stretch(green, pixelFormat.getGreenMax());
-            blue = stretch(blue, pixelFormat.getBlueMax());
-        } else {
-            ColorMapEntry color = Optional.ofNullable(colorMap.get(value)).orElse(BLACK);
-            red = shrink(color.getRed());
-            green = shrink(color.getGreen());
-            blue = shrink(color.getBlue());
+    /**
+     * Returns the converter for pixels in the current pixel format
+     *
+     * @return The current pixel converter
+     * @throws IllegalStateException if no pixel format has been set
+     */
+    public PixelConverter getConverter() {
+        PixelConverter current = converter;
+        if (current == null) {
+            throw new IllegalStateException("No pixel format has been set");
         }
-
-        return new Pixel(red, green, blue);
+        return current;
     }
 
-    private static int stretch(int value, int max) {
-        return (int) (value * ((double) 255 / max));
+    /**
+     * Builds the converter that will be used to decode pixels in the specified format
+     *
+     * @param pixelFormat The pixel format negotiated with the server
+     */
+    public void setPixelFormat(PixelFormat pixelFormat) {
+        converter = PixelConverter.forFormat(pixelFormat, palette);
     }
 
-    private static int shrink(int colorMapValue) {
-        return (int) Math.round(((double) colorMapValue) / 257);
+    public Pixel decode(InputStream in, PixelFormat pixelFormat) throws IOException {
+        PixelConverter current = converter;
+        if (current == null || !current.getPixelFormat().equals(pixelFormat)) {
+            current = PixelConverter.forFormat(pixelFormat, palette);
+        }
+        int argb = current.read(in);
+        return new Pixel((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff);
     }
 }
@@ -1,50 +1,151 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
-import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+import static java.lang.Math.min;
+
+/**
+ * Renders RRE rectangles, and CoRRE rectangles via {@link CoRRERenderer}.
+ * <p>
+ * Subrectangles are read in batches, their headers decoded into a primitive buffer, and then painted straight into the
+ * destination's raster. Consecutive subrectangles of the same color which continue a run along the same rows are
+ * merged and painted with a single fill. Subrectangles are clipped to the rectangle, and rectangles which do not fit
+ * within the destination are rejected.
+ */
 public class RRERenderer implements Renderer {
 
+    private static final int BATCH_SIZE = 4096;
+
+    private static final int COLOR = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int WIDTH = 3;
+    private static final int HEIGHT = 4;
+    private static final int FIELDS = 5;
+
     private final PixelDecoder pixelDecoder;
-    private final PixelFormat pixelFormat;
+    private final int coordinateSize;
+    private final String encodingName;
+
+    private final int[] subrectangles = new int[BATCH_SIZE * FIELDS];
+    private byte[] buffer = new byte[0];
 
-    public RRERenderer(PixelDecoder pixelDecoder, PixelFormat pixelFormat) {
+    public RRERenderer(PixelDecoder pixelDecoder) {
+        this(pixelDecoder, 2, "RRE");
+    }
+
+    /**
+     * @param coordinateSize The number of bytes in each subrectangle coordinate and dimension
+     * @param encodingName   The name of the encoding, as reported if a rectangle is invalid
+     */
+    RRERenderer(PixelDecoder pixelDecoder, int coordinateSize, String encodingName) {
         this.pixelDecoder = pixelDecoder;
-        this.pixelFormat = pixelFormat;
+        this.coordinateSize = coordinateSize;
+        this.encodingName = encodingName;
     }
 
     @Override
     public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException(encodingName);
+        }
         try {
-            DataInput dataInput = new DataInputStream(in);
-            int numberOfSubrectangles = dataInput.readInt();
-            Pixel bgColor = pixelDecoder.decode(in, pixelFormat);
-
-            Graphics2D graphic = (Graphics2D) destination.getGraphics();
-            graphic.setColor(new Color(bgColor.getRed(), bgColor.getGreen(), bgColor.getBlue()));
-            graphic.fillRect(rectangle.getX(), rectangle.getY(), rectangle.getWidth(), rectangle.getHeight());
-
-            for (int i = 0; i < numberOfSubrectangles; i++) {
-                Pixel color = pixelDecoder.decode(in, pixelFormat);
-                int x = dataInput.readUnsignedShort();
-                int y = dataInput.readUnsignedShort();
-                int width = dataInput.readUnsignedShort();
-                int height = dataInput.readUnsignedShort();
-                graphic.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue()));
-                graphic.fillRect(x + rectangle.getX(), y + rectangle.getY(), width, height);
+            PixelConverter converter = pixelDecoder.getConverter();
+            long numberOfSubrectangles = readInt(in) & 0xffffffffL;
+            int bgColor = converter.read(in);
+
+            int[] pixels = Rasters.pixels(destination);
+            int stride = Rasters.stride(destination);
+            int origin = Rasters.offset(destination, rectangle.getX(), rectangle.getY());
+            Rasters.fill(pixels, origin, stride, rectangle.getWidth(), rectangle.getHeight(), bgColor);
+
+            int subrectangleLength = converter.getBytesPerPixel() + 4 * coordinateSize;
+            byte[] headers = buffer(min(numberOfSubrectangles, BATCH_SIZE) * subrectangleLength);
+
+            while (numberOfSubrectangles > 0) {
+                int count = (int) min(numberOfSubrectangles, BATCH_SIZE);
+                readFully(in, headers, 0, count * subrectangleLength);
+                int decoded = decode(converter, headers, count, rectangle);
+                paint(pixels, origin, stride, decoded);
+                numberOfSubrectangles -= count;
             }
         } catch (IOException e) {
             throw new UnexpectedVncException(e);
         }
     }
 
+    /**
+     * Decodes a batch of subrectangle headers, clipping each to the bounds of the rectangle and merging each one into
+     * its predecessor where they form a continuous run of the same color
+     *
+     * @return The number of subrectangles remaining after merging
+     */
+    private int decode(PixelConverter converter, byte[] headers, int count, Rectangle rectangle) {
+        int bytesPerPixel = converter.getBytesPerPixel();
+        int decoded = 0;
+        int previous = -FIELDS;
+        for (int i = 0, offset = 0; i < count; i++) {
+            int color = converter.convert(headers, offset);
+            offset += bytesPerPixel;
+            int x = coordinate(headers, offset);
+            int y = coordinate(headers, offset + coordinateSize);
+            int width = coordinate(headers, offset + 2 * coordinateSize);
+            int height = coordinate(headers, offset + 3 * coordinateSize);
+            offset += 4 * coordinateSize;
+
+            width = min(width, rectangle.getWidth() - x);
+            height = min(height, rectangle.getHeight() - y);
+            if (width <= 0 || height <= 0) {
+                continue;
+            }
+
+            if (previous >= 0
+                    && subrectangles[previous + COLOR] == color
+                    && subrectangles[previous + Y] == y
+                    && subrectangles[previous + HEIGHT] == height
+                    && subrectangles[previous + X] + subrectangles[previous + WIDTH] == x) {
+                subrectangles[previous + WIDTH] += width;
+            } else {
+                previous = decoded * FIELDS;
+                subrectangles[previous + COLOR] = color;
+                subrectangles[previous + X] = x;
+                subrectangles[previous + Y] = y;
+                subrectangles[previous + WIDTH] = width;
+                subrectangles[previous + HEIGHT] = height;
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+
+    private void paint(int[] pixels, int origin, int stride, int count) {
+        for (int i = 0, s = 0; i < count; i++, s += FIELDS) {
+            int offset = origin + subrectangles[s + Y] * stride + subrectangles[s + X];
+            Rasters.fill(pixels, offset, stride, subrectangles[s + WIDTH], subrectangles[s + HEIGHT], subrectangles[s + COLOR]);
+        }
+    }
+
+    private int coordinate(byte[] headers, int offset) {
+        if (coordinateSize == 1) {
+            return headers[offset] & 0xff;
+        }
+        return (headers[offset] & 0xff) << 8 | (headers[offset + 1] & 0xff);
+    }
+
+    private byte[] buffer(long size) {
+        if (buffer.length < size) {
+            buffer = new byte[(int) size];
+        }
+        return buffer;
+    }
 }
@@ -0,0 +1,60 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Direct access to the packed int pixels backing TYPE_INT_RGB and TYPE_INT_ARGB images
+ */
+final class Rasters {
+
+    private Rasters() {
+    }
+
+    static int[] pixels(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferInt)) {
+            throw new IllegalArgumentException("Image is not backed by packed int pixels");
+        }
+        return ((DataBufferInt) dataBuffer).getData();
+    }
+
+    static int stride(BufferedImage image) {
+        return ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+    }
+
+    /**
+     * Returns the index within {@link #pixels(BufferedImage)} of the pixel at the specified coordinates
+     */
+    static int offset(BufferedImage image, int x, int y) {
+        WritableRaster raster = image.getRaster();
+        int translatedX = x - raster.getSampleModelTranslateX();
+        int translatedY = y - raster.getSampleModelTranslateY();
+        return raster.getDataBuffer().getOffset() + translatedY * stride(image) + translatedX;
+    }
+
+    /**
+     * @return Whether the rectangle lies entirely within the image
+     */
+    static boolean contains(BufferedImage image, int x, int y, int width, int height) {
+        return x >= 0 && y >= 0 && width >= 0 && height >= 0
+                && x + width <= image.getWidth() && y + height <= image.getHeight();
+    }
+
+    /**
+     * Fills a rectangle of pixels, one row at a time
+     *
+     * @param pixels The backing pixels of the image
+     * @param offset The index of the top-left pixel of the rectangle
+     * @param stride The scanline stride of the image
+     */
+    static void fill(int[] pixels, int offset, int stride, int width, int height, int argb) {
+        for (int row = 0; row < height; row++, offset += stride) {
+            Arrays.fill(pixels, offset, offset + width, argb);
+        }
+    }
+}
@@ -1,23 +1,28 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
-import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 public class RawRenderer implements Renderer {
 
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
     private final PixelDecoder pixelDecoder;
-    private final PixelFormat pixelFormat;
 
-    public RawRenderer(PixelDecoder pixelDecoder, PixelFormat pixelFormat) {
+    private byte[] buffer = new byte[0];
+
+    public RawRenderer(PixelDecoder pixelDecoder) {
         this.pixelDecoder = pixelDecoder;
-        this.pixelFormat = pixelFormat;
     }
 
     @Override
@@ -26,21 +31,68 @@ public class RawRenderer implements Renderer {
     }
 
     void render(InputStream in, BufferedImage destination, int x, int y, int width, int height) throws VncException {
+        render(in, pixelDecoder.getConverter(), destination, x, y, width, height);
+    }
+
+    /**
+     * Renders raw pixels in a format other than the session's pixel format, such as the compact pixels sent by the
+     * Tight, TRLE and ZRLE encodings. Pixels are written straight into the destination's raster, so a rectangle which
+     * does not fit within the destination is rejected rather than wrapping into the next row.
+     */
+    void render(InputStream in, PixelConverter converter, BufferedImage destination, int x, int y, int width, int height)
+            throws VncException {
+        if (!Rasters.contains(destination, x, y, width, height)) {
+            throw new InvalidMessageException("Raw");
+        }
+        if (width == 0 || height == 0) {
+            return;
+        }
         try {
-            int sx = x;
-            int sy = y;
-            for (int i = 0; i < width * height; i++) {
-                Pixel pixel = pixelDecoder.decode(in, pixelFormat);
-                destination.setRGB(sx, sy, new Color(pixel.getRed(), pixel.getGreen(), pixel.getBlue()).getRGB());
-                sx++;
-                if (sx == x + width) {
-                    sx = x;
-                    sy++;
-                }
+            int rowLength = width * converter.getBytesPerPixel();
+            int rowsPerRead = min(height, max(1, READ_BUFFER_SIZE / rowLength));
+            byte[] rows = buffer(rowLength * rowsPerRead);
+            for (int row = 0; row < height; row += rowsPerRead) {
+                int count = min(rowsPerRead, height - row);
+                readFully(in, rows, 0, count * rowLength);
+                render(rows, 0, converter, destination, x, y + row, width, count);
             }
         } catch (IOException e) {
             throw new UnexpectedVncException(e);
         }
     }
 
+    /**
+     * Renders pixels which have already been read into memory, converting one row at a time directly into the
+     * destination's backing raster
+     */
+    void render(byte[] source, int offset, BufferedImage destination, int x, int y, int width, int height) {
+        render(source, offset, pixelDecoder.getConverter(), destination, x, y, width, height);
+    }
+
+    void render(byte[] source, int offset, PixelConverter converter, BufferedImage destination, int x, int y, int width,
+                int height) {
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int rowLength = width * converter.getBytesPerPixel();
+        int target = Rasters.offset(destination, x, y);
+        for (int row = 0; row < height; row++) {
+            converter.convert(source, offset, pixels, target, width);
+            offset += rowLength;
+            target += stride;
+        }
+    }
+
+    /**
+     * @return The converter for pixels in the session's current pixel format
+     */
+    PixelConverter getConverter() {
+        return pixelDecoder.getConverter();
+    }
+
+    private byte[] buffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
 }
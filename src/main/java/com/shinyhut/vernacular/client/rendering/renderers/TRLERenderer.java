@@ -0,0 +1,36 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+/**
+ * Renders TRLE rectangles.
+ * <p>
+ * A rectangle is divided into 16x16 tiles which are sent uncompressed, giving much of the bandwidth saving of ZRLE
+ * without the cost of inflating the data. A tile may reuse the palette of the previous tile which had one, even if that
+ * tile was part of an earlier rectangle.
+ */
+public class TRLERenderer implements Renderer {
+
+    private static final int TILE_SIZE = 16;
+
+    private final TileDecoder tileDecoder;
+
+    public TRLERenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        this.tileDecoder = new TileDecoder(rawRenderer, pixelDecoder, TILE_SIZE, true, "TRLE");
+    }
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        try {
+            tileDecoder.render(in, destination, rectangle);
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+}
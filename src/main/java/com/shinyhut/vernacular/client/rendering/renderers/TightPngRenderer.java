@@ -0,0 +1,12 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+/**
+ * Renders TightPNG rectangles. TightPNG is identical to Tight, except that rectangles which Tight would compress with
+ * zlib are sent as PNG images instead, so the zlib streams are never used.
+ */
+public class TightPngRenderer extends TightRenderer {
+
+    public TightPngRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        super(rawRenderer, pixelDecoder, true, "TightPNG");
+    }
+}
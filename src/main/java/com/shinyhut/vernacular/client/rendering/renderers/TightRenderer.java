@@ -0,0 +1,302 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.fill;
+
+/**
+ * Renders Tight rectangles, and TightPNG rectangles via {@link TightPngRenderer}.
+ * <p>
+ * Each rectangle is either a solid fill, a JPEG image, or pixel data passed through one of three filters (copy,
+ * palette or gradient) and then compressed on one of four persistent zlib streams. Pixel data is inflated on demand
+ * and decoded row by row straight into the destination's raster, so a rectangle which does not fit within the
+ * destination is rejected before anything is read.
+ * <p>
+ * When the session uses 32 bpp pixels with 24 bit depth, the server drops the unused byte and sends each pixel as 3
+ * bytes of red, green and blue.
+ */
+public class TightRenderer implements Renderer {
+
+    private static final int STREAM_COUNT = 4;
+    private static final int STREAM_ID_MASK = 0x03;
+    private static final int EXPLICIT_FILTER = 0x04;
+    private static final int MAX_BASIC_COMPRESSION = 0x07;
+    private static final int FILL_COMPRESSION = 0x08;
+    private static final int JPEG_COMPRESSION = 0x09;
+    private static final int PNG_COMPRESSION = 0x0a;
+
+    private static final int COPY_FILTER = 0;
+    private static final int PALETTE_FILTER = 1;
+    private static final int GRADIENT_FILTER = 2;
+
+    private static final int MIN_TO_COMPRESS = 12;
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private static final PixelFormat RGB_PIXEL_FORMAT = new PixelFormat(24, 24, true, true, 255, 255, 255, 16, 8, 0);
+
+    private final RawRenderer rawRenderer;
+    private final PixelDecoder pixelDecoder;
+    private final boolean png;
+    private final String encodingName;
+    private final PixelConverter rgbConverter = PixelConverter.forFormat(RGB_PIXEL_FORMAT, null);
+    private final ZLibStream[] streams = new ZLibStream[STREAM_COUNT];
+    private final int[] palette = new int[MAX_PALETTE_SIZE];
+
+    private byte[] buffer = new byte[0];
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+
+    public TightRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        this(rawRenderer, pixelDecoder, false, "Tight");
+    }
+
+    /**
+     * @param png          Whether rectangles are sent as PNG images rather than with basic compression
+     * @param encodingName The name of the encoding, as reported if a rectangle is invalid
+     */
+    TightRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder, boolean png, String encodingName) {
+        this.rawRenderer = rawRenderer;
+        this.pixelDecoder = pixelDecoder;
+        this.png = png;
+        this.encodingName = encodingName;
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            streams[i] = new ZLibStream();
+        }
+    }
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException(encodingName);
+        }
+        try {
+            int control = readUnsignedByte(in);
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                if ((control & (1 << i)) != 0) {
+                    streams[i].restart();
+                }
+            }
+
+            int compression = control >> 4;
+            int x = rectangle.getX();
+            int y = rectangle.getY();
+            int width = rectangle.getWidth();
+            int height = rectangle.getHeight();
+
+            if (compression == FILL_COMPRESSION) {
+                int color = converter().read(in);
+                Rasters.fill(Rasters.pixels(destination), Rasters.offset(destination, x, y), Rasters.stride(destination),
+                        width, height, color);
+            } else if (compression == JPEG_COMPRESSION) {
+                renderImage(in, ImageDecoder.forFormat("jpeg"), destination, x, y, width, height);
+            } else if (compression == PNG_COMPRESSION && png) {
+                renderImage(in, ImageDecoder.forFormat("png"), destination, x, y, width, height);
+            } else if (compression <= MAX_BASIC_COMPRESSION && !png) {
+                renderBasic(in, compression, destination, x, y, width, height);
+            } else {
+                throw new InvalidMessageException(encodingName);
+            }
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+
+    private void renderImage(InputStream in, ImageDecoder decoder, BufferedImage destination, int x, int y, int width,
+                             int height) throws VncException, IOException {
+        int length = readCompactLength(in);
+        byte[] data = buffer(length);
+        readFully(in, data, 0, length);
+        if (!decoder.decode(data, length, destination, x, y, width, height)) {
+            throw new InvalidMessageException(encodingName);
+        }
+    }
+
+    private void renderBasic(InputStream in, int compression, BufferedImage destination, int x, int y, int width,
+                             int height) throws VncException, IOException {
+        ZLibStream stream = streams[compression & STREAM_ID_MASK];
+        int filter = (compression & EXPLICIT_FILTER) != 0 ? readUnsignedByte(in) : COPY_FILTER;
+        PixelConverter converter = converter();
+        InputStream data;
+
+        switch (filter) {
+            case COPY_FILTER:
+                data = data(in, stream, width * height * converter.getBytesPerPixel());
+                rawRenderer.render(data, converter, destination, x, y, width, height);
+                break;
+            case PALETTE_FILTER:
+                int colors = readUnsignedByte(in) + 1;
+                for (int i = 0; i < colors; i++) {
+                    palette[i] = converter.read(in);
+                }
+                int rowLength = colors == 2 ? (width + 7) / 8 : width;
+                data = data(in, stream, rowLength * height);
+                renderPalette(data, colors, destination, x, y, width, height);
+                break;
+            case GRADIENT_FILTER:
+                data = data(in, stream, width * height * converter.getBytesPerPixel());
+                renderGradient(data, converter, destination, x, y, width, height);
+                break;
+            default:
+                throw new InvalidMessageException(encodingName);
+        }
+
+        if (data == stream) {
+            stream.end();
+        }
+    }
+
+    /**
+     * Data shorter than {@link #MIN_TO_COMPRESS} bytes is sent uncompressed, anything longer is sent on one of the zlib
+     * streams, prefixed with its compressed length
+     */
+    private static InputStream data(InputStream in, ZLibStream stream, int length) throws IOException {
+        if (length < MIN_TO_COMPRESS) {
+            return in;
+        }
+        return stream.begin(in, readCompactLength(in));
+    }
+
+    private void renderPalette(InputStream data, int colors, BufferedImage destination, int x, int y, int width,
+                               int height) throws IOException {
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int target = Rasters.offset(destination, x, y);
+        boolean bitmap = colors == 2;
+        int rowLength = bitmap ? (width + 7) / 8 : width;
+        byte[] row = buffer(rowLength);
+
+        for (int line = 0; line < height; line++, target += stride) {
+            readFully(data, row, 0, rowLength);
+            if (bitmap) {
+                for (int i = 0; i < width; i++) {
+                    pixels[target + i] = palette[(row[i >> 3] >> (7 - (i & 7))) & 1];
+                }
+            } else {
+                for (int i = 0; i < width; i++) {
+                    pixels[target + i] = palette[row[i] & 0xff];
+                }
+            }
+        }
+    }
+
+    /**
+     * The gradient filter sends each color channel as the difference from a prediction based on the pixels to the
+     * left, above, and above-left. Each row is reconstructed in place in the pixel format it was sent in, then converted
+     * as usual.
+     */
+    private void renderGradient(InputStream data, PixelConverter converter, BufferedImage destination, int x, int y,
+                                int width, int height) throws IOException {
+        PixelFormat format = converter.getPixelFormat();
+        int bytesPerPixel = converter.getBytesPerPixel();
+        boolean bigEndian = format.isBigEndian();
+        int[] maxes = {format.getRedMax(), format.getGreenMax(), format.getBlueMax()};
+        int[] shifts = {format.getRedShift(), format.getGreenShift(), format.getBlueShift()};
+
+        int rowLength = width * bytesPerPixel;
+        byte[] row = buffer(rowLength);
+        int[] above = previousRow(width * 3);
+        int[] current = currentRow(width * 3);
+        fill(above, 0, width * 3, 0);
+
+        for (int line = 0; line < height; line++) {
+            readFully(data, row, 0, rowLength);
+            for (int i = 0, offset = 0; i < width; i++, offset += bytesPerPixel) {
+                int value = pixelValue(row, offset, bytesPerPixel, bigEndian);
+                int pixel = 0;
+                for (int c = 0, channel = i * 3; c < 3; c++, channel++) {
+                    int predicted = above[channel];
+                    if (i > 0) {
+                        predicted += current[channel - 3] - above[channel - 3];
+                        predicted = min(max(predicted, 0), maxes[c]);
+                    }
+                    current[channel] = ((value >>> shifts[c]) + predicted) & maxes[c];
+                    pixel |= current[channel] << shifts[c];
+                }
+                setPixelValue(row, offset, bytesPerPixel, bigEndian, pixel);
+            }
+            rawRenderer.render(row, 0, converter, destination, x, y + line, width, 1);
+
+            int[] swap = above;
+            above = current;
+            current = swap;
+        }
+    }
+
+    private static int pixelValue(byte[] row, int offset, int bytesPerPixel, boolean bigEndian) {
+        int value = 0;
+        for (int b = 0; b < bytesPerPixel; b++) {
+            int shift = 8 * (bigEndian ? bytesPerPixel - 1 - b : b);
+            value |= (row[offset + b] & 0xff) << shift;
+        }
+        return value;
+    }
+
+    private static void setPixelValue(byte[] row, int offset, int bytesPerPixel, boolean bigEndian, int value) {
+        for (int b = 0; b < bytesPerPixel; b++) {
+            int shift = 8 * (bigEndian ? bytesPerPixel - 1 - b : b);
+            row[offset + b] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Reads a length encoded in 1 to 3 bytes, 7 bits at a time, least significant bits first
+     */
+    static int readCompactLength(InputStream in) throws IOException {
+        int b = readUnsignedByte(in);
+        int length = b & 0x7f;
+        if ((b & 0x80) != 0) {
+            b = readUnsignedByte(in);
+            length |= (b & 0x7f) << 7;
+            if ((b & 0x80) != 0) {
+                length |= readUnsignedByte(in) << 14;
+            }
+        }
+        return length;
+    }
+
+    private PixelConverter converter() {
+        PixelConverter converter = pixelDecoder.getConverter();
+        PixelFormat format = converter.getPixelFormat();
+        boolean rgb = format.isTrueColor()
+                && format.getBitsPerPixel() == 32
+                && format.getDepth() == 24
+                && format.getRedMax() == 0xff
+                && format.getGreenMax() == 0xff
+                && format.getBlueMax() == 0xff;
+        return rgb ? rgbConverter : converter;
+    }
+
+    private byte[] buffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+
+    private int[] previousRow(int size) {
+        if (previousRow.length < size) {
+            previousRow = new int[size];
+        }
+        return previousRow;
+    }
+
+    private int[] currentRow(int size) {
+        if (currentRow.length < size) {
+            currentRow = new int[size];
+        }
+        return currentRow;
+    }
+}
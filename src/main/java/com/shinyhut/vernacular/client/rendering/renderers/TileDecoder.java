@@ -0,0 +1,311 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.min;
+import static java.util.Arrays.fill;
+
+/**
+ * Decodes the tiles shared by the TRLE, ZRLE and ZYWRLE encodings.
+ * <p>
+ * A rectangle is divided into square tiles, each of which is raw, a solid color, packed palette indices, or run-length
+ * encoded with or without a palette, and is decoded straight into the destination's raster, so a rectangle which does
+ * not fit within the destination is rejected. TRLE additionally allows a tile to reuse the palette of an earlier tile,
+ * so the most recent palette is kept until another one is received. ZYWRLE replaces raw tiles with wavelet
+ * coefficients, which are sent as a nested tile and then transformed back into pixels.
+ * <p>
+ * When the session uses 32 bpp pixels whose color channels all fit within 3 of the 4 bytes, pixels are sent as
+ * compact 3 byte 'CPIXELs'.
+ */
+class TileDecoder {
+
+    private static final int MAX_BYTES_PER_PIXEL = 4;
+
+    private static final int RAW = 0;
+    private static final int SOLID = 1;
+    private static final int MAX_PACKED_PALETTE = 16;
+    private static final int REUSED_PACKED_PALETTE = 127;
+    private static final int PLAIN_RLE = 128;
+    private static final int REUSED_PALETTE_RLE = 129;
+    private static final int MIN_PALETTE_RLE = 130;
+
+    private static final int RUN_FLAG = 0x80;
+    private static final int INDEX_MASK = 0x7f;
+
+    private final RawRenderer rawRenderer;
+    private final PixelDecoder pixelDecoder;
+    private final int tileSize;
+    private final boolean paletteReuse;
+    private final String encodingName;
+
+    private final int[] palette = new int[INDEX_MASK + 1];
+    private final byte[] tile;
+
+    private int paletteSize;
+    private PixelConverter sessionConverter;
+    private PixelConverter compactConverter;
+    private PixelConverter valueConverter;
+    private WaveletDecoder waveletDecoder;
+    private BufferedImage coefficients;
+
+    /**
+     * @param tileSize     The width and height of a full tile
+     * @param paletteReuse Whether tiles may reuse the palette of an earlier tile
+     * @param encodingName The name of the encoding, as reported if a tile is invalid
+     */
+    TileDecoder(RawRenderer rawRenderer, PixelDecoder pixelDecoder, int tileSize, boolean paletteReuse,
+                String encodingName) {
+        this.rawRenderer = rawRenderer;
+        this.pixelDecoder = pixelDecoder;
+        this.tileSize = tileSize;
+        this.paletteReuse = paletteReuse;
+        this.encodingName = encodingName;
+        this.tile = new byte[tileSize * tileSize * MAX_BYTES_PER_PIXEL];
+    }
+
+    void render(InputStream data, BufferedImage destination, Rectangle rectangle) throws VncException, IOException {
+        render(data, destination, rectangle, 0);
+    }
+
+    /**
+     * @param waveletLevel The number of times the ZYWRLE wavelet transform has been applied to raw tiles, or 0 if raw
+     *                     tiles contain pixels
+     */
+    void render(InputStream data, BufferedImage destination, Rectangle rectangle, int waveletLevel)
+            throws VncException, IOException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException(encodingName);
+        }
+        PixelConverter converter = converter();
+
+        for (int tileY = 0; tileY < rectangle.getHeight(); tileY += tileSize) {
+            for (int tileX = 0; tileX < rectangle.getWidth(); tileX += tileSize) {
+                int x = rectangle.getX() + tileX;
+                int y = rectangle.getY() + tileY;
+                int width = min(tileSize, rectangle.getWidth() - tileX);
+                int height = min(tileSize, rectangle.getHeight() - tileY);
+                int subencoding = readUnsignedByte(data);
+                if (subencoding == RAW && waveletLevel > 0) {
+                    renderWaveletTile(data, destination, x, y, width, height, waveletLevel);
+                } else {
+                    renderTile(subencoding, data, converter, destination, x, y, width, height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the nested tile of wavelet coefficients as pixel values, transforms them back into the tile's pixel
+     * values, and only then converts them
+     */
+    private void renderWaveletTile(InputStream data, BufferedImage destination, int x, int y, int width, int height,
+                                   int level) throws VncException, IOException {
+        if (waveletDecoder == null) {
+            waveletDecoder = new WaveletDecoder(tileSize);
+            coefficients = new BufferedImage(tileSize, tileSize, TYPE_INT_RGB);
+        }
+        int[] values = Rasters.pixels(coefficients);
+        renderTile(readUnsignedByte(data), data, valueConverter, coefficients, 0, 0, width, height);
+
+        PixelFormat format = sessionConverter.getPixelFormat();
+        waveletDecoder.decode(values, 0, tileSize, width, height, level, format);
+
+        int bytesPerPixel = sessionConverter.getBytesPerPixel();
+        boolean bigEndian = format.isBigEndian();
+        for (int row = 0, target = 0; row < height; row++) {
+            for (int column = 0, source = row * tileSize; column < width; column++, source++) {
+                int value = values[source];
+                for (int b = 0; b < bytesPerPixel; b++, target++) {
+                    tile[target] = (byte) (value >>> 8 * (bigEndian ? bytesPerPixel - 1 - b : b));
+                }
+            }
+        }
+        rawRenderer.render(tile, 0, sessionConverter, destination, x, y, width, height);
+    }
+
+    private void renderTile(int subencoding, InputStream data, PixelConverter converter, BufferedImage destination,
+                            int x, int y, int width, int height) throws VncException, IOException {
+        if (subencoding == RAW) {
+            rawRenderer.render(data, converter, destination, x, y, width, height);
+            return;
+        }
+
+        int[] pixels = Rasters.pixels(destination);
+        int stride = Rasters.stride(destination);
+        int offset = Rasters.offset(destination, x, y);
+
+        if (subencoding == SOLID) {
+            Rasters.fill(pixels, offset, stride, width, height, converter.read(data));
+        } else if (subencoding <= MAX_PACKED_PALETTE) {
+            readPalette(data, converter, subencoding);
+            renderPackedPalette(data, pixels, offset, stride, width, height);
+        } else if (subencoding == REUSED_PACKED_PALETTE) {
+            reusePalette();
+            renderPackedPalette(data, pixels, offset, stride, width, height);
+        } else if (subencoding == PLAIN_RLE) {
+            renderPlainRle(data, converter, pixels, offset, stride, width, height);
+        } else if (subencoding == REUSED_PALETTE_RLE) {
+            reusePalette();
+            renderPaletteRle(data, pixels, offset, stride, width, height);
+        } else if (subencoding >= MIN_PALETTE_RLE) {
+            readPalette(data, converter, subencoding - PLAIN_RLE);
+            renderPaletteRle(data, pixels, offset, stride, width, height);
+        } else {
+            throw new InvalidMessageException(encodingName);
+        }
+    }
+
+    private void readPalette(InputStream data, PixelConverter converter, int size) throws IOException {
+        int bytesPerPixel = converter.getBytesPerPixel();
+        readFully(data, tile, 0, size * bytesPerPixel);
+        converter.convert(tile, 0, palette, 0, size);
+        paletteSize = size;
+    }
+
+    private void reusePalette() throws VncException {
+        if (!paletteReuse || paletteSize == 0) {
+            throw new InvalidMessageException(encodingName);
+        }
+    }
+
+    /**
+     * Palette indices are packed into 1, 2 or 4 bits, most significant bits first, with each row padded to a whole
+     * number of bytes
+     */
+    private void renderPackedPalette(InputStream data, int[] pixels, int offset, int stride, int width, int height)
+            throws VncException, IOException {
+        if (paletteSize > MAX_PACKED_PALETTE) {
+            throw new InvalidMessageException(encodingName);
+        }
+        int bits = paletteSize == 2 ? 1 : paletteSize <= 4 ? 2 : 4;
+        int mask = (1 << bits) - 1;
+        int rowLength = (width * bits + 7) / 8;
+        readFully(data, tile, 0, rowLength * height);
+
+        for (int row = 0, source = 0; row < height; row++, source += rowLength, offset += stride) {
+            for (int column = 0, bit = 0; column < width; column++, bit += bits) {
+                int shift = 8 - bits - (bit & 7);
+                pixels[offset + column] = palette[(tile[source + (bit >> 3)] >> shift) & mask];
+            }
+        }
+    }
+
+    private void renderPlainRle(InputStream data, PixelConverter converter, int[] pixels, int offset, int stride,
+                                int width, int height) throws VncException, IOException {
+        int total = width * height;
+        int position = 0;
+        while (position < total) {
+            int color = converter.read(data);
+            int length = readRunLength(data);
+            position = fillRun(pixels, offset, stride, width, position, length, total, color);
+        }
+    }
+
+    private void renderPaletteRle(InputStream data, int[] pixels, int offset, int stride, int width, int height)
+            throws VncException, IOException {
+        int total = width * height;
+        int position = 0;
+        while (position < total) {
+            int index = readUnsignedByte(data);
+            int color = palette[index & INDEX_MASK];
+            int length = (index & RUN_FLAG) != 0 ? readRunLength(data) : 1;
+            position = fillRun(pixels, offset, stride, width, position, length, total, color);
+        }
+    }
+
+    /**
+     * Run lengths are sent as a series of bytes which are summed, every byte but the last being 255, and are one more
+     * than the sum
+     */
+    private static int readRunLength(InputStream data) throws IOException {
+        int length = 1;
+        int b;
+        do {
+            b = readUnsignedByte(data);
+            length += b;
+        } while (b == 0xff);
+        return length;
+    }
+
+    /**
+     * Fills a run of pixels which starts at the specified position within the tile, in left to right, top to bottom
+     * order, and may span several rows
+     *
+     * @return The position within the tile following the run
+     */
+    private int fillRun(int[] pixels, int offset, int stride, int width, int position, int length, int total,
+                        int color) throws VncException {
+        if (length > total - position) {
+            throw new InvalidMessageException(encodingName);
+        }
+        int row = position / width;
+        int column = position - row * width;
+        int target = offset + row * stride + column;
+        int remaining = length;
+        while (remaining > 0) {
+            int count = min(remaining, width - column);
+            fill(pixels, target, target + count, color);
+            remaining -= count;
+            target += stride - column;
+            column = 0;
+        }
+        return position + length;
+    }
+
+    private PixelConverter converter() {
+        PixelConverter converter = pixelDecoder.getConverter();
+        if (converter != sessionConverter) {
+            sessionConverter = converter;
+            PixelFormat format = converter.getPixelFormat();
+            int shift = compactShift(format);
+            if (shift < 0) {
+                compactConverter = converter;
+                valueConverter = PixelConverter.forValues(format, 0);
+            } else {
+                PixelFormat compact = new PixelFormat(24, format.getDepth(), format.isBigEndian(), true,
+                        format.getRedMax(), format.getGreenMax(), format.getBlueMax(),
+                        format.getRedShift() - shift, format.getGreenShift() - shift, format.getBlueShift() - shift);
+                compactConverter = PixelConverter.forFormat(compact, null);
+                valueConverter = PixelConverter.forValues(compact, shift);
+            }
+        }
+        return compactConverter;
+    }
+
+    /**
+     * Pixels are sent as CPIXELs if the session's pixel format is 32 bpp true color with all of the color bits in
+     * either the least significant or the most significant 3 bytes. The remaining byte is not sent.
+     *
+     * @return The number of bits by which CPIXELs are shifted right, or -1 if pixels are sent whole
+     */
+    private static int compactShift(PixelFormat format) {
+        if (!format.isTrueColor() || format.getBitsPerPixel() != 32 || format.getDepth() > 24) {
+            return -1;
+        }
+        if (fitsBelow(format, 24)) {
+            return 0;
+        }
+        if (format.getRedShift() >= 8 && format.getGreenShift() >= 8 && format.getBlueShift() >= 8) {
+            return 8;
+        }
+        return -1;
+    }
+
+    private static boolean fitsBelow(PixelFormat format, int bits) {
+        long limit = 1L << bits;
+        return ((long) format.getRedMax() << format.getRedShift()) < limit
+                && ((long) format.getGreenMax() << format.getGreenShift()) < limit
+                && ((long) format.getBlueMax() << format.getBlueShift()) < limit;
+    }
+}
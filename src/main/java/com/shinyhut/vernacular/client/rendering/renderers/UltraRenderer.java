@@ -0,0 +1,68 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+
+/**
+ * Renders UltraVNC's Ultra rectangles.
+ * <p>
+ * Each rectangle is sent as raw pixels compressed with LZO1X, preceded by the length of the compressed data. Unlike the
+ * zlib based encodings, every rectangle is compressed independently. The compressed and decompressed data are held in
+ * buffers which are reused for later rectangles. A rectangle which does not fit within the destination, or whose
+ * compressed length is more than LZO1X could produce for its pixels, is rejected before anything is allocated.
+ */
+public class UltraRenderer implements Renderer {
+
+    private final RawRenderer rawRenderer;
+    private final PixelDecoder pixelDecoder;
+    private final LzoDecompressor decompressor = new LzoDecompressor();
+
+    private byte[] compressed = new byte[0];
+    private byte[] decompressed = new byte[0];
+
+    public UltraRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        this.rawRenderer = rawRenderer;
+        this.pixelDecoder = pixelDecoder;
+    }
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException("Ultra");
+        }
+        try {
+            int length = rectangle.getWidth() * rectangle.getHeight() * pixelDecoder.getConverter().getBytesPerPixel();
+            int compressedLength = readInt(in);
+            if (compressedLength < 0 || compressedLength > LzoDecompressor.maxCompressedLength(length)) {
+                throw new InvalidMessageException("Ultra");
+            }
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            if (decompressed.length < length) {
+                decompressed = new byte[length];
+            }
+            readFully(in, compressed, 0, compressedLength);
+            if (decompressor.decompress(compressed, compressedLength, decompressed, length) != length) {
+                throw new InvalidMessageException("Ultra");
+            }
+            rawRenderer.render(decompressed, 0, destination, rectangle.getX(), rectangle.getY(),
+                    rectangle.getWidth(), rectangle.getHeight());
+        } catch (DataFormatException e) {
+            throw new InvalidMessageException("Ultra");
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import com.shinyhut.vernacular.protocol.messages.PixelFormat;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Reverses the wavelet transform which the ZYWRLE encoding applies to raw tiles.
+ * <p>
+ * The server converts each pixel into a luma and two chroma channels, applies a piecewise-linear Haar wavelet to each
+ * channel between 1 and 3 times (the 'level'), quantizes the coefficients and sends them grouped by sub-band, packed
+ * into pixel values in place of the pixels themselves. Any columns and rows beyond the largest multiple of 2^level are
+ * sent untransformed, after the coefficients.
+ * <p>
+ * The channels are the bit fields of a 15, 16 or 32 bpp pixel value, taken in the same way as the server takes them,
+ * rather than the colors of the session's pixel format.
+ */
+final class WaveletDecoder {
+
+    private static final int BITS_15 = 15;
+    private static final int BITS_16 = 16;
+    private static final int BITS_32 = 32;
+
+    private final byte[] v;
+    private final byte[] y;
+    private final byte[] u;
+    private final int[] values;
+
+    /**
+     * @param maxSize The maximum width and height of a tile
+     */
+    WaveletDecoder(int maxSize) {
+        this.v = new byte[maxSize * maxSize];
+        this.y = new byte[maxSize * maxSize];
+        this.u = new byte[maxSize * maxSize];
+        this.values = new int[maxSize * maxSize];
+    }
+
+    /**
+     * @return true if the server applies the wavelet transform to pixels in the specified format
+     */
+    static boolean supports(PixelFormat pixelFormat) {
+        return pixelFormat.isTrueColor() && (pixelFormat.getBitsPerPixel() == 16 || pixelFormat.getBitsPerPixel() == 32);
+    }
+
+    /**
+     * Replaces the transformed values of a tile with the pixel values they represent
+     *
+     * @param pixels The buffer containing the tile's values, in the order they were received
+     * @param offset The index of the tile's top-left value
+     * @param stride The scanline stride of the buffer
+     * @param level  The number of times the transform was applied
+     */
+    void decode(int[] pixels, int offset, int stride, int width, int height, int level, PixelFormat pixelFormat) {
+        int alignedWidth = width & -(1 << level);
+        int alignedHeight = height & -(1 << level);
+        if (alignedWidth == 0 || alignedHeight == 0) {
+            return;
+        }
+        int bits = bits(pixelFormat);
+
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(pixels, offset + row * stride, values, row * width, width);
+        }
+
+        int next = 0;
+        for (int l = 0; l < level; l++) {
+            next = unpack(next, alignedWidth, alignedHeight, l, 3, bits);
+            next = unpack(next, alignedWidth, alignedHeight, l, 2, bits);
+            next = unpack(next, alignedWidth, alignedHeight, l, 1, bits);
+            if (l == level - 1) {
+                next = unpack(next, alignedWidth, alignedHeight, l, 0, bits);
+            }
+        }
+
+        for (int l = level - 1; l >= 0; l--) {
+            for (int column = 0; column < alignedWidth; column += 1 << l) {
+                inverse(column, alignedHeight, l, alignedWidth);
+            }
+            for (int row = 0; row < alignedHeight; row += 1 << l) {
+                inverse(row * alignedWidth, alignedWidth, l, 1);
+            }
+        }
+
+        for (int row = 0; row < alignedHeight; row++) {
+            for (int column = 0, i = row * alignedWidth; column < alignedWidth; column++, i++) {
+                pixels[offset + row * stride + column] = pixel(i, bits);
+            }
+        }
+
+        next = copy(next, pixels, offset, stride, alignedWidth, width, 0, alignedHeight);
+        next = copy(next, pixels, offset, stride, 0, alignedWidth, alignedHeight, height);
+        copy(next, pixels, offset, stride, alignedWidth, width, alignedHeight, height);
+    }
+
+    /**
+     * Reads the coefficients of one sub-band of one level. Bit 0 of the band selects the horizontal high-pass
+     * coefficients and bit 1 the vertical ones.
+     *
+     * @return The index of the next value to read
+     */
+    private int unpack(int next, int width, int height, int level, int band, int bits) {
+        int step = 2 << level;
+        int startX = (band & 1) != 0 ? step >> 1 : 0;
+        int startY = (band & 2) != 0 ? step >> 1 : 0;
+        for (int row = startY; row < height; row += step) {
+            for (int column = startX; column < width; column += step) {
+                load(row * width + column, values[next++], bits);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Copies untransformed values into a region of the tile
+     *
+     * @return The index of the next value to read
+     */
+    private int copy(int next, int[] pixels, int offset, int stride, int fromX, int toX, int fromY, int toY) {
+        for (int row = fromY; row < toY; row++) {
+            for (int column = fromX; column < toX; column++) {
+                pixels[offset + row * stride + column] = values[next++];
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Reverses one level of the transform along a single row or column
+     *
+     * @param start The index of the first coefficient in the row or column
+     * @param size  The length of the row or column
+     * @param skip  The distance between adjacent coefficients in the row or column
+     */
+    private void inverse(int start, int size, int level, int skip) {
+        int step = (2 << level) * skip;
+        int distance = (1 << level) * skip;
+        int end = start + (size >> (level + 1)) * step;
+        for (int i = start; i < end; i += step) {
+            haar(v, i, i + distance);
+            haar(y, i, i + distance);
+            haar(u, i, i + distance);
+        }
+    }
+
+    /**
+     * The piecewise-linear Haar transform of a pair of signed 8 bit values, which is its own inverse
+     */
+    private static void haar(byte[] channel, int first, int second) {
+        int x0 = channel[first];
+        int x1 = channel[second];
+        int original0 = x0;
+        int original1 = x1;
+        if (((x0 ^ x1) & 0x80) != 0) {
+            x1 += x0;
+            if (((x1 ^ original1) & 0x80) == 0) {
+                x0 -= x1;
+            }
+        } else {
+            x0 -= x1;
+            if (((x0 ^ original0) & 0x80) == 0) {
+                x1 += x0;
+            }
+        }
+        channel[first] = (byte) x1;
+        channel[second] = (byte) x0;
+    }
+
+    private void load(int i, int value, int bits) {
+        switch (bits) {
+            case BITS_15:
+                v[i] = (byte) ((value >> 7) & 0xf8);
+                y[i] = (byte) ((value >> 2) & 0xf8);
+                u[i] = (byte) ((value << 3) & 0xf8);
+                break;
+            case BITS_16:
+                v[i] = (byte) ((value >> 8) & 0xf8);
+                y[i] = (byte) ((value >> 3) & 0xfc);
+                u[i] = (byte) ((value << 3) & 0xf8);
+                break;
+            default:
+                v[i] = (byte) (value >> 16);
+                y[i] = (byte) (value >> 8);
+                u[i] = (byte) value;
+        }
+    }
+
+    /**
+     * Converts a pixel from the reversible color transform used by JPEG 2000 back to a pixel value
+     */
+    private int pixel(int i, int bits) {
+        int luma = y[i] + 128;
+        int blueDifference = u[i] << 1;
+        int redDifference = v[i] << 1;
+        int green = luma - ((blueDifference + redDifference) >> 2);
+        int blue = clamp(blueDifference + green);
+        int red = clamp(redDifference + green);
+        green = clamp(green);
+        switch (bits) {
+            case BITS_15:
+                return (red & 0xf8) << 7 | (green & 0xf8) << 2 | (blue & 0xf8) >> 3;
+            case BITS_16:
+                return (red & 0xf8) << 8 | (green & 0xfc) << 3 | (blue & 0xf8) >> 3;
+            default:
+                return red << 16 | green << 8 | blue;
+        }
+    }
+
+    private static int clamp(int value) {
+        return min(max(value, 0), 255);
+    }
+
+    /**
+     * 16 bpp formats with no more than 5 bits of green are treated as 15 bit
+     */
+    private static int bits(PixelFormat pixelFormat) {
+        if (pixelFormat.getBitsPerPixel() == 32) {
+            return BITS_32;
+        }
+        return pixelFormat.getGreenMax() > 0x1f ? BITS_16 : BITS_15;
+    }
+}
@@ -1,56 +1,43 @@
 package com.shinyhut.vernacular.client.rendering.renderers;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException;
 import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
 import com.shinyhut.vernacular.client.exceptions.VncException;
 import com.shinyhut.vernacular.protocol.messages.Rectangle;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+
 public class ZLibRenderer implements Renderer {
 
     private final RawRenderer rawRenderer;
-    private final Inflater inflater;
+    private final ZLibStream zlibStream;
 
     public ZLibRenderer(RawRenderer rawRenderer) {
         this.rawRenderer = rawRenderer;
-        this.inflater = new Inflater();
+        this.zlibStream = new ZLibStream();
     }
 
     @Override
     public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        if (!Rasters.contains(destination, rectangle.getX(), rectangle.getY(), rectangle.getWidth(),
+                rectangle.getHeight())) {
+            throw new InvalidMessageException("ZLib");
+        }
         try {
-            DataInput dataInput = new DataInputStream(in);
-            int compressedLength = dataInput.readInt();
-            byte[] compressedData = new byte[compressedLength];
-            dataInput.readFully(compressedData);
-            inflater.setInput(compressedData);
-
-            int read;
-            byte[] buffer = new byte[1024];
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            while ((read = inflater.inflate(buffer)) != 0) {
-                baos.write(buffer, 0, read);
-            }
-
-            byte[] decompressedData = baos.toByteArray();
-
+            int compressedLength = readInt(in);
             rawRenderer.render(
-                    new ByteArrayInputStream(decompressedData),
+                    zlibStream.begin(in, compressedLength),
                     destination,
                     rectangle.getX(),
                     rectangle.getY(),
                     rectangle.getWidth(),
                     rectangle.getHeight());
-
-        } catch (IOException | DataFormatException e) {
+            zlibStream.end();
+        } catch (IOException e) {
             throw new UnexpectedVncException(e);
         }
     }
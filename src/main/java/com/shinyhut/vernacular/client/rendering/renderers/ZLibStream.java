@@ -0,0 +1,144 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+import static java.lang.Math.min;
+
+/**
+ * A persistent zlib stream, as used by the ZLib, Tight, ZRLE and ZlibHex encodings.
+ * <p>
+ * The server compresses the data for successive rectangles as one continuous zlib stream, so the inflater state must
+ * be kept for the lifetime of the session. Each rectangle contributes a chunk of compressed bytes of known length; call
+ * {@link #begin(InputStream, int)} before reading the chunk's inflated data through this stream, and {@link #end()}
+ * once the rectangle has been decoded.
+ * <p>
+ * Compressed bytes are pulled from the underlying stream on demand, so neither the compressed nor the inflated data for
+ * a rectangle is ever held in memory in full. Large reads are inflated straight into the caller's buffer.
+ */
+class ZLibStream extends InputStream {
+
+    private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    private final Inflater inflater = new Inflater();
+    private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+    private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+
+    private InputStream source;
+    private int remaining;
+    private int position;
+    private int limit;
+
+    /**
+     * Starts reading the inflated data for a new chunk of compressed bytes
+     *
+     * @param source           The stream from which compressed bytes will be read
+     * @param compressedLength The number of compressed bytes in the chunk
+     * @return this stream
+     */
+    ZLibStream begin(InputStream source, int compressedLength) {
+        this.source = source;
+        this.remaining = compressedLength;
+        this.position = 0;
+        this.limit = 0;
+        return this;
+    }
+
+    /**
+     * Consumes any compressed bytes of the current chunk which have not yet been inflated, so that the next chunk
+     * starts at the right place in both the underlying stream and the zlib stream
+     */
+    void end() throws IOException {
+        while (inflate(output, 0, output.length) > 0) {
+            // the compressed data is normally exhausted already, apart from the trailing sync flush marker
+        }
+        position = 0;
+        limit = 0;
+        source = null;
+    }
+
+    /**
+     * Discards the inflater's state, for encodings such as Tight in which the server may start a new zlib stream at the
+     * beginning of any rectangle
+     */
+    void restart() {
+        inflater.reset();
+        position = 0;
+        limit = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return output[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position < limit) {
+            int count = min(len, limit - position);
+            System.arraycopy(output, position, b, off, count);
+            position += count;
+            return count;
+        }
+        if (len >= output.length) {
+            int count = inflate(b, off, len);
+            return count == 0 ? -1 : count;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        return read(b, off, len);
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = inflate(output, 0, output.length);
+        return limit > 0;
+    }
+
+    /**
+     * Inflates up to len bytes, reading more compressed input as required
+     *
+     * @return The number of bytes inflated, or 0 if the chunk has been exhausted
+     */
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        try {
+            while (true) {
+                int count = inflater.inflate(b, off, len);
+                if (count > 0) {
+                    return count;
+                }
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    throw new ZipException("Unexpected end of zlib stream");
+                }
+                if (inflater.needsInput()) {
+                    if (remaining == 0) {
+                        return 0;
+                    }
+                    int chunk = min(remaining, input.length);
+                    readFully(source, input, 0, chunk);
+                    remaining -= chunk;
+                    inflater.setInput(input, 0, chunk);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+}
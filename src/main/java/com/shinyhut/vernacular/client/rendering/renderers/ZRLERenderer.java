@@ -0,0 +1,40 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+
+/**
+ * Renders ZRLE rectangles.
+ * <p>
+ * A rectangle is divided into 64x64 tiles, sent on a single zlib stream which persists for the whole session. The
+ * tiles are decoded as in TRLE, except that palettes may not be reused.
+ */
+public class ZRLERenderer implements Renderer {
+
+    private static final int TILE_SIZE = 64;
+
+    private final ZLibStream zlibStream = new ZLibStream();
+    private final TileDecoder tileDecoder;
+
+    public ZRLERenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        this.tileDecoder = new TileDecoder(rawRenderer, pixelDecoder, TILE_SIZE, false, "ZRLE");
+    }
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        try {
+            int compressedLength = readInt(in);
+            tileDecoder.render(zlibStream.begin(in, compressedLength), destination, rectangle);
+            zlibStream.end();
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+}
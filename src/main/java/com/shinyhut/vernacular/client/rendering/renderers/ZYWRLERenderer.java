@@ -0,0 +1,67 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntSupplier;
+
+import com.shinyhut.vernacular.client.exceptions.UnexpectedVncException;
+import com.shinyhut.vernacular.client.exceptions.VncException;
+import com.shinyhut.vernacular.protocol.messages.Rectangle;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readInt;
+
+/**
+ * Renders ZYWRLE rectangles.
+ * <p>
+ * ZYWRLE is ZRLE in which tiles that would otherwise be sent raw are first put through a lossy wavelet transform. The
+ * server picks the number of levels of the transform, and so how much detail is lost, from the JPEG quality level most
+ * recently requested by the client. The quality level can be changed at any point during the session, so it is looked
+ * up for every rectangle.
+ * <p>
+ * The transform is never applied to 8 bpp pixels.
+ */
+public class ZYWRLERenderer implements Renderer {
+
+    private static final int TILE_SIZE = 64;
+
+    private final PixelDecoder pixelDecoder;
+    private final IntSupplier qualityLevel;
+    private final ZLibStream zlibStream = new ZLibStream();
+    private final TileDecoder tileDecoder;
+
+    /**
+     * @param qualityLevel Supplies the JPEG quality level most recently requested from the server, or -1 if none has
+     *                     been requested
+     */
+    public ZYWRLERenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder, IntSupplier qualityLevel) {
+        this.pixelDecoder = pixelDecoder;
+        this.qualityLevel = qualityLevel;
+        this.tileDecoder = new TileDecoder(rawRenderer, pixelDecoder, TILE_SIZE, false, "ZYWRLE");
+    }
+
+    @Override
+    public void render(InputStream in, BufferedImage destination, Rectangle rectangle) throws VncException {
+        try {
+            int compressedLength = readInt(in);
+            int level = WaveletDecoder.supports(pixelDecoder.getConverter().getPixelFormat())
+                    ? level(qualityLevel.getAsInt())
+                    : 0;
+            tileDecoder.render(zlibStream.begin(in, compressedLength), destination, rectangle, level);
+            zlibStream.end();
+        } catch (IOException e) {
+            throw new UnexpectedVncException(e);
+        }
+    }
+
+    /**
+     * @param qualityLevel The JPEG quality level requested from the server, from 0 to 9, or -1 if none was requested
+     * @return The number of levels of the wavelet transform the server applies at that quality level, from 1 to 3
+     */
+    static int level(int qualityLevel) {
+        if (qualityLevel < 0 || qualityLevel >= 6) {
+            return 1;
+        }
+        return qualityLevel < 3 ? 3 : 2;
+    }
+}
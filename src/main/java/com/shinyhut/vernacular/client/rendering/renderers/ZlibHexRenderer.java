@@ -0,0 +1,50 @@
+package com.shinyhut.vernacular.client.rendering.renderers;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.shinyhut.vernacular.client.exceptions.VncException;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.mask;
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+
+/**
+ * Renders ZlibHex rectangles.
+ * <p>
+ * ZlibHex is Hextile in which any tile may be zlib compressed. Raw tiles are compressed with one persistent zlib stream
+ * and all other tiles with a second, so each stream only ever sees data of a similar kind. A compressed tile is sent as
+ * a 2 byte length followed by that many bytes of compressed data, which is inflated as the tile is decoded.
+ */
+public class ZlibHexRenderer extends HextileRenderer {
+
+    private static final int SUB_ENCODING_MASK_ZLIB_RAW = 0x20;
+    private static final int SUB_ENCODING_MASK_ZLIB = 0x40;
+
+    private final ZLibStream rawStream = new ZLibStream();
+    private final ZLibStream encodedStream = new ZLibStream();
+
+    public ZlibHexRenderer(RawRenderer rawRenderer, PixelDecoder pixelDecoder) {
+        super(rawRenderer, pixelDecoder, "ZlibHex");
+    }
+
+    @Override
+    void renderTile(InputStream in, int subencoding, PixelConverter converter, BufferedImage destination, int x,
+                    int y, int width, int height) throws VncException, IOException {
+        if (mask(subencoding, SUB_ENCODING_MASK_ZLIB_RAW)) {
+            super.renderTile(rawStream.begin(in, compressedLength(in)), SUB_ENCODING_MASK_RAW, converter, destination,
+                    x, y, width, height);
+            rawStream.end();
+        } else if (mask(subencoding, SUB_ENCODING_MASK_ZLIB)) {
+            super.renderTile(encodedStream.begin(in, compressedLength(in)), subencoding, converter, destination,
+                    x, y, width, height);
+            encodedStream.end();
+        } else {
+            super.renderTile(in, subencoding, converter, destination, x, y, width, height);
+        }
+    }
+
+    private static int compressedLength(InputStream in) throws IOException {
+        return readUnsignedByte(in) << 8 | readUnsignedByte(in);
+    }
+}
@@ -8,15 +8,31 @@ import java.util.List;
 import com.shinyhut.vernacular.client.VernacularConfig;
 import com.shinyhut.vernacular.client.VncSession;
 import com.shinyhut.vernacular.client.rendering.ColorDepth;
+import com.shinyhut.vernacular.client.rendering.PixelConversion;
+import com.shinyhut.vernacular.client.rendering.renderers.PixelConverter;
 import com.shinyhut.vernacular.protocol.messages.ClientInit;
 import com.shinyhut.vernacular.protocol.messages.Encoding;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ALPHA_CURSOR;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.COPYRECT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.CORRE;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.CURSOR;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.DESKTOP_SIZE;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.HEXTILE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.JPEG;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.LAST_RECT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.POINTER_POS;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.RRE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TIGHT;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TIGHT_PNG;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.TRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ULTRA;
 import static com.shinyhut.vernacular.protocol.messages.Encoding.ZLIB;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZLIBHEX;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZYWRLE;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.compressLevel;
+import static com.shinyhut.vernacular.protocol.messages.Encoding.jpegQualityLevel;
 import com.shinyhut.vernacular.protocol.messages.PixelFormat;
 import com.shinyhut.vernacular.protocol.messages.ServerInit;
 import com.shinyhut.vernacular.protocol.messages.SetEncodings;
@@ -36,12 +52,35 @@ public class Initializer {
         session.setFramebufferHeight(serverInit.getFramebufferHeight());
 
         VernacularConfig config = session.getConfig();
-        ColorDepth colorDepth = config.getColorDepth();
+        PixelFormat serverPixelFormat = serverInit.getPixelFormat();
+        PixelFormat pixelFormat;
+
+        if (config.isUseServerPixelFormat() && PixelConverter.isSupported(serverPixelFormat)) {
+            pixelFormat = serverPixelFormat;
+        } else {
+            pixelFormat = pixelFormat(config.getColorDepth());
+            SetPixelFormat setPixelFormat = new SetPixelFormat(pixelFormat);
+            setPixelFormat.encode(out);
+        }
 
-        PixelFormat pixelFormat = new PixelFormat(
+        List<Encoding> encodings = encodings(config);
+        SetEncodings setEncodings = new SetEncodings(encodings);
+        setEncodings.encode(out);
+
+        session.setPixelFormat(pixelFormat);
+        session.setPixelConversion(PixelConversion.between(serverPixelFormat, pixelFormat));
+        session.setJpegQuality(jpegQuality(encodings));
+    }
+
+    /**
+     * @param colorDepth A color depth
+     * @return The pixel format to request from the server for the specified color depth
+     */
+    public PixelFormat pixelFormat(ColorDepth colorDepth) {
+        return new PixelFormat(
                 colorDepth.getBitsPerPixel(),
                 colorDepth.getDepth(),
-                true,
+                colorDepth.isBigEndian(),
                 colorDepth.isTrueColor(),
                 colorDepth.getRedMax(),
                 colorDepth.getGreenMax(),
@@ -49,11 +88,56 @@ public class Initializer {
                 colorDepth.getRedShift(),
                 colorDepth.getGreenShift(),
                 colorDepth.getBlueShift());
+    }
 
-        SetPixelFormat setPixelFormat = new SetPixelFormat(pixelFormat);
+    /**
+     * Lists the encodings enabled in the specified configuration, in order of preference, followed by the
+     * pseudo-encodings it requests. This list is sent to the server during initialization, and again whenever it
+     * changes during the session.
+     *
+     * @param config The VNC client configuration
+     * @return The encodings to send to the server
+     * @see VernacularConfig#setEncodings(List)
+     */
+    public List<Encoding> encodings(VernacularConfig config) {
+        if (config.getEncodings() != null) {
+            return config.getEncodings();
+        }
 
         List<Encoding> encodings = new ArrayList<>();
 
+        if (config.isEnableZywrleEncoding()) {
+            encodings.add(ZYWRLE);
+        }
+
+        if (config.isEnableTightEncoding()) {
+            encodings.add(TIGHT);
+        }
+
+        if (config.isEnableTightPngEncoding()) {
+            encodings.add(TIGHT_PNG);
+        }
+
+        if (config.isEnableJpegEncoding()) {
+            encodings.add(JPEG);
+        }
+
+        if (config.isEnableZrleEncoding()) {
+            encodings.add(ZRLE);
+        }
+
+        if (config.isEnableTrleEncoding()) {
+            encodings.add(TRLE);
+        }
+
+        if (config.isEnableUltraEncoding()) {
+            encodings.add(ULTRA);
+        }
+
+        if (config.isEnableZlibHexEncoding()) {
+            encodings.add(ZLIBHEX);
+        }
+
         if (config.isEnableZLibEncoding()) {
             encodings.add(ZLIB);
         }
@@ -62,6 +146,10 @@ public class Initializer {
             encodings.add(HEXTILE);
         }
 
+        if (config.isEnableCoRreEncoding()) {
+            encodings.add(CORRE);
+        }
+
         if (config.isEnableRreEncoding()) {
             encodings.add(RRE);
         }
@@ -72,17 +160,37 @@ public class Initializer {
 
         encodings.add(RAW);
         encodings.add(DESKTOP_SIZE);
+        encodings.add(LAST_RECT);
 
         if (config.isUseLocalMousePointer()) {
+            encodings.add(ALPHA_CURSOR);
             encodings.add(CURSOR);
+            encodings.add(POINTER_POS);
         }
 
-        SetEncodings setEncodings = new SetEncodings(encodings);
+        if (config.getCompressionLevel() >= 0) {
+            encodings.add(compressLevel(config.getCompressionLevel()));
+        }
 
-        setPixelFormat.encode(out);
-        setEncodings.encode(out);
+        if (config.getJpegQuality() >= 0) {
+            encodings.add(jpegQualityLevel(config.getJpegQuality()));
+        }
 
-        session.setPixelFormat(pixelFormat);
+        return encodings;
+    }
+
+    /**
+     * @param encodings The encodings sent to the server
+     * @return The JPEG quality level requested by the first JPEG quality level pseudo-encoding in the list, or -1 if
+     * there is none
+     */
+    public int jpegQuality(List<Encoding> encodings) {
+        for (Encoding encoding : encodings) {
+            if (encoding.isJpegQualityLevel()) {
+                return encoding.getLevel();
+            }
+        }
+        return -1;
     }
 
 }
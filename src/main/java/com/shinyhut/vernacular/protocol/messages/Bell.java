@@ -1,14 +1,14 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.readUnsignedByte;
+
 public class Bell {
 
     public static Bell decode(InputStream in) throws IOException {
-        DataInputStream dataInput = new DataInputStream(in);
-        dataInput.readFully(new byte[1]);
+        readUnsignedByte(in);
         return new Bell();
     }
 }
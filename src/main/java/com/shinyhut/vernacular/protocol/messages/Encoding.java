@@ -8,13 +8,62 @@ public enum Encoding {
     RAW(0),
     COPYRECT(1),
     RRE(2),
+    CORRE(4),
     HEXTILE(5),
     ZLIB(6),
+    TIGHT(7),
+    ZLIBHEX(8),
+    ULTRA(9),
+    TRLE(15),
+    ZRLE(16),
+    ZYWRLE(17),
+    JPEG(21),
+    TIGHT_PNG(-260),
     DESKTOP_SIZE(-223),
-    CURSOR(-239)
+    LAST_RECT(-224),
+    CURSOR(-239),
+    ALPHA_CURSOR(-314),
+    POINTER_POS(-232),
+    JPEG_QUALITY_LEVEL_0(-32),
+    JPEG_QUALITY_LEVEL_1(-31),
+    JPEG_QUALITY_LEVEL_2(-30),
+    JPEG_QUALITY_LEVEL_3(-29),
+    JPEG_QUALITY_LEVEL_4(-28),
+    JPEG_QUALITY_LEVEL_5(-27),
+    JPEG_QUALITY_LEVEL_6(-26),
+    JPEG_QUALITY_LEVEL_7(-25),
+    JPEG_QUALITY_LEVEL_8(-24),
+    JPEG_QUALITY_LEVEL_9(-23),
+    COMPRESS_LEVEL_0(-256),
+    COMPRESS_LEVEL_1(-255),
+    COMPRESS_LEVEL_2(-254),
+    COMPRESS_LEVEL_3(-253),
+    COMPRESS_LEVEL_4(-252),
+    COMPRESS_LEVEL_5(-251),
+    COMPRESS_LEVEL_6(-250),
+    COMPRESS_LEVEL_7(-249),
+    COMPRESS_LEVEL_8(-248),
+    COMPRESS_LEVEL_9(-247)
     ;
 
-    private int code;
+    public static final int MAX_LEVEL = 9;
+
+    private static final int MIN_CODE = stream(values()).mapToInt(Encoding::getCode).min().getAsInt();
+    private static final int MAX_CODE = stream(values()).mapToInt(Encoding::getCode).max().getAsInt();
+
+    /**
+     * Every encoding, indexed by its code less {@link #MIN_CODE}, so that the encoding of each rectangle can be looked
+     * up without searching
+     */
+    private static final Encoding[] BY_CODE = new Encoding[MAX_CODE - MIN_CODE + 1];
+
+    static {
+        for (Encoding encoding : values()) {
+            BY_CODE[encoding.code - MIN_CODE] = encoding;
+        }
+    }
+
+    private final int code;
 
     Encoding(int code) {
         this.code = code;
@@ -24,10 +73,70 @@ public enum Encoding {
         return code;
     }
 
+    /**
+     * @param level The JPEG quality level, from 0 (lowest quality) to 9 (highest quality)
+     * @return The pseudo-encoding which requests the specified JPEG quality level
+     */
+    public static Encoding jpegQualityLevel(int level) {
+        return level(JPEG_QUALITY_LEVEL_0, level);
+    }
+
+    /**
+     * @param level The compression level, from 0 (fastest) to 9 (best compression)
+     * @return The pseudo-encoding which requests the specified compression level
+     */
+    public static Encoding compressLevel(int level) {
+        return level(COMPRESS_LEVEL_0, level);
+    }
+
+    /**
+     * @return Whether this is a pseudo-encoding, which declares something the client supports rather than a way of
+     * encoding pixels. TightPNG is the only encoding with a negative code which is not a pseudo-encoding.
+     */
+    public boolean isPseudoEncoding() {
+        return code < 0 && this != TIGHT_PNG;
+    }
+
+    /**
+     * @return Whether this is one of the pseudo-encodings which request a JPEG quality level
+     */
+    public boolean isJpegQualityLevel() {
+        return ordinal() >= JPEG_QUALITY_LEVEL_0.ordinal() && ordinal() <= JPEG_QUALITY_LEVEL_9.ordinal();
+    }
+
+    /**
+     * @return Whether this is one of the pseudo-encodings which request a compression level
+     */
+    public boolean isCompressLevel() {
+        return ordinal() >= COMPRESS_LEVEL_0.ordinal() && ordinal() <= COMPRESS_LEVEL_9.ordinal();
+    }
+
+    /**
+     * @return The level requested by a JPEG quality level or compression level pseudo-encoding
+     * @throws IllegalStateException if this encoding does not request a level
+     */
+    public int getLevel() {
+        if (isJpegQualityLevel()) {
+            return ordinal() - JPEG_QUALITY_LEVEL_0.ordinal();
+        }
+        if (isCompressLevel()) {
+            return ordinal() - COMPRESS_LEVEL_0.ordinal();
+        }
+        throw new IllegalStateException(name() + " does not request a level");
+    }
+
+    private static Encoding level(Encoding first, int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Invalid level: " + level);
+        }
+        return values()[first.ordinal() + level];
+    }
+
     public static Encoding resolve(int code) throws UnsupportedEncodingException {
-        return stream(values())
-                .filter(e -> e.code == code)
-                .findFirst()
-                .orElseThrow(() -> new UnsupportedEncodingException(code));
+        Encoding encoding = code >= MIN_CODE && code <= MAX_CODE ? BY_CODE[code - MIN_CODE] : null;
+        if (encoding == null) {
+            throw new UnsupportedEncodingException(code);
+        }
+        return encoding;
     }
 }
@@ -1,25 +1,44 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
 
 public class FramebufferUpdate {
 
-    private final int numberOfRectangles;
+    static final int LENGTH = 4;
+
+    private int numberOfRectangles;
 
     public FramebufferUpdate(int numberOfRectangles) {
         this.numberOfRectangles = numberOfRectangles;
     }
 
+    /**
+     * Servers which support the LastRect pseudo-encoding may send updates before they know how many rectangles they
+     * contain. Such updates claim the maximum number of rectangles, 65535, and end early with a LastRect rectangle.
+     *
+     * @return The number of rectangles in the update, or the most it can contain if it ends with a LastRect rectangle
+     */
     public int getNumberOfRectangles() {
         return numberOfRectangles;
     }
 
     public static FramebufferUpdate decode(InputStream in) throws IOException {
-        DataInputStream dataInput = new DataInputStream(in);
-        dataInput.readFully(new byte[2]);
-        int numberOfRectangles = dataInput.readUnsignedShort();
-        return new FramebufferUpdate(numberOfRectangles);
+        byte[] message = new byte[LENGTH];
+        readFully(in, message, 0, LENGTH);
+        FramebufferUpdate update = new FramebufferUpdate(0);
+        decode(ByteBuffer.wrap(message), update);
+        return update;
+    }
+
+    /**
+     * Decodes a message into an existing instance, which a {@link MessageCodec} reuses for every update
+     */
+    static void decode(ByteBuffer buffer, FramebufferUpdate update) {
+        buffer.position(buffer.position() + 2);
+        update.numberOfRectangles = buffer.getShort() & 0xffff;
     }
 }
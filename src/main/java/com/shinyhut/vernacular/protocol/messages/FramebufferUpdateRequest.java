@@ -1,12 +1,13 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class FramebufferUpdateRequest implements Encodable {
 
+    static final int LENGTH = 10;
+
     private final boolean incremental;
     private final int x;
     private final int y;
@@ -23,12 +24,17 @@ public class FramebufferUpdateRequest implements Encodable {
 
     @Override
     public void encode(OutputStream out) throws IOException {
-        DataOutput dataOutput = new DataOutputStream(out);
-        dataOutput.writeByte(0x03);
-        dataOutput.writeBoolean(incremental);
-        dataOutput.writeShort(x);
-        dataOutput.writeShort(y);
-        dataOutput.writeShort(width);
-        dataOutput.writeShort(height);
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        encode(buffer, incremental, x, y, width, height);
+        out.write(buffer.array(), 0, LENGTH);
+    }
+
+    static void encode(ByteBuffer buffer, boolean incremental, int x, int y, int width, int height) {
+        buffer.put((byte) 0x03);
+        buffer.put((byte) (incremental ? 1 : 0));
+        buffer.putShort((short) x);
+        buffer.putShort((short) y);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
     }
 }
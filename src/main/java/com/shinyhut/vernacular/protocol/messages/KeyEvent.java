@@ -1,12 +1,13 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class KeyEvent implements Encodable {
 
+    static final int LENGTH = 8;
+
     private final int keysym;
     private final boolean pressed;
 
@@ -17,10 +18,15 @@ public class KeyEvent implements Encodable {
 
     @Override
     public void encode(OutputStream out) throws IOException {
-        DataOutput dataOutput = new DataOutputStream(out);
-        dataOutput.writeByte(0x04);
-        dataOutput.writeBoolean(pressed);
-        dataOutput.write(new byte[]{0x00, 0x00});
-        dataOutput.writeInt(keysym);
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        encode(buffer, keysym, pressed);
+        out.write(buffer.array(), 0, LENGTH);
+    }
+
+    static void encode(ByteBuffer buffer, int keysym, boolean pressed) {
+        buffer.put((byte) 0x04);
+        buffer.put((byte) (pressed ? 1 : 0));
+        buffer.putShort((short) 0);
+        buffer.putInt(keysym);
     }
 }
@@ -0,0 +1,77 @@
+package com.shinyhut.vernacular.protocol.messages;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException;
+
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+
+/**
+ * Reads and writes the messages exchanged many times a second once a session is running, through a single reusable
+ * {@link ByteBuffer} and without allocating: framebuffer updates and the headers of their rectangles from the server,
+ * and framebuffer update requests, key events and pointer events from the client.
+ * <p>
+ * Each client message is written to the stream in one call, rather than a field at a time. Decoded messages are
+ * returned in holders owned by the codec, which are overwritten by the next message of the same type, so a caller
+ * which needs to keep a message must copy its fields. A codec is not thread safe.
+ */
+public final class MessageCodec {
+
+    private static final int MAX_MESSAGE_LENGTH = Rectangle.LENGTH;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE_LENGTH);
+    private final FramebufferUpdate framebufferUpdate = new FramebufferUpdate(0);
+    private final Rectangle rectangle = new Rectangle(0, 0, 0, 0, null);
+
+    /**
+     * @return The update, which is reused by the next call
+     */
+    public FramebufferUpdate readFramebufferUpdate(InputStream in) throws IOException {
+        FramebufferUpdate.decode(read(in, FramebufferUpdate.LENGTH), framebufferUpdate);
+        return framebufferUpdate;
+    }
+
+    /**
+     * @return The rectangle, which is reused by the next call
+     */
+    public Rectangle readRectangle(InputStream in) throws UnsupportedEncodingException, IOException {
+        Rectangle.decode(read(in, Rectangle.LENGTH), rectangle);
+        return rectangle;
+    }
+
+    public void writeFramebufferUpdateRequest(OutputStream out, boolean incremental, int x, int y, int width,
+                                              int height) throws IOException {
+        buffer.clear();
+        FramebufferUpdateRequest.encode(buffer, incremental, x, y, width, height);
+        write(out);
+    }
+
+    public void writeKeyEvent(OutputStream out, int keysym, boolean pressed) throws IOException {
+        buffer.clear();
+        KeyEvent.encode(buffer, keysym, pressed);
+        write(out);
+    }
+
+    /**
+     * @param buttonMask The state of each button, from button 1 in the least significant bit to button 8
+     */
+    public void writePointerEvent(OutputStream out, int x, int y, int buttonMask) throws IOException {
+        buffer.clear();
+        PointerEvent.encode(buffer, x, y, buttonMask);
+        write(out);
+    }
+
+    private ByteBuffer read(InputStream in, int length) throws IOException {
+        buffer.clear();
+        readFully(in, buffer.array(), 0, length);
+        buffer.limit(length);
+        return buffer;
+    }
+
+    private void write(OutputStream out) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+    }
+}
@@ -6,6 +6,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Objects;
 
 public class PixelFormat implements Encodable {
 
@@ -78,6 +79,32 @@ public class PixelFormat implements Encodable {
         return blueShift;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PixelFormat that = (PixelFormat) o;
+        return bitsPerPixel == that.bitsPerPixel &&
+                depth == that.depth &&
+                bigEndian == that.bigEndian &&
+                trueColor == that.trueColor &&
+                redMax == that.redMax &&
+                greenMax == that.greenMax &&
+                blueMax == that.blueMax &&
+                redShift == that.redShift &&
+                greenShift == that.greenShift &&
+                blueShift == that.blueShift;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bitsPerPixel, depth, bigEndian, trueColor, redMax, greenMax, blueMax, redShift, greenShift, blueShift);
+    }
+
     @Override
     public void encode(OutputStream out) throws IOException {
         DataOutput dataOutput = new DataOutputStream(out);
@@ -1,13 +1,14 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class PointerEvent implements Encodable {
 
+    static final int LENGTH = 6;
+
     private final int x;
     private final int y;
     private final List<Boolean> buttons;
@@ -20,11 +21,19 @@ public class PointerEvent implements Encodable {
 
     @Override
     public void encode(OutputStream out) throws IOException {
-        DataOutput dataOutput = new DataOutputStream(out);
-        dataOutput.write(0x05);
-        dataOutput.write(buttonMask());
-        dataOutput.writeShort(x);
-        dataOutput.writeShort(y);
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        encode(buffer, x, y, buttonMask());
+        out.write(buffer.array(), 0, LENGTH);
+    }
+
+    /**
+     * @param buttonMask The state of each button, from button 1 in the least significant bit to button 8
+     */
+    static void encode(ByteBuffer buffer, int x, int y, int buttonMask) {
+        buffer.put((byte) 0x05);
+        buffer.put((byte) buttonMask);
+        buffer.putShort((short) x);
+        buffer.putShort((short) y);
     }
 
     private byte buttonMask() {
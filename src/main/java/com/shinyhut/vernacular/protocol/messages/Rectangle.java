@@ -1,20 +1,31 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException;
 
+import static com.shinyhut.vernacular.utils.ByteUtils.readFully;
+
 public class Rectangle {
 
-    private final int x;
-    private final int y;
-    private final int width;
-    private final int height;
-    private final Encoding encoding;
+    static final int LENGTH = 12;
+
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private Encoding encoding;
 
     public Rectangle(int x, int y, int width, int height, Encoding encoding) {
+        set(x, y, width, height, encoding);
+    }
+
+    /**
+     * Reuses a rectangle to hold another rectangle decoded by a {@link MessageCodec}
+     */
+    void set(int x, int y, int width, int height, Encoding encoding) {
         this.x = x;
         this.y = y;
         this.width = width;
@@ -43,13 +54,22 @@ public class Rectangle {
     }
 
     public static Rectangle decode(InputStream in) throws UnsupportedEncodingException, IOException {
-        DataInputStream dataInput = new DataInputStream(in);
-        int x = dataInput.readUnsignedShort();
-        int y = dataInput.readUnsignedShort();
-        int width = dataInput.readUnsignedShort();
-        int height = dataInput.readUnsignedShort();
-        int encodingType = dataInput.readInt();
-        Encoding encoding = Encoding.resolve(encodingType);
-        return new Rectangle(x, y, width, height, encoding);
+        byte[] header = new byte[LENGTH];
+        readFully(in, header, 0, LENGTH);
+        Rectangle rectangle = new Rectangle(0, 0, 0, 0, null);
+        decode(ByteBuffer.wrap(header), rectangle);
+        return rectangle;
+    }
+
+    /**
+     * Decodes a rectangle's header into an existing instance, which a {@link MessageCodec} reuses for every rectangle
+     */
+    static void decode(ByteBuffer buffer, Rectangle rectangle) throws UnsupportedEncodingException {
+        int x = buffer.getShort() & 0xffff;
+        int y = buffer.getShort() & 0xffff;
+        int width = buffer.getShort() & 0xffff;
+        int height = buffer.getShort() & 0xffff;
+        Encoding encoding = Encoding.resolve(buffer.getInt());
+        rectangle.set(x, y, width, height, encoding);
     }
 }
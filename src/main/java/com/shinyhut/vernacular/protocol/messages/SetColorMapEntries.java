@@ -26,7 +26,8 @@ public class SetColorMapEntries {
 
     public static SetColorMapEntries decode(InputStream in) throws IOException {
         DataInputStream dataInput = new DataInputStream(in);
-        dataInput.readFully(new byte[2]);
+        // Skip the message type and padding
+        dataInput.readUnsignedShort();
         int firstColor = dataInput.readUnsignedShort();
         int numberOfColors = dataInput.readUnsignedShort();
         List<ColorMapEntry> colors = new ArrayList<>();
@@ -1,8 +1,8 @@
 package com.shinyhut.vernacular.protocol.messages;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -19,15 +19,18 @@ public class SetEncodings implements Encodable {
         this.encodings = encodings;
     }
 
+    /**
+     * Writes the whole message to the stream in one call
+     */
     @Override
     public void encode(OutputStream out) throws IOException {
-        DataOutputStream dataOutput = new DataOutputStream(out);
-        dataOutput.writeByte(0x02);
-        dataOutput.writeByte(0x00);
-        dataOutput.writeShort(encodings.size());
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * encodings.size());
+        buffer.put((byte) 0x02);
+        buffer.put((byte) 0x00);
+        buffer.putShort((short) encodings.size());
         for (Encoding encoding : encodings) {
-            dataOutput.writeInt(encoding.getCode());
+            buffer.putInt(encoding.getCode());
         }
-
+        out.write(buffer.array(), 0, buffer.position());
     }
 }
@@ -1,5 +1,9 @@
 package com.shinyhut.vernacular.utils;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
 import static java.lang.System.arraycopy;
 
 public class ByteUtils {
@@ -42,4 +46,42 @@ public class ByteUtils {
         arraycopy(input, 0, padded, 0, input.length);
         return padded;
     }
+
+    public static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int read = in.read(buffer, offset, end - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    public static int readUnsignedByte(InputStream in) throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a big endian unsigned 16 bit integer, as {@link java.io.DataInput#readUnsignedShort()} does, without
+     * wrapping the stream
+     */
+    public static int readUnsignedShort(InputStream in) throws IOException {
+        return readUnsignedByte(in) << 8 | readUnsignedByte(in);
+    }
+
+    /**
+     * Reads a big endian 32 bit integer, as {@link java.io.DataInput#readInt()} does, without wrapping the stream
+     */
+    public static int readInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | readUnsignedByte(in);
+        }
+        return value;
+    }
 }
@@ -20,7 +20,7 @@ import com.shinyhut.vernacular.VernacularViewer;
 import com.shinyhut.vernacular.client.VernacularClient;
 import com.shinyhut.vernacular.client.VernacularConfig;
 import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_16_TRUE;
-import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_24_TRUE;
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_32_NATIVE;
 import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_8_INDEXED;
 import static java.awt.BorderLayout.CENTER;
 import static java.awt.Color.DARK_GRAY;
@@ -57,13 +57,23 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
     private JMenuItem bpp8IndexedColorMenuItem;
     private JMenuItem bpp16TrueColorMenuItem;
     private JMenuItem bpp24TrueColorMenuItem;
+    private JMenuItem serverPixelFormatMenuItem;
     private JMenuItem localCursorMenuItem;
     
     private JMenu encodingsMenu;
     private JMenuItem copyRectMenuItem;
     private JMenuItem rreMenuItem;
+    private JMenuItem coRreMenuItem;
     private JMenuItem hextileMenuItem;
     private JMenuItem zlibMenuItem;
+    private JMenuItem tightMenuItem;
+    private JMenuItem zrleMenuItem;
+    private JMenuItem trleMenuItem;
+    private JMenuItem zlibHexMenuItem;
+    private JMenuItem ultraMenuItem;
+    private JMenuItem tightPngMenuItem;
+    private JMenuItem jpegMenuItem;
+    private JMenuItem zywrleMenuItem;
     
     private Image lastFrame;
     
@@ -200,9 +210,7 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
         {
             connectMenuItem.setEnabled(false);
             disconnectMenuItem.setEnabled(true);
-            bpp8IndexedColorMenuItem.setEnabled(false);
-            bpp16TrueColorMenuItem.setEnabled(false);
-            bpp24TrueColorMenuItem.setEnabled(false);
+            serverPixelFormatMenuItem.setEnabled(false);
             localCursorMenuItem.setEnabled(false);
             encodingsMenu.setEnabled(false);
         }
@@ -210,9 +218,7 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
         {
             connectMenuItem.setEnabled(true);
             disconnectMenuItem.setEnabled(false);
-            bpp8IndexedColorMenuItem.setEnabled(true);
-            bpp16TrueColorMenuItem.setEnabled(true);
-            bpp24TrueColorMenuItem.setEnabled(true);
+            serverPixelFormatMenuItem.setEnabled(true);
             localCursorMenuItem.setEnabled(true);
             encodingsMenu.setEnabled(true);
         }
@@ -397,9 +403,12 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
         colorDepths.add(bpp16TrueColorMenuItem);
         colorDepths.add(bpp24TrueColorMenuItem);
         
-        bpp8IndexedColorMenuItem.addActionListener(event -> config.setColorDepth(BPP_8_INDEXED));
-        bpp16TrueColorMenuItem.addActionListener(event -> config.setColorDepth(BPP_16_TRUE));
-        bpp24TrueColorMenuItem.addActionListener(event -> config.setColorDepth(BPP_24_TRUE));
+        bpp8IndexedColorMenuItem.addActionListener(event -> client.setColorDepth(BPP_8_INDEXED));
+        bpp16TrueColorMenuItem.addActionListener(event -> client.setColorDepth(BPP_16_TRUE));
+        bpp24TrueColorMenuItem.addActionListener(event -> client.setColorDepth(BPP_32_NATIVE));
+        
+        serverPixelFormatMenuItem = new JCheckBoxMenuItem("Use Server Pixel Format");
+        serverPixelFormatMenuItem.addActionListener(event -> config.setUseServerPixelFormat(serverPixelFormatMenuItem.isSelected()));
         
         localCursorMenuItem = new JCheckBoxMenuItem("Use Local Cursor", true);
         localCursorMenuItem.addActionListener(event -> config.setUseLocalMousePointer(() -> localCursorMenuItem != null && localCursorMenuItem.isSelected()));
@@ -410,17 +419,53 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
         rreMenuItem = new JCheckBoxMenuItem("RRE", true);
         rreMenuItem.addActionListener(event -> config.setEnableRreEncoding(rreMenuItem.isSelected()));
         
+        coRreMenuItem = new JCheckBoxMenuItem("CoRRE", false);
+        coRreMenuItem.addActionListener(event -> config.setEnableCoRreEncoding(coRreMenuItem.isSelected()));
+        
         hextileMenuItem = new JCheckBoxMenuItem("HEXTILE", true);
         hextileMenuItem.addActionListener(event -> config.setEnableHextileEncoding(hextileMenuItem.isSelected()));
         
         zlibMenuItem = new JCheckBoxMenuItem("ZLIB", false);
         zlibMenuItem.addActionListener(event -> config.setEnableZLibEncoding(zlibMenuItem.isSelected()));
         
+        tightMenuItem = new JCheckBoxMenuItem("TIGHT", false);
+        tightMenuItem.addActionListener(event -> config.setEnableTightEncoding(tightMenuItem.isSelected()));
+        
+        zrleMenuItem = new JCheckBoxMenuItem("ZRLE", false);
+        zrleMenuItem.addActionListener(event -> config.setEnableZrleEncoding(zrleMenuItem.isSelected()));
+        
+        trleMenuItem = new JCheckBoxMenuItem("TRLE", false);
+        trleMenuItem.addActionListener(event -> config.setEnableTrleEncoding(trleMenuItem.isSelected()));
+        
+        zywrleMenuItem = new JCheckBoxMenuItem("ZYWRLE", false);
+        zywrleMenuItem.addActionListener(event -> config.setEnableZywrleEncoding(zywrleMenuItem.isSelected()));
+        
+        zlibHexMenuItem = new JCheckBoxMenuItem("ZlibHex", false);
+        zlibHexMenuItem.addActionListener(event -> config.setEnableZlibHexEncoding(zlibHexMenuItem.isSelected()));
+        
+        ultraMenuItem = new JCheckBoxMenuItem("Ultra", false);
+        ultraMenuItem.addActionListener(event -> config.setEnableUltraEncoding(ultraMenuItem.isSelected()));
+        
+        tightPngMenuItem = new JCheckBoxMenuItem("TightPNG", false);
+        tightPngMenuItem.addActionListener(event -> config.setEnableTightPngEncoding(tightPngMenuItem.isSelected()));
+        
+        jpegMenuItem = new JCheckBoxMenuItem("JPEG", false);
+        jpegMenuItem.addActionListener(event -> config.setEnableJpegEncoding(jpegMenuItem.isSelected()));
+        
         encodingsMenu = new JMenu("Enabled Encodings");
         encodingsMenu.add(copyRectMenuItem);
         encodingsMenu.add(rreMenuItem);
+        encodingsMenu.add(coRreMenuItem);
         encodingsMenu.add(hextileMenuItem);
         encodingsMenu.add(zlibMenuItem);
+        encodingsMenu.add(tightMenuItem);
+        encodingsMenu.add(zrleMenuItem);
+        encodingsMenu.add(trleMenuItem);
+        encodingsMenu.add(zywrleMenuItem);
+        encodingsMenu.add(zlibHexMenuItem);
+        encodingsMenu.add(ultraMenuItem);
+        encodingsMenu.add(tightPngMenuItem);
+        encodingsMenu.add(jpegMenuItem);
         
         final JMenuItem exit = new JMenuItem("Exit");
         exit.setMnemonic(VK_X);
@@ -436,6 +481,7 @@ public class ViewerFrame extends JFrame implements ConnectionStateListener
         options.add(bpp8IndexedColorMenuItem);
         options.add(bpp16TrueColorMenuItem);
         options.add(bpp24TrueColorMenuItem);
+        options.add(serverPixelFormatMenuItem);
         options.add(localCursorMenuItem);
         options.add(encodingsMenu);
         menu.add(file);
@@ -0,0 +1,185 @@
+package com.shinyhut.vernacular.client
+
+import com.shinyhut.vernacular.protocol.messages.ServerInit
+import com.shinyhut.vernacular.utils.CountingInputStream
+import spock.lang.Specification
+
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_16_TRUE
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_32_NATIVE
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_8_INDEXED
+import static com.shinyhut.vernacular.protocol.messages.Encoding.*
+
+class AdaptiveControllerTest extends Specification {
+
+    static final long FAST = 1_000_000L
+    static final long SLOW = 200_000_000L
+
+    def config = new VernacularConfig()
+    def output = new ByteArrayOutputStream()
+    def session = new VncSession(config, new ByteArrayInputStream(new byte[0]), output)
+    def handler = new ClientEventHandler(session, {})
+    def controller = new AdaptiveController(session, handler,
+            new CountingInputStream(new ByteArrayInputStream(new byte[0])))
+
+    def setup() {
+        session.setServerInit(ServerInit.decode(new ByteArrayInputStream([
+                0x00, 0x10, 0x00, 0x08,                         // 16x8
+                0x20, 0x18, 0x00, 0x01,                         // 32 bpp, 24 bit depth, little endian, true color
+                0x00, 0xff, 0x00, 0xff, 0x00, 0xff,             // maxes of 255
+                0x10, 0x08, 0x00, 0x00, 0x00, 0x00,             // shifts 16, 8, 0 and padding
+                0x00, 0x00, 0x00, 0x00                          // no name
+        ] as byte[])))
+        session.setFramebufferWidth(16)
+        session.setFramebufferHeight(8)
+        config.setBandwidthBudget(1000)
+        config.setDecodeCpuBudget(0.5)
+        controller.start()
+    }
+
+    def "should request the initial profile, keeping the pseudo-encodings other than the compression level"() {
+        expect:
+        controller.profile == AdaptiveController.INITIAL_PROFILE
+        controller.colorDepth == BPP_32_NATIVE
+        controller.encodings == [TIGHT, ZRLE, HEXTILE, COPYRECT, RAW, DESKTOP_SIZE, LAST_RECT, ALPHA_CURSOR, CURSOR,
+                                 POINTER_POS, COMPRESS_LEVEL_6]
+    }
+
+    def "should save bandwidth when the bandwidth budget is exceeded"() {
+        when:
+        controller.evaluate(2000, 0.1, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE + 1
+        controller.colorDepth == BPP_16_TRUE
+        controller.encodings.last() == COMPRESS_LEVEL_9
+    }
+
+    def "should save CPU when the CPU budget is exceeded"() {
+        when:
+        controller.evaluate(600, 0.9, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE - 1
+        controller.encodings.take(3) == [ZRLE, HEXTILE, COPYRECT]
+        controller.encodings.last() == COMPRESS_LEVEL_1
+    }
+
+    def "should stay put when the session is within its budgets without headroom"() {
+        when:
+        controller.evaluate(600, 0.1, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE
+    }
+
+    def "should wait for longer each time before using more bandwidth again"() {
+        when:
+        controller.evaluate(2000, 0.1, FAST)
+        controller.evaluate(100, 0.1, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE + 1
+
+        when:
+        controller.evaluate(100, 0.1, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE
+
+        when:
+        controller.evaluate(2000, 0.1, FAST)
+        2.times { controller.evaluate(100, 0.1, FAST) }
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE + 1
+
+        when:
+        controller.evaluate(100, 0.1, FAST)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE
+    }
+
+    def "should save bandwidth when full screen updates take much longer to arrive, without a bandwidth budget"() {
+        given:
+        config.setBandwidthBudget(0)
+        controller.evaluate(100_000, 0.3, FAST)
+
+        when:
+        controller.evaluate(100_000, 0.3, SLOW)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE + 1
+    }
+
+    def "should not save bandwidth when the server holds incremental requests while the screen is idle"() {
+        given:
+        def input = new CountingInputStream(new ByteArrayInputStream(new byte[10_000]))
+        def controller = new AdaptiveController(session, handler, input)
+        controller.start()
+
+        handler.requestFramebufferUpdate(false)
+        controller.updateStarted()
+        endInterval(controller, input)
+
+        when:
+        handler.requestFramebufferUpdate(true)
+        Thread.sleep(200)
+        controller.updateStarted()
+        endInterval(controller, input)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE
+    }
+
+    def "should send its choices to the server without changing the configuration"() {
+        given:
+        def configured = [ZRLE, RAW, CURSOR]
+        def handler = new ClientEventHandler(session, {})
+        def controller = new AdaptiveController(session, handler,
+                new CountingInputStream(new ByteArrayInputStream(new byte[0])))
+        config.setColorDepth(BPP_16_TRUE)
+        config.setEncodings(configured)
+
+        when:
+        controller.start()
+        handler.requestFramebufferUpdate(true)
+
+        then:
+        config.colorDepth == BPP_16_TRUE
+        config.encodings == configured
+        controller.colorDepth == BPP_32_NATIVE
+        controller.encodings == [TIGHT, ZRLE, HEXTILE, COPYRECT, RAW, CURSOR, COMPRESS_LEVEL_6]
+        output.toByteArray()[0] == 0 as byte
+        session.pixelFormat.bitsPerPixel == 32
+        !session.pixelFormat.bigEndian
+    }
+
+    def "should never change the color depth while the server's own pixel format is used"() {
+        given:
+        config.setUseServerPixelFormat(true)
+        def handler = new ClientEventHandler(session, {})
+        def controller = new AdaptiveController(session, handler,
+                new CountingInputStream(new ByteArrayInputStream(new byte[0])))
+
+        when:
+        controller.start()
+        controller.evaluate(2000, 0.1, FAST)
+        handler.requestFramebufferUpdate(true)
+
+        then:
+        controller.profile == AdaptiveController.INITIAL_PROFILE + 1
+        controller.colorDepth == BPP_8_INDEXED
+        output.toByteArray()[0] == 2 as byte
+        session.pixelFormat == null
+    }
+
+    /**
+     * Receives 700 bytes per second, within the bandwidth budget but without headroom, and ends the interval
+     */
+    private static void endInterval(AdaptiveController controller, CountingInputStream input) {
+        input.read(new byte[1400])
+        controller.@intervalStart -= 2_000_000_000L
+        controller.updateFinished()
+    }
+}
@@ -0,0 +1,99 @@
+package com.shinyhut.vernacular.client
+
+import com.shinyhut.vernacular.client.rendering.Framebuffer
+import com.shinyhut.vernacular.protocol.initialization.Initializer
+import com.shinyhut.vernacular.protocol.messages.FramebufferUpdate
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.ServerInit
+import com.shinyhut.vernacular.protocol.messages.SetEncodings
+import com.shinyhut.vernacular.protocol.messages.SetPixelFormat
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_16_TRUE
+import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZYWRLE
+import static com.shinyhut.vernacular.protocol.messages.Encoding.jpegQualityLevel
+
+class ClientEventHandlerTest extends Specification {
+
+    def output = new ByteArrayOutputStream()
+    def session = new VncSession(new VernacularConfig(), new ByteArrayInputStream(new byte[0]), output)
+    def handler = new ClientEventHandler(session, {})
+
+    def setup() {
+        session.setFramebufferWidth(16)
+        session.setFramebufferHeight(8)
+        session.setJpegQuality(9)
+    }
+
+    def "should keep decoding with the old JPEG quality level until the next framebuffer update request"() {
+        given:
+        def setEncodings = new SetEncodings([ZYWRLE, RAW, jpegQualityLevel(2)])
+        def expected = new ByteArrayOutputStream()
+        setEncodings.encode(expected)
+        expected.write([3, 0, 0, 0, 0, 0, 0, 16, 0, 8] as byte[])
+
+        when:
+        handler.updateEncodings(setEncodings, 2)
+
+        then:
+        output.size() == 0
+        session.jpegQuality == 9
+
+        when:
+        handler.requestFramebufferUpdate(true)
+
+        then:
+        output.toByteArray() == expected.toByteArray()
+        session.jpegQuality == 2
+    }
+
+    def "should hold a new pixel format until the next request, which it makes non-incremental"() {
+        given:
+        def config = new VernacularConfig()
+        BufferedImage screen = null
+        config.setScreenUpdateListener { screen = it as BufferedImage }
+        def input = new ByteArrayInputStream([
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, // RAW at 0,0, 1x1
+                0x33, 0x22, 0x11, 0x00,                                                 // 0x112233, 32 bpp
+                0x00, 0x01, 0x00, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, // RAW at 1,0, 1x1
+                0xf8, 0x00                                                              // 0xff0000, 16 bpp
+        ] as byte[])
+        def session = new VncSession(config, input, output)
+        def serverFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        session.setServerInit(ServerInit.decode(new ByteArrayInputStream([
+                0x00, 0x02, 0x00, 0x01, 0x20, 0x18, 0x00, 0x01, 0x00, 0xff, 0x00, 0xff, 0x00, 0xff,
+                0x10, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+        ] as byte[])))
+        session.setFramebufferWidth(2)
+        session.setFramebufferHeight(1)
+        session.setPixelFormat(serverFormat)
+        def handler = new ClientEventHandler(session, {})
+        def framebuffer = new Framebuffer(session)
+        def newFormat = new Initializer().pixelFormat(BPP_16_TRUE)
+        def expected = new ByteArrayOutputStream()
+        new SetPixelFormat(newFormat).encode(expected)
+        expected.write([3, 0, 0, 0, 0, 0, 0, 2, 0, 1] as byte[])
+
+        when: 'the format changes while an update is still on its way'
+        handler.updatePixelFormat(newFormat)
+        framebuffer.processUpdate(new FramebufferUpdate(1))
+
+        then: 'nothing is sent, and the update is decoded in the old format'
+        output.size() == 0
+        session.pixelFormat == serverFormat
+        screen.getRGB(0, 0) == 0xff112233 as int
+
+        when:
+        handler.requestFramebufferUpdate(true)
+        framebuffer.processUpdate(new FramebufferUpdate(1))
+
+        then: 'the new format is sent before a request for the whole screen, and later updates are decoded in it'
+        output.toByteArray() == expected.toByteArray()
+        session.pixelFormat == newFormat
+        screen.getRGB(0, 0) == 0xff112233 as int
+        screen.getRGB(1, 0) == 0xffff0000 as int
+    }
+}
@@ -0,0 +1,60 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class CoRRERendererTest extends Specification {
+
+    def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new CoRRERenderer(pixelDecoder)
+    def image = new BufferedImage(8, 4, TYPE_INT_RGB)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(pixelFormat)
+    }
+
+    def "should read subrectangle coordinates and dimensions as single bytes"() {
+        given:
+        def input = new ByteArrayInputStream([
+                0, 0, 0, 2,                   // 2 subrects
+                0x33, 0x22, 0x11, 0x00,       // background 0x112233
+                0xcc, 0xbb, 0xaa, 0x00,       // 0xaabbcc at 1,1, 2x1
+                1, 1, 2, 1,
+                0x66, 0x55, 0x44, 0x00,       // 0x445566 at 0,0, 1x1
+                0, 0, 1, 1,
+                0x2a
+        ] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(2, 0, 3, 2, Encoding.CORRE))
+
+        then:
+        image.getRGB(2, 0) == 0xff445566 as int
+        image.getRGB(3, 0) == 0xff112233 as int
+        image.getRGB(2, 1) == 0xff112233 as int
+        image.getRGB(3, 1) == 0xffaabbcc as int
+        image.getRGB(4, 1) == 0xffaabbcc as int
+        image.getRGB(5, 1) == 0xff000000 as int
+        input.read() == 0x2a
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def input = new ByteArrayInputStream([0, 0, 0, 0, 0x33, 0x22, 0x11, 0x00] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 2, 1, 4, Encoding.CORRE))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'CoRRE'
+    }
+}
@@ -0,0 +1,68 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class CopyRectRendererTest extends Specification {
+
+    def renderer = new CopyRectRenderer()
+    def image = new BufferedImage(8, 8, TYPE_INT_RGB)
+
+    def setup() {
+        (0..<8).each { y -> (0..<8).each { x -> image.setRGB(x, y, pattern(x, y)) } }
+    }
+
+    @Unroll
+    def "should copy a region onto an overlapping region #direction"() {
+        when:
+        renderer.render(source(2, 2), image, new Rectangle(dstX, dstY, 4, 4, Encoding.COPYRECT))
+
+        then:
+        (0..<8).every { y ->
+            (0..<8).every { x ->
+                def inside = x >= dstX && x < dstX + 4 && y >= dstY && y < dstY + 4
+                image.getRGB(x, y) == (inside ? pattern(x - dstX + 2, y - dstY + 2) : pattern(x, y))
+            }
+        }
+
+        where:
+        direction            | dstX | dstY
+        'above it'           | 2    | 1
+        'below it'           | 2    | 3
+        'to its left'        | 1    | 2
+        'to its right'       | 3    | 2
+        'below and right'    | 4    | 3
+        'above and left'     | 0    | 0
+    }
+
+    def "should reject a region which does not fit within the destination"() {
+        when:
+        renderer.render(source(srcX, srcY), image, new Rectangle(dstX, dstY, 4, 4, Encoding.COPYRECT))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'CopyRect'
+
+        where:
+        srcX | srcY | dstX | dstY
+        5    | 0    | 0    | 0
+        0    | 5    | 0    | 0
+        0    | 0    | 5    | 0
+        0    | 0    | 0    | 5
+    }
+
+    private static int pattern(int x, int y) {
+        0xff000000 | x << 16 | y << 8 | 0x11
+    }
+
+    private static InputStream source(int x, int y) {
+        new ByteArrayInputStream([x >> 8, x & 0xff, y >> 8, y & 0xff] as byte[])
+    }
+}
@@ -0,0 +1,97 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+class CursorRendererTest extends Specification {
+
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new CursorRenderer(new RawRenderer(pixelDecoder))
+    def rectangle = new Rectangle(1, 2, 10, 2, Encoding.CURSOR)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, true, true, 255, 255, 255, 16, 8, 0))
+    }
+
+    def "should make the pixels transparent where the mask is clear"() {
+        when:
+        def image = renderer.decode(new ByteArrayInputStream(cursor(0x0f)), rectangle)
+
+        then:
+        image.getRGB(0, 0) == 0xff000102 as int
+        image.getRGB(1, 0) == 0x00000000
+        image.getRGB(8, 0) == 0xff080102 as int
+        image.getRGB(9, 0) == 0xff090102 as int
+        image.getRGB(3, 1) == 0x00000000
+        image.getRGB(4, 1) == 0xff0e0102 as int
+        image.getRGB(9, 1) == 0xff130102 as int
+    }
+
+    def "should reuse the image of a shape which has been sent before"() {
+        when:
+        def first = renderer.decode(new ByteArrayInputStream(cursor(0x0f)), rectangle)
+        def other = renderer.decode(new ByteArrayInputStream(cursor(0xf0)), rectangle)
+        def second = renderer.decode(new ByteArrayInputStream(cursor(0x0f)), rectangle)
+
+        then:
+        second.is(first)
+        !other.is(first)
+        other.getRGB(0, 1) == 0xff0a0102 as int
+    }
+
+    def "should not reuse an image once the pixel format has changed"() {
+        given:
+        def first = renderer.decode(new ByteArrayInputStream(cursor(0x0f)), rectangle)
+
+        when:
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, true, true, 255, 255, 255, 0, 8, 16))
+        def second = renderer.decode(new ByteArrayInputStream(cursor(0x0f)), rectangle)
+
+        then:
+        !second.is(first)
+        second.getRGB(0, 0) == 0xff020100 as int
+    }
+
+    def "should pack the premultiplied pixels of a cursor with alpha"() {
+        given:
+        def input = new ByteArrayInputStream([
+                0, 0, 0, 0,
+                0x20, 0x40, 0x60, 0x80,
+                0x11, 0x22, 0x33, 0xff
+        ] as byte[])
+
+        when:
+        def image = renderer.decodeAlpha(input, new Rectangle(0, 0, 2, 1, Encoding.ALPHA_CURSOR))
+
+        then:
+        image.alphaPremultiplied
+        image.getRaster().getDataBuffer().getElem(0) == 0x80204060 as int
+        image.getRGB(1, 0) == 0xff112233 as int
+        input.available() == 0
+    }
+
+    def "should reject a cursor with alpha which is not sent with the RAW encoding"() {
+        given:
+        def input = new ByteArrayInputStream([0, 0, 0, 5, 0x20, 0x40, 0x60, 0x80] as byte[])
+
+        when:
+        renderer.decodeAlpha(input, new Rectangle(0, 0, 1, 1, Encoding.ALPHA_CURSOR))
+
+        then:
+        def e = thrown(UnsupportedEncodingException)
+        e.encodingType == 5
+    }
+
+    /**
+     * A 10x2 cursor whose pixels have the index of the pixel in their red channel
+     */
+    private static byte[] cursor(int secondRowMask) {
+        def out = new ByteArrayOutputStream()
+        20.times { out.write([0, it, 1, 2] as byte[]) }
+        out.write([0xaa, 0xc0, secondRowMask, 0x40] as byte[])
+        out.toByteArray()
+    }
+}
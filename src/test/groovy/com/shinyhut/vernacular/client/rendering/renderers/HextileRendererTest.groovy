@@ -0,0 +1,105 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class HextileRendererTest extends Specification {
+
+    def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new HextileRenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(pixelFormat)
+    }
+
+    def "should carry the background and foreground over to later tiles and paint colored subrectangles"() {
+        given:
+        def image = new BufferedImage(40, 16, TYPE_INT_RGB)
+
+        def tiles = [
+                0x0e,                         // tile 1: background, foreground and subrects
+                0x33, 0x22, 0x11, 0x00,       // background 0x112233
+                0x66, 0x55, 0x44, 0x00,       // foreground 0x445566
+                0x01, 0x12, 0x21,             // 1 subrect at 1,2, 3x2
+                0x18,                         // tile 2: colored subrects on the previous background
+                0x02,
+                0xcc, 0xbb, 0xaa, 0x00, 0x00, 0x00,   // 0xaabbcc at 0,0, 1x1
+                0x99, 0x88, 0x77, 0x00, 0xff, 0x00,   // 0x778899 at 15,15, 1x1
+                0x08,                         // tile 3: subrects in the previous foreground
+                0x01, 0x44, 0x00              // 1 subrect at 4,4, 1x1
+        ] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(tiles), image, new Rectangle(0, 0, 40, 16, Encoding.HEXTILE))
+
+        then:
+        image.getRGB(0, 2) == 0xff112233 as int
+        image.getRGB(1, 2) == 0xff445566 as int
+        image.getRGB(3, 3) == 0xff445566 as int
+        image.getRGB(4, 2) == 0xff112233 as int
+        image.getRGB(1, 4) == 0xff112233 as int
+        image.getRGB(16, 0) == 0xffaabbcc as int
+        image.getRGB(17, 0) == 0xff112233 as int
+        image.getRGB(31, 15) == 0xff778899 as int
+        image.getRGB(36, 4) == 0xff445566 as int
+        image.getRGB(35, 4) == 0xff112233 as int
+        image.getRGB(39, 15) == 0xff112233 as int
+    }
+
+    def "should render raw tiles"() {
+        given:
+        def image = new BufferedImage(2, 1, TYPE_INT_RGB)
+        def tiles = [0x01, 0x33, 0x22, 0x11, 0x00, 0x66, 0x55, 0x44, 0x00] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(tiles), image, new Rectangle(0, 0, 2, 1, Encoding.HEXTILE))
+
+        then:
+        image.getRGB(0, 0) == 0xff112233 as int
+        image.getRGB(1, 0) == 0xff445566 as int
+    }
+
+    def "should clip subrectangles which run past their tile"() {
+        given:
+        def image = new BufferedImage(16, 16, TYPE_INT_RGB)
+
+        def tiles = [
+                0x0e,
+                0x33, 0x22, 0x11, 0x00,       // background 0x112233
+                0x66, 0x55, 0x44, 0x00,       // foreground 0x445566
+                0x02,
+                0xf0, 0xf0,                   // at 15,0, 16x1
+                0xff, 0xff                    // at 15,15, 16x16
+        ] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(tiles), image, new Rectangle(0, 0, 16, 16, Encoding.HEXTILE))
+
+        then:
+        image.getRGB(15, 0) == 0xff445566 as int
+        image.getRGB(0, 1) == 0xff112233 as int
+        image.getRGB(14, 15) == 0xff112233 as int
+        image.getRGB(15, 15) == 0xff445566 as int
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def image = new BufferedImage(16, 16, TYPE_INT_RGB)
+
+        when:
+        renderer.render(new ByteArrayInputStream([0x02, 0, 0, 0, 0] as byte[]), image,
+                new Rectangle(8, 0, 16, 1, Encoding.HEXTILE))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'Hextile'
+    }
+}
@@ -0,0 +1,136 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class JpegRendererTest extends Specification {
+
+    def renderer = new JpegRenderer()
+    def image = new BufferedImage(40, 20, TYPE_INT_RGB)
+
+    def "should render a JPEG image into its region of the destination, reading no further than its end"() {
+        given:
+        def jpeg = jpeg(16, 8, 0x4080c0)
+        def input = new ByteArrayInputStream(concat(jpeg, [0x2a] as byte[]))
+
+        when:
+        renderer.render(input, image, new Rectangle(2, 3, 16, 8, Encoding.JPEG))
+        renderer.flush()
+
+        then:
+        def expected = ImageIO.read(new ByteArrayInputStream(jpeg))
+        (0..<8).every { y -> (0..<16).every { x -> image.getRGB(2 + x, 3 + y) == expected.getRGB(x, y) } }
+        image.getRGB(1, 3) == 0xff000000 as int
+        image.getRGB(18, 3) == 0xff000000 as int
+        input.read() == 0x2a
+    }
+
+    def "should reuse the tables of a previous image when an image leaves them out"() {
+        given:
+        def first = jpeg(16, 8, 0x102030)
+        def second = jpeg(16, 8, 0xc0a080)
+        def input = new ByteArrayInputStream(concat(first, withoutTables(second)))
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 16, 8, Encoding.JPEG))
+        renderer.render(input, image, new Rectangle(16, 0, 16, 8, Encoding.JPEG))
+        renderer.flush()
+
+        then:
+        def expected = ImageIO.read(new ByteArrayInputStream(second))
+        (0..<8).every { y -> (0..<16).every { x -> image.getRGB(16 + x, y) == expected.getRGB(x, y) } }
+        input.available() == 0
+    }
+
+    def "should copy overlapping images into the destination in the order they were sent"() {
+        given:
+        def images = (0..<12).collect { jpeg(16, 16, it * 0x151515) }
+        def input = new ByteArrayInputStream(concat(images as byte[][]))
+
+        when:
+        images.eachWithIndex { jpeg, i -> renderer.render(input, image, new Rectangle(i, 0, 16, 16, Encoding.JPEG)) }
+        renderer.flush()
+
+        then:
+        def last = ImageIO.read(new ByteArrayInputStream(images.last()))
+        (0..<16).every { y -> (0..<16).every { x -> image.getRGB(11 + x, y) == last.getRGB(x, y) } }
+    }
+
+    def "should reject data which is not a JPEG image"() {
+        given:
+        def input = new ByteArrayInputStream([0xff, 0xd9] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 1, 1, Encoding.JPEG))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'JPEG'
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def input = new ByteArrayInputStream(jpeg(16, 8, 0x4080c0))
+
+        when:
+        renderer.render(input, image, new Rectangle(30, 16, 16, 8, Encoding.JPEG))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'JPEG'
+    }
+
+    def "should reject a JPEG image which is not the size of its rectangle"() {
+        given:
+        def input = new ByteArrayInputStream(jpeg(16, 8, 0x4080c0))
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 8, 8, Encoding.JPEG))
+        renderer.flush()
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'JPEG'
+        image.getRGB(0, 0) == 0xff000000 as int
+    }
+
+    private static byte[] jpeg(int width, int height, int rgb) {
+        def source = new BufferedImage(width, height, TYPE_INT_RGB)
+        (0..<height).each { y -> (0..<width).each { x -> source.setRGB(x, y, x < width / 2 ? rgb : ~rgb) } }
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(source, 'jpeg', out)
+        out.toByteArray()
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        def out = new ByteArrayOutputStream()
+        parts.each { out.write(it) }
+        out.toByteArray()
+    }
+
+    /**
+     * Removes the quantization and Huffman table segments which precede the start of scan
+     */
+    private static byte[] withoutTables(byte[] jpeg) {
+        def out = new ByteArrayOutputStream()
+        out.write(jpeg, 0, 2)
+        def offset = 2
+        while ((jpeg[offset + 1] & 0xff) != 0xda) {
+            def type = jpeg[offset + 1] & 0xff
+            def length = 2 + ((jpeg[offset + 2] & 0xff) << 8 | (jpeg[offset + 3] & 0xff))
+            if (type != 0xdb && type != 0xc4) {
+                out.write(jpeg, offset, length)
+            }
+            offset += length
+        }
+        out.write(jpeg, offset, jpeg.length - offset)
+        out.toByteArray()
+    }
+}
@@ -0,0 +1,62 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import spock.lang.Specification
+
+import java.util.zip.DataFormatException
+
+class LzoDecompressorTest extends Specification {
+
+    def decompressor = new LzoDecompressor()
+
+    def "should decompress literal runs and overlapping matches"() {
+        given:
+        def compressed = [
+                0x15, 0x61, 0x62, 0x63, 0x64, // 4 literals: 'abcd'
+                0x6d, 0x00,                   // M2 match of 4 bytes from 4 back, then 1 literal
+                0x78,                         // 'x'
+                0x04, 0x00,                   // M1 match of 2 bytes from 2 back
+                0x20 | 7, 0x00, 0x00,         // M3 match of 9 bytes from 1 back
+                0x11, 0x00, 0x00              // end of stream
+        ] as byte[]
+        def destination = new byte[32]
+
+        when:
+        def length = decompressor.decompress(compressed, compressed.length, destination, destination.length)
+
+        then:
+        new String(destination, 0, length, 'US-ASCII') == 'abcdabcdxdxxxxxxxxxx'
+    }
+
+    def "should reject data which refers back beyond the start of the output"() {
+        given:
+        def compressed = [0x12, 0x61, 0x6d, 0x00, 0x11, 0x00, 0x00] as byte[]
+
+        when:
+        decompressor.decompress(compressed, compressed.length, new byte[32], 32)
+
+        then:
+        thrown(DataFormatException)
+    }
+
+    def "should reject data which decompresses to more than the destination can hold"() {
+        given:
+        def compressed = [0x15, 0x61, 0x62, 0x63, 0x64, 0x11, 0x00, 0x00] as byte[]
+
+        when:
+        decompressor.decompress(compressed, compressed.length, new byte[3], 3)
+
+        then:
+        thrown(DataFormatException)
+    }
+
+    def "should reject truncated data"() {
+        given:
+        def compressed = [0x15, 0x61, 0x62, 0x63, 0x64, 0x11, 0x00, 0x00] as byte[]
+
+        when:
+        decompressor.decompress(compressed, 6, new byte[32], 32)
+
+        then:
+        thrown(DataFormatException)
+    }
+}
@@ -0,0 +1,120 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.protocol.messages.ColorMapEntry
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PixelConverterTest extends Specification {
+
+    @Unroll
+    def "should convert a #bitsPerPixel bpp true color pixel (big endian: #bigEndian) into an opaque ARGB value"() {
+        given:
+        def pixelFormat = new PixelFormat(bitsPerPixel, depth, bigEndian, true, redMax, greenMax, blueMax, redShift, greenShift, blueShift)
+        def converter = PixelConverter.forFormat(pixelFormat, new Palette())
+
+        when:
+        def result = converter.convert(pixel as byte[], 0)
+
+        then:
+        result == expected
+
+        where:
+        bitsPerPixel | depth | bigEndian | redMax | greenMax | blueMax | redShift | greenShift | blueShift | pixel                    || expected
+        8            | 8     | true      | 7      | 3        | 7       | 5        | 0          | 2         | [0xe0]                   || 0xffff0000 as int
+        16           | 16    | true      | 31     | 63       | 31      | 11       | 5          | 0         | [0xf8, 0x00]             || 0xffff0000 as int
+        16           | 16    | false     | 31     | 63       | 31      | 11       | 5          | 0         | [0x1f, 0x00]             || 0xff0000ff as int
+        32           | 24    | true      | 255    | 255      | 255     | 16       | 8          | 0         | [0x00, 0x11, 0x22, 0x33] || 0xff112233 as int
+        32           | 24    | false     | 255    | 255      | 255     | 16       | 8          | 0         | [0x33, 0x22, 0x11, 0x00] || 0xff112233 as int
+        24           | 24    | true      | 255    | 255      | 255     | 16       | 8          | 0         | [0x11, 0x22, 0x33]       || 0xff112233 as int
+        24           | 16    | false     | 31     | 63       | 31      | 11       | 5          | 0         | [0x1f, 0x00, 0x00]       || 0xff0000ff as int
+    }
+
+    def "should convert an indexed color pixel using the palette"() {
+        given:
+        def pixelFormat = new PixelFormat(8, 8, true, false, 0, 0, 0, 0, 0, 0)
+        def palette = new Palette()
+        palette.update(1, [new ColorMapEntry(65535, 0, 257)])
+        def converter = PixelConverter.forFormat(pixelFormat, palette)
+
+        expect:
+        converter.convert([1] as byte[], 0) == 0xffff0001 as int
+        converter.convert([2] as byte[], 0) == 0xff000000 as int
+    }
+
+    def "should convert a 16 bit indexed color pixel using the palette"() {
+        given:
+        def pixelFormat = new PixelFormat(16, 16, bigEndian, false, 0, 0, 0, 0, 0, 0)
+        def palette = new Palette()
+        palette.update(0x0102, [new ColorMapEntry(0, 65535, 0)])
+        def converter = PixelConverter.forFormat(pixelFormat, palette)
+
+        expect:
+        converter.convert(pixel as byte[], 0) == 0xff00ff00 as int
+
+        where:
+        bigEndian | pixel
+        true      | [0x01, 0x02]
+        false     | [0x02, 0x01]
+    }
+
+    def "should see palette updates made after the converter was created"() {
+        given:
+        def pixelFormat = new PixelFormat(8, 8, true, false, 0, 0, 0, 0, 0, 0)
+        def palette = new Palette()
+        def converter = PixelConverter.forFormat(pixelFormat, palette)
+
+        when:
+        palette.update(7, [new ColorMapEntry(0, 0, 65535)])
+
+        then:
+        converter.convert([7] as byte[], 0) == 0xff0000ff as int
+    }
+
+    def "should convert a run of pixels"() {
+        given:
+        def pixelFormat = new PixelFormat(16, 16, true, true, 31, 63, 31, 11, 5, 0)
+        def converter = PixelConverter.forFormat(pixelFormat, new Palette())
+        def destination = new int[3]
+
+        when:
+        converter.convert([0x00, 0xf8, 0x00, 0x07, 0xe0, 0x00, 0x1f] as byte[], 1, destination, 0, 3)
+
+        then:
+        destination == [0xffff0000 as int, 0xff00ff00 as int, 0xff0000ff as int] as int[]
+    }
+
+    def "should copy a run of native 32 bit pixels, making them opaque whatever their unused byte"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        def converter = PixelConverter.forFormat(pixelFormat, new Palette())
+        def destination = new int[3]
+
+        when:
+        converter.convert([0x7f, 0x33, 0x22, 0x11, 0x80, 0x03, 0x02, 0x01, 0x7e, 0x5a] as byte[], 1, destination, 1, 2)
+
+        then:
+        destination == [0, 0xff112233 as int, 0xff010203 as int] as int[]
+    }
+
+    def "should read a single pixel from a stream"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, true, true, 255, 255, 255, 16, 8, 0)
+        def converter = PixelConverter.forFormat(pixelFormat, new Palette())
+        def input = new ByteArrayInputStream([0x00, 0x01, 0x02, 0x03] as byte[])
+
+        expect:
+        converter.read(input) == 0xff010203 as int
+    }
+
+    def "should reject unsupported pixel formats"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, true, false, 0, 0, 0, 0, 0, 0)
+
+        when:
+        PixelConverter.forFormat(pixelFormat, new Palette())
+
+        then:
+        thrown IllegalArgumentException
+    }
+}
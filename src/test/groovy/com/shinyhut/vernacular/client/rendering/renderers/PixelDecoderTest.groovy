@@ -8,7 +8,7 @@ class PixelDecoderTest extends Specification {
 
     def "should decode a valid true color Pixel in the specified format into RGB color values"() {
         given:
-        def decoder = new PixelDecoder([:])
+        def decoder = new PixelDecoder(new Palette())
         def pixelFormat = new PixelFormat(16, 16, true, true, 31, 63, 31, 11, 5, 0)
         def pixel = [0xff, 0xff] as byte[]
         def input = new ByteArrayInputStream(pixel)
@@ -26,8 +26,9 @@ class PixelDecoderTest extends Specification {
         given:
         def pixelFormat = new PixelFormat(8, 8, true, false, 0, 0, 0, 0, 0, 0)
         def pixel = [1] as byte[]
-        def colorMap = [(1 as BigInteger): new ColorMapEntry(1000, 2000, 3000)]
-        def decoder = new PixelDecoder(colorMap)
+        def palette = new Palette()
+        palette.update(1, [new ColorMapEntry(1000, 2000, 3000)])
+        def decoder = new PixelDecoder(palette)
         def input = new ByteArrayInputStream(pixel)
 
         when:
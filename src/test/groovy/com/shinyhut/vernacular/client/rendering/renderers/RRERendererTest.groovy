@@ -0,0 +1,89 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class RRERendererTest extends Specification {
+
+    def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new RRERenderer(pixelDecoder)
+    def image = new BufferedImage(8, 4, TYPE_INT_RGB)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(pixelFormat)
+    }
+
+    def "should paint the background and subrectangles, merging runs of the same color"() {
+        given:
+        def input = rre(0x112233, [
+                [0xaabbcc, 0, 0, 2, 1],
+                [0xaabbcc, 2, 0, 2, 1],       // continues the previous run
+                [0x445566, 4, 0, 1, 1],
+                [0xaabbcc, 5, 0, 1, 1],
+                [0xaabbcc, 0, 1, 1, 1]        // same color, but on the next row
+        ])
+
+        when:
+        renderer.render(input, image, new Rectangle(1, 1, 6, 2, Encoding.RRE))
+
+        then:
+        image.getRGB(1, 1) == 0xffaabbcc as int
+        image.getRGB(4, 1) == 0xffaabbcc as int
+        image.getRGB(5, 1) == 0xff445566 as int
+        image.getRGB(6, 1) == 0xffaabbcc as int
+        image.getRGB(1, 2) == 0xffaabbcc as int
+        image.getRGB(2, 2) == 0xff112233 as int
+        image.getRGB(6, 2) == 0xff112233 as int
+        image.getRGB(0, 1) == 0xff000000 as int
+        image.getRGB(7, 1) == 0xff000000 as int
+        image.getRGB(1, 3) == 0xff000000 as int
+    }
+
+    def "should clip subrectangles to the rectangle"() {
+        given:
+        def input = rre(0x112233, [
+                [0xaabbcc, 2, 1, 10, 10],
+                [0x445566, 5, 0, 1, 1]
+        ])
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 4, 2, Encoding.RRE))
+
+        then:
+        image.getRGB(2, 1) == 0xffaabbcc as int
+        image.getRGB(3, 1) == 0xffaabbcc as int
+        image.getRGB(4, 1) == 0xff000000 as int
+        image.getRGB(2, 2) == 0xff000000 as int
+        image.getRGB(5, 0) == 0xff000000 as int
+        input.available() == 0
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        when:
+        renderer.render(rre(0x112233, []), image, new Rectangle(4, 0, 8, 1, Encoding.RRE))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'RRE'
+    }
+
+    private static InputStream rre(int background, List<List<Integer>> subrectangles) {
+        def out = new ByteArrayOutputStream()
+        def data = new DataOutputStream(out)
+        data.writeInt(subrectangles.size())
+        data.writeInt(Integer.reverseBytes(background))
+        subrectangles.each { color, x, y, width, height ->
+            data.writeInt(Integer.reverseBytes(color))
+            [x, y, width, height].each { data.writeShort(it) }
+        }
+        new ByteArrayInputStream(out.toByteArray())
+    }
+}
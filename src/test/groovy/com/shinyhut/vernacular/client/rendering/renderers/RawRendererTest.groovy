@@ -0,0 +1,103 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class RawRendererTest extends Specification {
+
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new RawRenderer(pixelDecoder)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0))
+    }
+
+    def "should render rows narrower than the destination into their region of it"() {
+        given:
+        def image = new BufferedImage(5, 4, TYPE_INT_RGB)
+        def input = new ByteArrayInputStream(((pixels(3 * 2) as List) + 0x2a) as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(1, 1, 3, 2, Encoding.RAW))
+
+        then:
+        (0..<4).every { y ->
+            (0..<5).every { x ->
+                def inside = x >= 1 && x < 4 && y >= 1 && y < 3
+                image.getRGB(x, y) == (inside ? color((y - 1) * 3 + x - 1) : 0xff000000 as int)
+            }
+        }
+        input.read() == 0x2a
+    }
+
+    def "should render into an image which shares its raster with a larger one"() {
+        given:
+        def parent = new BufferedImage(6, 6, TYPE_INT_RGB)
+        def image = parent.getSubimage(2, 1, 3, 4)
+
+        when:
+        renderer.render(new ByteArrayInputStream(pixels(2 * 2)), image, new Rectangle(1, 2, 2, 2, Encoding.RAW))
+
+        then:
+        parent.getRGB(3, 3) == color(0)
+        parent.getRGB(4, 3) == color(1)
+        parent.getRGB(3, 4) == color(2)
+        parent.getRGB(4, 4) == color(3)
+        parent.getRGB(2, 3) == 0xff000000 as int
+        parent.getRGB(5, 3) == 0xff000000 as int
+    }
+
+    def "should render rectangles which are read in several batches of rows"() {
+        given:
+        def width = 8192
+        def image = new BufferedImage(width, 3, TYPE_INT_RGB)
+
+        when:
+        renderer.render(new ByteArrayInputStream(pixels(width * 3)), image, new Rectangle(0, 0, width, 3, Encoding.RAW))
+
+        then:
+        image.getRGB(0, 0) == color(0)
+        image.getRGB(width - 1, 1) == color(width * 2 - 1)
+        image.getRGB(0, 2) == color(width * 2)
+        image.getRGB(width - 1, 2) == color(width * 3 - 1)
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def image = new BufferedImage(4, 4, TYPE_INT_RGB)
+
+        when:
+        renderer.render(new ByteArrayInputStream(pixels(width * height)), image,
+                new Rectangle(x, y, width, height, Encoding.RAW))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'Raw'
+        image.getRGB(0, 1) == 0xff000000 as int
+
+        where:
+        x | y | width | height
+        2 | 0 | 3     | 2
+        0 | 3 | 2     | 2
+    }
+
+    private static int color(int index) {
+        0xff000000 | (index & 0xffff) << 8 | 0x11
+    }
+
+    /**
+     * Little endian 32 bit pixels, each of which has its index in its green and red channels
+     */
+    private static byte[] pixels(int count) {
+        def out = new ByteArrayOutputStream()
+        count.times { out.write([0x11, it & 0xff, (it >> 8) & 0xff, 0] as byte[]) }
+        out.toByteArray()
+    }
+}
@@ -0,0 +1,96 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class TRLERendererTest extends Specification {
+
+    def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new TRLERenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(pixelFormat)
+    }
+
+    def "should reuse the palette of an earlier tile"() {
+        given:
+        def image = new BufferedImage(18, 1, TYPE_INT_RGB)
+
+        def tiles = [
+                0x02,                         // tile 1: packed palette, 2 colors
+                0x00, 0x00, 0xff,             // 0xff0000
+                0xff, 0x00, 0x00,             // 0x0000ff
+                0xaa, 0xaa,                   // alternating colors
+                0x7f,                         // tile 2: packed palette, reusing the previous palette
+                0x40                          // 0xff0000, 0x0000ff
+        ] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(tiles), image, new Rectangle(0, 0, 18, 1, Encoding.TRLE))
+
+        then:
+        image.getRGB(0, 0) == 0xff0000ff as int
+        image.getRGB(1, 0) == 0xffff0000 as int
+        image.getRGB(15, 0) == 0xffff0000 as int
+        image.getRGB(16, 0) == 0xffff0000 as int
+        image.getRGB(17, 0) == 0xff0000ff as int
+    }
+
+    def "should keep the palette between rectangles"() {
+        given:
+        def image = new BufferedImage(4, 1, TYPE_INT_RGB)
+
+        def first = [
+                0x82,                         // palette RLE, 2 colors
+                0x33, 0x22, 0x11,             // 0x112233
+                0x66, 0x55, 0x44,             // 0x445566
+                0x80, 0x02                    // 3 pixels of 0x112233
+        ] as byte[]
+
+        def second = [
+                0x81,                         // palette RLE, reusing the previous palette
+                0x01                          // 1 pixel of 0x445566
+        ] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(first), image, new Rectangle(0, 0, 3, 1, Encoding.TRLE))
+        renderer.render(new ByteArrayInputStream(second), image, new Rectangle(3, 0, 1, 1, Encoding.TRLE))
+
+        then:
+        image.getRGB(2, 0) == 0xff112233 as int
+        image.getRGB(3, 0) == 0xff445566 as int
+    }
+
+    def "should reject a tile which reuses a palette before one has been sent"() {
+        given:
+        def image = new BufferedImage(1, 1, TYPE_INT_RGB)
+
+        when:
+        renderer.render(new ByteArrayInputStream([0x81, 0x00] as byte[]), image, new Rectangle(0, 0, 1, 1, Encoding.TRLE))
+
+        then:
+        thrown InvalidMessageException
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def image = new BufferedImage(16, 16, TYPE_INT_RGB)
+        def tiles = [0x01, 0x00, 0x00, 0xff] as byte[]
+
+        when:
+        renderer.render(new ByteArrayInputStream(tiles), image, new Rectangle(0, 8, 16, 16, Encoding.TRLE))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'TRLE'
+        image.getRGB(0, 8) == 0xff000000 as int
+    }
+}
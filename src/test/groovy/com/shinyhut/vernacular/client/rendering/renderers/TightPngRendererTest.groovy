@@ -0,0 +1,118 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+import java.awt.image.DataBuffer
+import java.awt.image.IndexColorModel
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_BINARY
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class TightPngRendererTest extends Specification {
+
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new TightPngRenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+    def image = new BufferedImage(5, 4, TYPE_INT_RGB)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0))
+    }
+
+    def "should render an RGB PNG image into its region of the destination"() {
+        given:
+        def png = new BufferedImage(3, 2, TYPE_INT_RGB)
+        png.setRGB(0, 0, 0x112233)
+        png.setRGB(2, 1, 0x445566)
+
+        when:
+        renderer.render(tightPng(png), image, new Rectangle(1, 1, 3, 2, Encoding.TIGHT_PNG))
+
+        then:
+        image.getRGB(1, 1) == 0xff112233 as int
+        image.getRGB(2, 1) == 0xff000000 as int
+        image.getRGB(3, 2) == 0xff445566 as int
+        image.getRGB(0, 0) == 0xff000000 as int
+    }
+
+    def "should look up the indices of a PNG image with a palette"() {
+        given:
+        def colorModel = new IndexColorModel(1, 2, [0xff0000, 0x0000ff] as int[], 0, false, -1, DataBuffer.TYPE_BYTE)
+        def png = new BufferedImage(3, 2, TYPE_BYTE_BINARY, colorModel)
+        png.getRaster().setSample(1, 0, 0, 1)
+        png.getRaster().setSample(0, 1, 0, 1)
+        png.getRaster().setSample(2, 1, 0, 1)
+
+        when:
+        renderer.render(tightPng(png), image, new Rectangle(1, 1, 3, 2, Encoding.TIGHT_PNG))
+
+        then:
+        image.getRGB(1, 1) == 0xffff0000 as int
+        image.getRGB(2, 1) == 0xff0000ff as int
+        image.getRGB(3, 1) == 0xffff0000 as int
+        image.getRGB(1, 2) == 0xff0000ff as int
+        image.getRGB(2, 2) == 0xffff0000 as int
+        image.getRGB(3, 2) == 0xff0000ff as int
+        image.getRGB(4, 2) == 0xff000000 as int
+    }
+
+    def "should reject rectangles compressed with zlib"() {
+        given:
+        def input = new ByteArrayInputStream([0x00, 0x01, 0x02, 0x03] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 1, 1, Encoding.TIGHT_PNG))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'TightPNG'
+    }
+
+    def "should reject a PNG image which is not the size of its rectangle"() {
+        given:
+        def png = new BufferedImage(pngWidth, pngHeight, TYPE_INT_RGB)
+
+        when:
+        renderer.render(tightPng(png), image, new Rectangle(1, 1, 3, 2, Encoding.TIGHT_PNG))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'TightPNG'
+
+        where:
+        pngWidth | pngHeight
+        4        | 2
+        3        | 1
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def png = new BufferedImage(3, 2, TYPE_INT_RGB)
+
+        when:
+        renderer.render(tightPng(png), image, new Rectangle(3, 3, 3, 2, Encoding.TIGHT_PNG))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'TightPNG'
+    }
+
+    private static InputStream tightPng(BufferedImage png) {
+        def encoded = new ByteArrayOutputStream()
+        ImageIO.write(png, 'png', encoded)
+        def out = new ByteArrayOutputStream()
+        out.write(0xa0)
+        def length = encoded.size()
+        out.write((length & 0x7f) | (length > 0x7f ? 0x80 : 0))
+        if (length > 0x7f) {
+            out.write(length >> 7)
+        }
+        out.write(encoded.toByteArray())
+        new ByteArrayInputStream(out.toByteArray())
+    }
+}
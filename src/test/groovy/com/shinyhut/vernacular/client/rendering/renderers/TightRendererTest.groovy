@@ -0,0 +1,222 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+import java.util.zip.Deflater
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+import static java.util.zip.Deflater.SYNC_FLUSH
+
+class TightRendererTest extends Specification {
+
+    static final RGB_FORMAT = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+
+    // 4 pixels of 0x112233, 0x445566, 0x778899, 0xaabbcc as 3 byte RGB
+    static final ROW = [0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, 0x88, 0x99, 0xaa, 0xbb, 0xcc]
+    static final ROW_COLORS = [0xff112233, 0xff445566, 0xff778899, 0xffaabbcc].collect { it as int }
+
+    def deflaters = (0..<4).collect { new Deflater() }
+    def out = new ByteArrayOutputStream()
+
+    @Unroll
+    def "should decode a #bytes.size() byte compact length"() {
+        given:
+        def input = new ByteArrayInputStream(bytes as byte[])
+
+        expect:
+        TightRenderer.readCompactLength(input) == expected
+
+        where:
+        bytes              || expected
+        [0x7f]             || 127
+        [0x80, 0x01]       || 128
+        [0xff, 0x7f]       || 16383
+        [0x80, 0x80, 0x01] || 16384
+        [0xff, 0xff, 0xff] || 4194303
+    }
+
+    def "should fill a rectangle with a solid 3 byte RGB pixel when the session uses 32 bpp, 24 bit depth pixels"() {
+        given:
+        def renderer = renderer(new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0))
+        def image = new BufferedImage(4, 4, TYPE_INT_RGB)
+        def input = new ByteArrayInputStream([0x80, 0x11, 0x22, 0x33] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(1, 1, 2, 2, Encoding.TIGHT))
+
+        then:
+        image.getRGB(1, 1) == 0xff112233 as int
+        image.getRGB(2, 2) == 0xff112233 as int
+        image.getRGB(0, 0) == 0xff000000 as int
+        image.getRGB(3, 3) == 0xff000000 as int
+        input.available() == 0
+    }
+
+    def "should render a short, uncompressed two color palette rectangle"() {
+        given:
+        def renderer = renderer(new PixelFormat(16, 16, true, true, 31, 63, 31, 11, 5, 0))
+        def image = new BufferedImage(3, 2, TYPE_INT_RGB)
+        def input = new ByteArrayInputStream([
+                0x40,                   // basic compression, stream 0, explicit filter
+                0x01,                   // palette filter
+                0x01,                   // 2 colors
+                0xf8, 0x00, 0x00, 0x1f, // red, blue
+                0x40,                   // row 1: 0, 1, 0
+                0xa0                    // row 2: 1, 0, 1
+        ] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 3, 2, Encoding.TIGHT))
+
+        then:
+        image.getRGB(0, 0) == 0xffff0000 as int
+        image.getRGB(1, 0) == 0xff0000ff as int
+        image.getRGB(2, 0) == 0xffff0000 as int
+        image.getRGB(0, 1) == 0xff0000ff as int
+        image.getRGB(1, 1) == 0xffff0000 as int
+        image.getRGB(2, 1) == 0xff0000ff as int
+        input.available() == 0
+    }
+
+    def "should inflate rectangles on each of the four zlib streams, which persist across rectangles"() {
+        given:
+        def renderer = renderer(RGB_FORMAT)
+        def image = new BufferedImage(4, 8, TYPE_INT_RGB)
+        // each stream is sent the same row twice, the second time as a reference back into the first
+        2.times { (0..<4).each { stream -> writeCopy(stream, 0, ROW) } }
+        out.write(0x2a)
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        8.times { renderer.render(input, image, new Rectangle(0, it, 4, 1, Encoding.TIGHT)) }
+
+        then:
+        (0..<8).every { y -> (0..<4).every { x -> image.getRGB(x, y) == ROW_COLORS[x] } }
+        input.read() == 0x2a
+    }
+
+    def "should start a new zlib stream when the server resets it"() {
+        given:
+        def renderer = renderer(RGB_FORMAT)
+        def image = new BufferedImage(4, 2, TYPE_INT_RGB)
+        writeCopy(1, 0, ROW)
+        deflaters[1] = new Deflater()
+        writeCopy(1, 0x02, ROW.reverse())
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 4, 1, Encoding.TIGHT))
+        renderer.render(input, image, new Rectangle(0, 1, 4, 1, Encoding.TIGHT))
+
+        then:
+        (0..<4).every { x -> image.getRGB(x, 0) == ROW_COLORS[x] }
+        image.getRGB(0, 1) == 0xffccbbaa as int
+        image.getRGB(3, 1) == 0xff332211 as int
+        input.available() == 0
+    }
+
+    def "should reconstruct pixels sent through the gradient filter"() {
+        given:
+        def renderer = renderer(RGB_FORMAT)
+        def image = new BufferedImage(3, 2, TYPE_INT_RGB)
+        out.write(0x40)                 // basic compression, stream 0, explicit filter
+        out.write(0x02)                 // gradient filter
+        // the difference of each channel from the prediction, left + above - above left, clamped to 0..255
+        writeCompressed(0, [
+                10, 20, 30, 240, 0, 226, 11, 180, 100,
+                2, 5, 231, 3, 75, 10, 246, 211, 236
+        ])
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 3, 2, Encoding.TIGHT))
+
+        then:
+        image.getRGB(0, 0) == 0xff0a141e as int
+        image.getRGB(1, 0) == 0xfffa1400 as int
+        image.getRGB(2, 0) == 0xff05c864 as int
+        image.getRGB(0, 1) == 0xff0c1905 as int
+        image.getRGB(1, 1) == 0xffff640a as int   // blue predicted below 0
+        image.getRGB(2, 1) == 0xff00d25a as int   // green predicted above 255
+        input.available() == 0
+    }
+
+    def "should render a JPEG rectangle into its region of the destination"() {
+        given:
+        def renderer = renderer(RGB_FORMAT)
+        def image = new BufferedImage(20, 10, TYPE_INT_RGB)
+        def source = new BufferedImage(16, 8, TYPE_INT_RGB)
+        (0..<8).each { y -> (0..<16).each { x -> source.setRGB(x, y, x < 8 ? 0x4080c0 : 0xc08040) } }
+        def jpeg = new ByteArrayOutputStream()
+        ImageIO.write(source, 'jpeg', jpeg)
+        out.write(0x90)
+        writeCompactLength(jpeg.size())
+        out.write(jpeg.toByteArray())
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(2, 1, 16, 8, Encoding.TIGHT))
+
+        then:
+        def expected = ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray()))
+        (0..<8).every { y -> (0..<16).every { x -> image.getRGB(2 + x, 1 + y) == expected.getRGB(x, y) } }
+        image.getRGB(1, 1) == 0xff000000 as int
+        image.getRGB(18, 1) == 0xff000000 as int
+        input.available() == 0
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def renderer = renderer(RGB_FORMAT)
+        def image = new BufferedImage(4, 4, TYPE_INT_RGB)
+        def input = new ByteArrayInputStream([0x80, 0x11, 0x22, 0x33] as byte[])
+
+        when:
+        renderer.render(input, image, new Rectangle(3, 0, 2, 2, Encoding.TIGHT))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'Tight'
+        image.getRGB(0, 1) == 0xff000000 as int
+    }
+
+    /**
+     * Writes a rectangle of copy filtered pixels compressed on a stream
+     *
+     * @param reset The stream reset bits of the control byte
+     */
+    private void writeCopy(int stream, int reset, List<Integer> pixels) {
+        out.write(stream << 4 | reset)
+        writeCompressed(stream, pixels)
+    }
+
+    private void writeCompressed(int stream, List<Integer> data) {
+        def deflater = deflaters[stream]
+        deflater.setInput(data as byte[])
+        def compressed = new byte[data.size() + 64]
+        def length = deflater.deflate(compressed, 0, compressed.length, SYNC_FLUSH)
+        writeCompactLength(length)
+        out.write(compressed, 0, length)
+    }
+
+    private void writeCompactLength(int length) {
+        while (length > 0x7f) {
+            out.write(length & 0x7f | 0x80)
+            length >>= 7
+        }
+        out.write(length)
+    }
+
+    private static TightRenderer renderer(PixelFormat pixelFormat) {
+        def pixelDecoder = new PixelDecoder(new Palette())
+        pixelDecoder.setPixelFormat(pixelFormat)
+        new TightRenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+    }
+}
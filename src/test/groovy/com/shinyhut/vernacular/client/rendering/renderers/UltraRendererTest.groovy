@@ -0,0 +1,86 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+
+class UltraRendererTest extends Specification {
+
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new UltraRenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+    def image = new BufferedImage(3, 1, TYPE_INT_RGB)
+
+    def setup() {
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0))
+    }
+
+    def "should render LZO compressed raw pixels"() {
+        given:
+        def compressed = [
+                0x15, 0x33, 0x22, 0x11, 0x00, // 4 literals: the first pixel
+                0x20 | 6, 0x0c, 0x00          // M3 match of 8 bytes from 4 back: the next two pixels
+        ] as byte[]
+
+        when:
+        renderer.render(ultra(compressed), image, new Rectangle(0, 0, 3, 1, Encoding.ULTRA))
+
+        then:
+        image.getRGB(0, 0) == 0xff112233 as int
+        image.getRGB(1, 0) == 0xff112233 as int
+        image.getRGB(2, 0) == 0xff112233 as int
+    }
+
+    def "should reject data which decompresses to fewer pixels than the rectangle holds"() {
+        given:
+        def compressed = [0x15, 0x33, 0x22, 0x11, 0x00] as byte[]
+
+        when:
+        renderer.render(ultra(compressed), image, new Rectangle(0, 0, 3, 1, Encoding.ULTRA))
+
+        then:
+        thrown(InvalidMessageException)
+    }
+
+    def "should reject a compressed length longer than the rectangle's pixels could compress to"() {
+        given:
+        def out = new ByteArrayOutputStream()
+        new DataOutputStream(out).writeInt(Integer.MAX_VALUE)
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 3, 1, Encoding.ULTRA))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'Ultra'
+        renderer.@compressed.length == 0
+    }
+
+    def "should reject a rectangle which does not fit within the destination"() {
+        given:
+        def compressed = [0x15, 0x33, 0x22, 0x11, 0x00, 0x20 | 6, 0x0c, 0x00] as byte[]
+
+        when:
+        renderer.render(ultra(compressed), image, new Rectangle(1, 0, 3, 1, Encoding.ULTRA))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'Ultra'
+    }
+
+    private static InputStream ultra(byte[] compressed) {
+        def data = new ByteArrayOutputStream()
+        data.write(compressed)
+        data.write([0x11, 0x00, 0x00] as byte[])
+        def out = new ByteArrayOutputStream()
+        new DataOutputStream(out).writeInt(data.size())
+        out.write(data.toByteArray())
+        new ByteArrayInputStream(out.toByteArray())
+    }
+}
@@ -0,0 +1,106 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.client.exceptions.InvalidMessageException
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+import java.util.zip.Deflater
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+import static java.util.zip.Deflater.SYNC_FLUSH
+
+class ZLibRendererTest extends Specification {
+
+    def pixelDecoder = new PixelDecoder(new Palette())
+    def renderer = new ZLibRenderer(new RawRenderer(pixelDecoder))
+    def deflater = new Deflater()
+    def out = new ByteArrayOutputStream()
+
+    def setup() {
+        pixelDecoder.setPixelFormat(new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0))
+    }
+
+    def "should inflate successive rectangles from one persistent zlib stream"() {
+        given:
+        def image = new BufferedImage(4, 3, TYPE_INT_RGB)
+        def row = [0x33, 0x22, 0x11, 0x00, 0x66, 0x55, 0x44, 0x00, 0x99, 0x88, 0x77, 0x00, 0xcc, 0xbb, 0xaa, 0x00]
+        writeCompressed(row as byte[])
+        // the same row again, which is compressed as a reference back into the first rectangle's data
+        writeCompressed(row as byte[])
+        writeCompressed([0xff, 0xee, 0xdd, 0x00, 0x00, 0x00, 0x00, 0x00] as byte[])
+        out.write(0x2a)
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 4, 1, Encoding.ZLIB))
+        renderer.render(input, image, new Rectangle(0, 1, 4, 1, Encoding.ZLIB))
+        renderer.render(input, image, new Rectangle(1, 2, 2, 1, Encoding.ZLIB))
+
+        then:
+        (0..1).every { y ->
+            image.getRGB(0, y) == 0xff112233 as int && image.getRGB(1, y) == 0xff445566 as int &&
+                    image.getRGB(2, y) == 0xff778899 as int && image.getRGB(3, y) == 0xffaabbcc as int
+        }
+        image.getRGB(0, 2) == 0xff000000 as int
+        image.getRGB(1, 2) == 0xffddeeff as int
+        image.getRGB(2, 2) == 0xff000000 as int
+        input.read() == 0x2a
+    }
+
+    def "should inflate rectangles which are larger than the stream's buffers"() {
+        given:
+        def width = 256
+        def height = 128
+        def image = new BufferedImage(width, height, TYPE_INT_RGB)
+        def pixels = new byte[width * height * 4]
+        new Random(42).nextBytes(pixels)
+        writeCompressed(pixels)
+        writeCompressed([0x33, 0x22, 0x11, 0x00] as byte[])
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, width, height, Encoding.ZLIB))
+
+        then:
+        (0..<height).every { y ->
+            (0..<width).every { x ->
+                def i = (y * width + x) * 4
+                image.getRGB(x, y) == ((0xff000000 as int) | (pixels[i + 2] & 0xff) << 16 | (pixels[i + 1] & 0xff) << 8 |
+                        (pixels[i] & 0xff))
+            }
+        }
+
+        when:
+        renderer.render(input, image, new Rectangle(0, 0, 1, 1, Encoding.ZLIB))
+
+        then:
+        image.getRGB(0, 0) == 0xff112233 as int
+        input.available() == 0
+    }
+
+    def "should reject a rectangle which does not fit within the destination before inflating it"() {
+        given:
+        def image = new BufferedImage(4, 3, TYPE_INT_RGB)
+        writeCompressed(new byte[16])
+        def input = new ByteArrayInputStream(out.toByteArray())
+
+        when:
+        renderer.render(input, image, new Rectangle(1, 0, 4, 1, Encoding.ZLIB))
+
+        then:
+        def e = thrown(InvalidMessageException)
+        e.messageType == 'ZLib'
+        input.available() == out.size()
+    }
+
+    private void writeCompressed(byte[] data) {
+        deflater.setInput(data)
+        def compressed = new byte[data.length + data.length / 100 + 64 as int]
+        def length = deflater.deflate(compressed, 0, compressed.length, SYNC_FLUSH)
+        new DataOutputStream(out).writeInt(length)
+        out.write(compressed, 0, length)
+    }
+}
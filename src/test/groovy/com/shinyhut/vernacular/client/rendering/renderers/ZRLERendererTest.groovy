@@ -0,0 +1,53 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+import java.util.zip.Deflater
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+import static java.util.zip.Deflater.SYNC_FLUSH
+
+class ZRLERendererTest extends Specification {
+
+    def "should render solid and run-length encoded tiles using compact 3 byte pixels"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        def pixelDecoder = new PixelDecoder(new Palette())
+        pixelDecoder.setPixelFormat(pixelFormat)
+        def renderer = new ZRLERenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+        def image = new BufferedImage(66, 2, TYPE_INT_RGB)
+
+        def tiles = [
+                0x01, 0x33, 0x22, 0x11,       // tile 1: solid 0x112233
+                0x80,                         // tile 2: plain RLE
+                0x00, 0x00, 0xff, 0x02,       // 3 pixels of 0xff0000
+                0xff, 0x00, 0x00, 0x00        // 1 pixel of 0x0000ff
+        ] as byte[]
+
+        when:
+        renderer.render(zrle(tiles), image, new Rectangle(0, 0, 66, 2, Encoding.ZRLE))
+
+        then:
+        image.getRGB(0, 0) == 0xff112233 as int
+        image.getRGB(63, 1) == 0xff112233 as int
+        image.getRGB(64, 0) == 0xffff0000 as int
+        image.getRGB(65, 0) == 0xffff0000 as int
+        image.getRGB(64, 1) == 0xffff0000 as int
+        image.getRGB(65, 1) == 0xff0000ff as int
+    }
+
+    private static InputStream zrle(byte[] data) {
+        def deflater = new Deflater()
+        deflater.setInput(data)
+        def compressed = new byte[data.length + 64]
+        def length = deflater.deflate(compressed, 0, compressed.length, SYNC_FLUSH)
+        def out = new ByteArrayOutputStream()
+        new DataOutputStream(out).writeInt(length)
+        out.write(compressed, 0, length)
+        new ByteArrayInputStream(out.toByteArray())
+    }
+}
@@ -0,0 +1,111 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.awt.image.BufferedImage
+import java.util.function.IntSupplier
+import java.util.zip.Deflater
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+import static java.util.zip.Deflater.SYNC_FLUSH
+
+class ZYWRLERendererTest extends Specification {
+
+    def "should transform wavelet coefficients back into pixels and copy unaligned columns untransformed"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        def pixelDecoder = new PixelDecoder(new Palette())
+        pixelDecoder.setPixelFormat(pixelFormat)
+        def renderer = new ZYWRLERenderer(new RawRenderer(pixelDecoder), pixelDecoder, { -1 } as IntSupplier)
+        def image = new BufferedImage(3, 2, TYPE_INT_RGB)
+
+        def tile = [
+                0x00,                         // raw tile, so wavelet coefficients follow
+                0x00,                         // nested raw tile of coefficients
+                0x00, 0x00, 0x00,             // level 0, band 3 (1, 1)
+                0x00, 0x00, 0x00,             // level 0, band 2 (0, 1)
+                0x00, 0x00, 0x00,             // level 0, band 1 (1, 0)
+                0xfb, 0x14, 0x0a,             // level 0, band 0 (0, 0): V = 10, Y = 20, U = -5
+                0x33, 0x22, 0x11,             // untransformed (2, 0)
+                0x66, 0x55, 0x44              // untransformed (2, 1)
+        ] as byte[]
+
+        when:
+        renderer.render(zywrle(tile), image, new Rectangle(0, 0, 3, 2, Encoding.ZYWRLE))
+
+        then:
+        image.getRGB(0, 0) == 0xffa69288 as int
+        image.getRGB(1, 0) == 0xffa69288 as int
+        image.getRGB(0, 1) == 0xffa69288 as int
+        image.getRGB(1, 1) == 0xffa69288 as int
+        image.getRGB(2, 0) == 0xff112233 as int
+        image.getRGB(2, 1) == 0xff445566 as int
+    }
+
+    def "should decode a two level tile with unaligned columns and rows as the reference encoder sends it"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        def pixelDecoder = new PixelDecoder(new Palette())
+        pixelDecoder.setPixelFormat(pixelFormat)
+        def renderer = new ZYWRLERenderer(new RawRenderer(pixelDecoder), pixelDecoder, { 4 } as IntSupplier)
+        def image = new BufferedImage(6, 5, TYPE_INT_RGB)
+
+        // A 6x5 tile of random pixels as libvncserver's zywrletemplate.c analyzes it at level 2, without quantization:
+        // the coefficients of the aligned 4x4 block, followed by the untransformed pixels of the two columns to its
+        // right, the row below it and the corner
+        def values = [
+                0x39, 0x5c, 0x59, 0xcf, 0x1d, 0x4f, 0x25, 0xe6, 0xf9, 0x36, 0x17, 0x43, 0x3c, 0xd6, 0xe6, 0x38, 0x06, 0x13,
+                0xdb, 0x2f, 0xd1, 0xd6, 0x53, 0x57, 0x0d, 0x51, 0xd3, 0xf7, 0xe9, 0x09, 0x03, 0xac, 0xef, 0xc4, 0x5d, 0xb3,
+                0xe5, 0x33, 0xb6, 0x2c, 0xa6, 0x42, 0x00, 0xa7, 0x47, 0x59, 0xd5, 0x39, 0x7b, 0x23, 0xd6, 0x1e, 0xd9, 0x2e,
+                0x34, 0x5c, 0x9d, 0x31, 0xbe, 0x60, 0x99, 0x29, 0x7c, 0xe5, 0xaf, 0xfd, 0xfe, 0xb3, 0xae, 0x2f, 0x23, 0xe9,
+                0x21, 0xf2, 0x8a, 0xe4, 0x9e, 0x1f, 0xb1, 0xc5, 0x91, 0xb5, 0xec, 0x0b, 0xfc, 0x3b, 0x56, 0x93, 0x6f, 0x1e
+        ]
+        def tile = ([0x00, 0x00] + values) as byte[]
+
+        // as zywrletemplate.c synthesizes them
+        def expected = [
+                0xffa54dc9, 0xff17252f, 0xffbb1d6d, 0xff122cde, 0xffd6237b, 0xff2ed91e,
+                0xff3e721e, 0xffcb1971, 0xff164494, 0xffd64a3c, 0xff9d5c34, 0xff60be31,
+                0xff201e68, 0xfffedaa0, 0xffeee8b8, 0xff997f5b, 0xff7c2999, 0xfffdafe5,
+                0xff93253b, 0xffd654ae, 0xff4dfbd7, 0xff13279f, 0xffaeb3fe, 0xffe9232f,
+                0xff8af221, 0xff1f9ee4, 0xff91c5b1, 0xff0becb5, 0xff563bfc, 0xff1e6f93
+        ].collect { it as int }
+
+        when:
+        renderer.render(zywrle(tile), image, new Rectangle(0, 0, 6, 5, Encoding.ZYWRLE))
+
+        then:
+        (0..<5).every { y -> (0..<6).every { x -> image.getRGB(x, y) == expected[y * 6 + x] } }
+    }
+
+    @Unroll
+    def "should apply #level levels of the transform at JPEG quality level #quality"() {
+        expect:
+        ZYWRLERenderer.level(quality) == level
+
+        where:
+        quality | level
+        -1      | 1
+        0       | 3
+        2       | 3
+        3       | 2
+        5       | 2
+        6       | 1
+        9       | 1
+    }
+
+    private static InputStream zywrle(byte[] data) {
+        def deflater = new Deflater()
+        deflater.setInput(data)
+        def compressed = new byte[data.length + 64]
+        def length = deflater.deflate(compressed, 0, compressed.length, SYNC_FLUSH)
+        def out = new ByteArrayOutputStream()
+        new DataOutputStream(out).writeInt(length)
+        out.write(compressed, 0, length)
+        new ByteArrayInputStream(out.toByteArray())
+    }
+}
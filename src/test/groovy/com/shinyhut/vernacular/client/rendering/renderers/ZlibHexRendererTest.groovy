@@ -0,0 +1,71 @@
+package com.shinyhut.vernacular.client.rendering.renderers
+
+import com.shinyhut.vernacular.protocol.messages.Encoding
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import com.shinyhut.vernacular.protocol.messages.Rectangle
+import spock.lang.Specification
+
+import java.awt.image.BufferedImage
+import java.util.zip.Deflater
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB
+import static java.util.zip.Deflater.SYNC_FLUSH
+
+class ZlibHexRendererTest extends Specification {
+
+    def "should inflate raw and encoded tiles from separate zlib streams which persist across rectangles"() {
+        given:
+        def pixelFormat = new PixelFormat(32, 24, false, true, 255, 255, 255, 16, 8, 0)
+        def pixelDecoder = new PixelDecoder(new Palette())
+        pixelDecoder.setPixelFormat(pixelFormat)
+        def renderer = new ZlibHexRenderer(new RawRenderer(pixelDecoder), pixelDecoder)
+        def image = new BufferedImage(18, 1, TYPE_INT_RGB)
+
+        def rawStream = new Deflater()
+        def encodedStream = new Deflater()
+        def out = new ByteArrayOutputStream()
+
+        // tile 1: background 0x112233, compressed with the encoded stream
+        out.write(0x42)
+        writeCompressed(out, encodedStream, [0x33, 0x22, 0x11, 0x00] as byte[])
+
+        // tile 2: raw, compressed with the raw stream
+        out.write(0x21)
+        writeCompressed(out, rawStream, [0x66, 0x55, 0x44, 0x00, 0x99, 0x88, 0x77, 0x00] as byte[])
+
+        // second rectangle, tile 1: background 0xaabbcc, uncompressed
+        def second = new ByteArrayOutputStream()
+        second.write(0x02)
+        second.write([0xcc, 0xbb, 0xaa, 0x00] as byte[])
+
+        // second rectangle, tile 2: raw, continuing the raw stream
+        second.write(0x21)
+        writeCompressed(second, rawStream, [0xff, 0xee, 0xdd, 0x00, 0x00, 0x00, 0x00, 0x00] as byte[])
+
+        when:
+        renderer.render(new ByteArrayInputStream(out.toByteArray()), image, new Rectangle(0, 0, 18, 1, Encoding.ZLIBHEX))
+
+        then:
+        image.getRGB(0, 0) == 0xff112233 as int
+        image.getRGB(15, 0) == 0xff112233 as int
+        image.getRGB(16, 0) == 0xff445566 as int
+        image.getRGB(17, 0) == 0xff778899 as int
+
+        when:
+        renderer.render(new ByteArrayInputStream(second.toByteArray()), image, new Rectangle(0, 0, 18, 1, Encoding.ZLIBHEX))
+
+        then:
+        image.getRGB(0, 0) == 0xffaabbcc as int
+        image.getRGB(16, 0) == 0xffddeeff as int
+        image.getRGB(17, 0) == 0xff000000 as int
+    }
+
+    private static void writeCompressed(ByteArrayOutputStream out, Deflater deflater, byte[] data) {
+        deflater.setInput(data)
+        def compressed = new byte[data.length + 64]
+        def length = deflater.deflate(compressed, 0, compressed.length, SYNC_FLUSH)
+        out.write(length >> 8)
+        out.write(length & 0xff)
+        out.write(compressed, 0, length)
+    }
+}
@@ -0,0 +1,123 @@
+package com.shinyhut.vernacular.protocol.initialization
+
+import com.shinyhut.vernacular.client.VernacularConfig
+import com.shinyhut.vernacular.client.VncSession
+import com.shinyhut.vernacular.protocol.messages.PixelFormat
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_16_TRUE
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_32_NATIVE
+import static com.shinyhut.vernacular.client.rendering.PixelConversion.BOTH
+import static com.shinyhut.vernacular.client.rendering.PixelConversion.CLIENT
+import static com.shinyhut.vernacular.client.rendering.PixelConversion.NONE
+import static com.shinyhut.vernacular.client.rendering.PixelConversion.SERVER
+import static com.shinyhut.vernacular.protocol.messages.Encoding.COMPRESS_LEVEL_2
+import static com.shinyhut.vernacular.protocol.messages.Encoding.HEXTILE
+import static com.shinyhut.vernacular.protocol.messages.Encoding.JPEG_QUALITY_LEVEL_3
+import static com.shinyhut.vernacular.protocol.messages.Encoding.RAW
+import static com.shinyhut.vernacular.protocol.messages.Encoding.ZLIB
+
+class InitializerTest extends Specification {
+
+    static final NATIVE_FORMAT = [32, 24, 0, 1, 0x00, 0xFF, 0x00, 0xFF, 0x00, 0xFF, 16, 8, 0, 0, 0, 0]
+    static final BIG_ENDIAN_FORMAT = [32, 24, 1, 1, 0x00, 0xFF, 0x00, 0xFF, 0x00, 0xFF, 16, 8, 0, 0, 0, 0]
+    static final INDEXED_32_BIT_FORMAT = [32, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0]
+
+    @Subject
+    initializer = new Initializer()
+
+    def config = new VernacularConfig()
+    def out = new ByteArrayOutputStream()
+
+    @Unroll
+    def "should report which side converts pixels when the server's own pixel format is used: #useServerPixelFormat"() {
+        given:
+        config.colorDepth = colorDepth
+        config.useServerPixelFormat = useServerPixelFormat
+        def session = session(serverFormat)
+
+        when:
+        initializer.initialise(session)
+
+        then:
+        session.pixelConversion == conversion
+        sentSetPixelFormat() == !useServerPixelFormat
+        session.pixelFormat == (useServerPixelFormat ? decode(serverFormat) : initializer.pixelFormat(colorDepth))
+
+        where:
+        serverFormat      | colorDepth    | useServerPixelFormat || conversion
+        NATIVE_FORMAT     | BPP_32_NATIVE | false                || NONE
+        NATIVE_FORMAT     | BPP_16_TRUE   | false                || BOTH
+        NATIVE_FORMAT     | BPP_16_TRUE   | true                 || NONE
+        BIG_ENDIAN_FORMAT | BPP_32_NATIVE | false                || SERVER
+        BIG_ENDIAN_FORMAT | BPP_32_NATIVE | true                 || CLIENT
+    }
+
+    def "should request the configured color depth if the server's own pixel format cannot be decoded"() {
+        given:
+        config.colorDepth = BPP_16_TRUE
+        config.useServerPixelFormat = true
+        def session = session(INDEXED_32_BIT_FORMAT)
+
+        when:
+        initializer.initialise(session)
+
+        then:
+        sentSetPixelFormat()
+        session.pixelFormat == initializer.pixelFormat(BPP_16_TRUE)
+        session.pixelConversion == BOTH
+    }
+
+    def "should send the configured list of encodings in order, ignoring the individual encoding settings"() {
+        given:
+        config.colorDepth = BPP_32_NATIVE
+        config.enableZLibEncoding = false
+        config.jpegQuality = 8
+        config.encodings = [ZLIB, HEXTILE, RAW, COMPRESS_LEVEL_2, JPEG_QUALITY_LEVEL_3]
+        def session = session(NATIVE_FORMAT)
+
+        when:
+        initializer.initialise(session)
+
+        then:
+        def bytes = out.toByteArray()
+        (bytes[21..24] as byte[]) == [0x02, 0x00, 0x00, 0x05] as byte[]
+        (bytes[25..44] as byte[]) == [
+                0x00, 0x00, 0x00, 0x06,
+                0x00, 0x00, 0x00, 0x05,
+                0x00, 0x00, 0x00, 0x00,
+                0xFF, 0xFF, 0xFF, 0x02,
+                0xFF, 0xFF, 0xFF, 0xE3
+        ] as byte[]
+        session.jpegQuality == 3
+    }
+
+    def "should find the JPEG quality level requested by a list of encodings"() {
+        expect:
+        initializer.jpegQuality(encodings) == expected
+
+        where:
+        encodings                               || expected
+        [ZLIB, RAW]                             || -1
+        [ZLIB, COMPRESS_LEVEL_2, RAW]           || -1
+        [ZLIB, JPEG_QUALITY_LEVEL_3, RAW]       || 3
+    }
+
+    private VncSession session(List<Integer> pixelFormat) {
+        def serverInit = [0x03, 0x20, 0x02, 0x58] + pixelFormat + [0x00, 0x00, 0x00, 0x00]
+        new VncSession(config, new ByteArrayInputStream(serverInit as byte[]), out)
+    }
+
+    /**
+     * The ClientInit message is followed by either SetPixelFormat (message type 0) or SetEncodings (message type 2)
+     */
+    private boolean sentSetPixelFormat() {
+        out.toByteArray()[1] == 0
+    }
+
+    private static PixelFormat decode(List<Integer> pixelFormat) {
+        PixelFormat.decode(new ByteArrayInputStream(pixelFormat as byte[]))
+    }
+}
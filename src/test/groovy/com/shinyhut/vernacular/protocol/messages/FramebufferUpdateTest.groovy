@@ -18,4 +18,19 @@ class FramebufferUpdateTest extends Specification {
         then:
         result.numberOfRectangles == 1
     }
+
+    def "should decode a FramebufferUpdate message which will end with a LastRect rectangle"() {
+        given:
+        def input = new ByteArrayInputStream(([
+                0x00, // message type
+                0x00, // padding
+                0xFF, 0xFF // unknown number of rectangles
+        ]) as byte[])
+
+        when:
+        def result = FramebufferUpdate.decode(input)
+
+        then:
+        result.numberOfRectangles == 65535
+    }
 }
@@ -0,0 +1,70 @@
+package com.shinyhut.vernacular.protocol.messages
+
+import com.shinyhut.vernacular.client.exceptions.UnsupportedEncodingException
+import spock.lang.Specification
+
+import static java.lang.Integer.parseInt
+
+class MessageCodecTest extends Specification {
+
+    def codec = new MessageCodec()
+    def output = new ByteArrayOutputStream()
+
+    def "should read a framebuffer update and its rectangles into the same holders each time"() {
+        given:
+        def input = new ByteArrayInputStream([
+                0x00, 0x00, 0x00, 0x02,
+                0x00, 0x01, 0x00, 0x02, 0x00, 0x03, 0x00, 0x04, 0x00, 0x00, 0x00, 0x05,
+                0x00, 0x0A, 0x00, 0x14, 0x01, 0x00, 0x00, 0x40, 0xFF, 0xFF, 0xFF, 0x21
+        ] as byte[])
+
+        when:
+        def update = codec.readFramebufferUpdate(input)
+        def first = codec.readRectangle(input)
+        def firstValues = [first.x, first.y, first.width, first.height, first.encoding]
+        def second = codec.readRectangle(input)
+
+        then:
+        update.numberOfRectangles == 2
+        firstValues == [1, 2, 3, 4, Encoding.HEXTILE]
+        second.is(first)
+        [second.x, second.y, second.width, second.height, second.encoding] == [10, 20, 256, 64, Encoding.DESKTOP_SIZE]
+        input.available() == 0
+    }
+
+    def "should reject a rectangle with an unknown encoding"() {
+        given:
+        def input = new ByteArrayInputStream([0, 0, 0, 0, 0, 1, 0, 1, 0x7F, 0x00, 0x00, 0x00] as byte[])
+
+        when:
+        codec.readRectangle(input)
+
+        then:
+        def e = thrown(UnsupportedEncodingException)
+        e.encodingType == 0x7F000000
+    }
+
+    def "should write a pointer event"() {
+        when:
+        codec.writePointerEvent(output, 160, 100, parseInt('10001001', 2))
+
+        then:
+        output.toByteArray() == [0x05, parseInt('10001001', 2), 0x00, 0xA0, 0x00, 0x64] as byte[]
+    }
+
+    def "should write a key event"() {
+        when:
+        codec.writeKeyEvent(output, 0xFF0D, true)
+
+        then:
+        output.toByteArray() == [0x04, 0x01, 0x00, 0x00, 0x00, 0x00, 0xFF, 0x0D] as byte[]
+    }
+
+    def "should write a framebuffer update request"() {
+        when:
+        codec.writeFramebufferUpdateRequest(output, true, 1, 2, 1920, 1080)
+
+        then:
+        output.toByteArray() == [0x03, 0x01, 0x00, 0x01, 0x00, 0x02, 0x07, 0x80, 0x04, 0x38] as byte[]
+    }
+}
@@ -26,6 +26,20 @@ class RectangleTest extends Specification {
         result.encoding == Encoding.RAW
     }
 
+    def "should decode a LastRect rectangle"() {
+        given:
+        def input = new ByteArrayInputStream(([
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                0xFF, 0xFF, 0xFF, 0x20 // LastRect pseudo-encoding
+        ]) as byte[])
+
+        when:
+        def result = Rectangle.decode(input)
+
+        then:
+        result.encoding == Encoding.LAST_RECT
+    }
+
     def "should throw an exception if we try to decode a Rectangle with an unsupported pixel format"() {
         given:
         def input = new ByteArrayInputStream(([
@@ -33,7 +47,7 @@ class RectangleTest extends Specification {
                 0x00, 0x64, // y = 100
                 0x00, 0x02, // width = 2
                 0x00, 0x02, // height = 2
-                0x00, 0x00, 0x00, 0x0f // TRLE encoding
+                0x00, 0x00, 0x00, 0x03 // unassigned encoding
         ]) as byte[])
 
         when:
@@ -2,6 +2,8 @@ package com.shinyhut.vernacular.protocol.messages
 
 import spock.lang.Specification
 
+import static com.shinyhut.vernacular.client.rendering.ColorDepth.BPP_32_NATIVE
+
 class SetPixelFormatTest extends Specification {
 
     def "should encode a valid SetPixelFormat message"() {
@@ -29,4 +31,33 @@ class SetPixelFormatTest extends Specification {
                 0x00, 0x00, 0x00 // padding
         ] as byte[]
     }
+
+    def "should request little endian pixels laid out like the framebuffer for the native 32 bit color depth"() {
+        given:
+        def depth = BPP_32_NATIVE
+        def message = new SetPixelFormat(new PixelFormat(depth.bitsPerPixel, depth.depth, depth.bigEndian,
+                depth.trueColor, depth.redMax, depth.greenMax, depth.blueMax, depth.redShift, depth.greenShift,
+                depth.blueShift))
+        def output = new ByteArrayOutputStream()
+
+        when:
+        message.encode(output)
+
+        then:
+        output.toByteArray() == [
+                0x00, // message type
+                0x00, 0x00, 0x00, // padding
+                0x20, // 32 bits per pixel
+                0x18, // 24 bit depth
+                0x00, // big endian = false
+                0x01, // true color = true
+                0x00, 0xff, // red max 255
+                0x00, 0xff, // green max 255
+                0x00, 0xff, // blue max 255
+                0x10, // red shift 16
+                0x08, // green shift 8
+                0x00, // blue shift 0
+                0x00, 0x00, 0x00 // padding
+        ] as byte[]
+    }
 }
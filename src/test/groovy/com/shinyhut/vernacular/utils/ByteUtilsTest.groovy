@@ -86,4 +86,30 @@ class ByteUtilsTest extends Specification {
         [0x00, 0x12, 0x34] | 4      | [0x00, 0x12, 0x34, 0x00]
         [0x00, 0x12, 0x34] | 3      | [0x00, 0x12, 0x34]
     }
-}
\ No newline at end of file
+
+    def "should read a big endian unsigned 16 bit integer"() {
+        given:
+        def input = new ByteArrayInputStream([0xff, 0x01, 0x2a] as byte[])
+
+        expect:
+        ByteUtils.readUnsignedShort(input) == 0xff01
+        input.read() == 0x2a
+    }
+
+    def "should read a big endian 32 bit integer"() {
+        given:
+        def input = new ByteArrayInputStream([0x80, 0x01, 0x02, 0x03, 0x2a] as byte[])
+
+        expect:
+        ByteUtils.readInt(input) == 0x80010203 as int
+        input.read() == 0x2a
+    }
+
+    def "should fail if the stream ends before an integer has been read"() {
+        when:
+        ByteUtils.readInt(new ByteArrayInputStream([0x01, 0x02] as byte[]))
+
+        then:
+        thrown EOFException
+    }
+}